@@ -0,0 +1,118 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.services.DelegatingRequest;
+import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the {@link DelegatingRequest} getters Tapestry calls on every
+ * request, through a chain of <code>depth</code> nested wrappers and through
+ * the single wrapper a chain of {@link SimpleRequestWrapper}s collapses to.
+ * The <code>wrap</code> benchmarks measure building the chains.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DelegationBenchmark {
+
+	@Param({ "1", "3", "10" })
+	public int depth;
+
+	private Request original;
+
+	private Request nested;
+
+	private Request flattened;
+
+	/**
+	 * The path of each wrapper, built once so the <code>wrap</code>
+	 * benchmarks only measure creating the wrappers.
+	 */
+	private String[] paths;
+
+	@Setup
+	public void setUp() {
+		original = new StubRequest("localhost", "/struts");
+		paths = new String[depth];
+		for (int i = 0; i < depth; i++) {
+			paths[i] = "/path" + i;
+		}
+		nested = nest(original, paths);
+		flattened = flatten(original, paths);
+	}
+
+	private static Request nest(Request request, String[] paths) {
+		for (String path : paths) {
+			// an anonymous subclass, as SimpleRequestWrapper would collapse the chain.
+			request = new SimpleRequestWrapper(request, path) {
+			};
+		}
+		return request;
+	}
+
+	private static Request flatten(Request request, String[] paths) {
+		for (String path : paths) {
+			request = new SimpleRequestWrapper(request, path);
+		}
+		return request;
+	}
+
+	private static void read(Request request, Blackhole blackhole) {
+		blackhole.consume(request.getHeader("User-Agent"));
+		blackhole.consume(request.getParameter("t:ac"));
+		blackhole.consume(request.getSession(false));
+		blackhole.consume(request.getMethod());
+		blackhole.consume(request.isXHR());
+	}
+
+	@Benchmark
+	public void nestedGetters(Blackhole blackhole) {
+		read(nested, blackhole);
+	}
+
+	@Benchmark
+	public void flattenedGetters(Blackhole blackhole) {
+		read(flattened, blackhole);
+	}
+
+	@Benchmark
+	public Request wrapNested() {
+		return nest(original, paths);
+	}
+
+	@Benchmark
+	public Request wrapFlattened() {
+		return flatten(original, paths);
+	}
+
+}
@@ -0,0 +1,73 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link URLRewriterImpl#processRequest(Request)} for matching and
+ * non-matching requests, depending on the number and kind of rules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessRequestBenchmark {
+
+	@Param({ "1", "10", "100", "1000", "10000" })
+	public int ruleCount;
+
+	@Param({ "true", "false" })
+	public boolean declarative;
+
+	private URLRewriterImpl rewriter;
+
+	private Request matching;
+
+	private Request notMatching;
+
+	@Setup
+	public void setUp() {
+		rewriter = new URLRewriterImpl(Rules.build(ruleCount, declarative));
+		matching = new StubRequest("localhost", Rules.matchingPath(ruleCount));
+		notMatching = new StubRequest("localhost", "/assets/app.js");
+	}
+
+	@Benchmark
+	public Request match() {
+		return rewriter.processRequest(matching);
+	}
+
+	@Benchmark
+	public Request noMatch() {
+		return rewriter.processRequest(notMatching);
+	}
+
+}
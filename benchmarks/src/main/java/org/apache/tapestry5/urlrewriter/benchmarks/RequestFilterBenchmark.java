@@ -0,0 +1,98 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.RequestHandler;
+import org.apache.tapestry5.http.services.Response;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.internal.services.URLRewriterRequestFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of {@link URLRewriterRequestFilter#service(Request, Response, RequestHandler)}
+ * in front of a handler that only reads the path of the request it gets, as
+ * Tapestry's dispatchers would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestFilterBenchmark {
+
+	@Param({ "1", "100", "10000" })
+	public int ruleCount;
+
+	@Param({ "true", "false" })
+	public boolean declarative;
+
+	private URLRewriterRequestFilter filter;
+
+	private Request matching;
+
+	private Request notMatching;
+
+	private RequestHandler handler;
+
+	/**
+	 * Builds the handler here, with the blackhole JMH injects into fixture
+	 * methods, so the benchmarks don't measure allocating it.
+	 */
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		filter = new URLRewriterRequestFilter(new URLRewriterImpl(Rules.build(ruleCount,
+				declarative)));
+		matching = new StubRequest("localhost", Rules.matchingPath(ruleCount));
+		notMatching = new StubRequest("localhost", "/assets/app.js");
+		handler = handler(blackhole);
+	}
+
+	private static RequestHandler handler(final Blackhole blackhole) {
+		return new RequestHandler() {
+
+			public boolean service(Request request, Response response) {
+				blackhole.consume(request.getPath());
+				return true;
+			}
+
+		};
+	}
+
+	@Benchmark
+	public boolean match() throws IOException {
+		return filter.service(matching, null, handler);
+	}
+
+	@Benchmark
+	public boolean noMatch() throws IOException {
+		return filter.service(notMatching, null, handler);
+	}
+
+}
@@ -0,0 +1,68 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Builds synthetic rule sets. Rule <code>i</code> rewrites
+ * <code>/legacy/i</code> to <code>/page/i</code>, either as a
+ * {@link SimpleURLRewriterRule} or as an opaque rule written like the ones in
+ * the test application.
+ */
+final class Rules {
+
+	private Rules() {
+	}
+
+	static List<URLRewriterRule> build(int count, boolean declarative) {
+
+		List<URLRewriterRule> rules = new ArrayList<URLRewriterRule>(count);
+		for (int i = 0; i < count; i++) {
+			final String source = "/legacy/" + i;
+			final String target = "/page/" + i;
+			if (declarative) {
+				rules.add(new SimpleURLRewriterRule(RuleCondition.path(source), target));
+			} else {
+				rules.add(new URLRewriterRule() {
+
+					public Request process(Request request) {
+						if (request.getPath().equals(source)) {
+							request = new SimpleRequestWrapper(request, target);
+						}
+						return request;
+					}
+
+				});
+			}
+		}
+		return rules;
+
+	}
+
+	/**
+	 * Returns the path rewritten by the rule in the middle of a set.
+	 */
+	static String matchingPath(int count) {
+		return "/legacy/" + (count / 2);
+	}
+
+}
@@ -0,0 +1,125 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.Session;
+
+/**
+ * Lightweight {@link Request} returning fixed values, so the benchmarks
+ * measure the rewriter and not a servlet container.
+ */
+public class StubRequest implements Request {
+
+	final private String serverName;
+
+	final private String path;
+
+	public StubRequest(String serverName, String path) {
+		this.serverName = serverName;
+		this.path = path;
+	}
+
+	public Session getSession(boolean create) {
+		return null;
+	}
+
+	public String getContextPath() {
+		return "";
+	}
+
+	public List<String> getParameterNames() {
+		return Collections.emptyList();
+	}
+
+	public String getParameter(String name) {
+		return "value";
+	}
+
+	public String[] getParameters(String name) {
+		return null;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+
+	public List<String> getHeaderNames() {
+		return Collections.emptyList();
+	}
+
+	public long getDateHeader(String name) {
+		return -1;
+	}
+
+	public String getHeader(String name) {
+		return "value";
+	}
+
+	public boolean isXHR() {
+		return false;
+	}
+
+	public boolean isSecure() {
+		return false;
+	}
+
+	public String getServerName() {
+		return serverName;
+	}
+
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	public Object getAttribute(String name) {
+		return null;
+	}
+
+	public void setAttribute(String name, Object value) {
+	}
+
+	public String getMethod() {
+		return "GET";
+	}
+
+	public int getLocalPort() {
+		return 8080;
+	}
+
+	public int getServerPort() {
+		return 80;
+	}
+
+	public String getRemoteHost() {
+		return "127.0.0.1";
+	}
+
+	public List<String> getAttributeNames() {
+		return Collections.emptyList();
+	}
+
+	public boolean isSessionInvalidated() {
+		return false;
+	}
+
+}
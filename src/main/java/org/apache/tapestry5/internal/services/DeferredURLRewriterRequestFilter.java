@@ -0,0 +1,169 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.RequestFilter;
+import org.apache.tapestry5.http.services.RequestHandler;
+import org.apache.tapestry5.http.services.Response;
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.urlrewriter.URLRewriterSymbols;
+import org.slf4j.Logger;
+
+/**
+ * {@link RequestFilter} registered when
+ * {@link URLRewriterSymbols#DEFERRED_INITIALIZATION} is enabled. The actual
+ * filter, usually an {@link URLRewriterRequestFilter}, is created on a
+ * background thread, so building the request pipeline doesn't wait for the
+ * rules to be loaded and compiled. Requests arriving before it's ready wait
+ * for it up to {@link URLRewriterSymbols#INITIALIZATION_WAIT} milliseconds
+ * and are then passed on without rewriting, which is logged once and counted
+ * as <code>init.passed-through</code>. If the initialization fails, every
+ * request is passed on.
+ */
+public class DeferredURLRewriterRequestFilter implements RequestFilter {
+
+	final private CompletableFuture<RequestFilter> initialization;
+
+	final private long waitMillis;
+
+	final private LongAdder passedThrough;
+
+	final private AtomicBoolean warned = new AtomicBoolean();
+
+	final private Logger logger;
+
+	/**
+	 * Constructor that receives the pending initialization.
+	 * 
+	 * @param initialization
+	 *            a <code>CompletableFuture</code> completed with the filter
+	 *            requests are passed to, or with <code>null</code> if there's
+	 *            nothing to rewrite. It cannot be null.
+	 * @param waitMillis
+	 *            how long a request waits for the initialization, in
+	 *            milliseconds. If not positive, requests don't wait.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 */
+	public DeferredURLRewriterRequestFilter(CompletableFuture<RequestFilter> initialization,
+			long waitMillis, URLRewriterMetrics metrics, final Logger logger) {
+
+		assert initialization != null;
+		assert metrics != null;
+		assert logger != null;
+		this.initialization = initialization;
+		this.waitMillis = waitMillis;
+		this.passedThrough = metrics.getCounter("init.passed-through");
+		this.logger = logger;
+
+		initialization.whenComplete((filter, e) -> {
+			if (e != null) {
+				logger.error("Could not initialize the URL rewriter, requests won't be rewritten", e);
+			}
+		});
+
+	}
+
+	/**
+	 * Creates a filter whose actual filter is created by a new daemon thread.
+	 * 
+	 * @param initializer
+	 *            a <code>Supplier</code> of the filter requests are passed
+	 *            to, which returns <code>null</code> if there's nothing to
+	 *            rewrite. It cannot be null.
+	 * @param waitMillis
+	 *            how long a request waits for the initialization, in
+	 *            milliseconds. If not positive, requests don't wait.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 * @return a {@link DeferredURLRewriterRequestFilter}.
+	 */
+	public static DeferredURLRewriterRequestFilter start(Supplier<RequestFilter> initializer,
+			long waitMillis, URLRewriterMetrics metrics, Logger logger) {
+
+		assert initializer != null;
+		CompletableFuture<RequestFilter> initialization = CompletableFuture.supplyAsync(
+				initializer, command -> {
+					Thread thread = new Thread(command, "tapestry-url-rewriter-initialization");
+					thread.setDaemon(true);
+					thread.start();
+				});
+		return new DeferredURLRewriterRequestFilter(initialization, waitMillis, metrics, logger);
+
+	}
+
+	/**
+	 * Tells whether the initialization is over, successfully or not.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isInitialized() {
+		return initialization.isDone();
+	}
+
+	public boolean service(Request request, Response response, RequestHandler handler)
+			throws IOException {
+
+		if (!initialization.isDone()) {
+			await();
+		}
+
+		if (initialization.isDone() && !initialization.isCompletedExceptionally()) {
+			RequestFilter filter = initialization.join();
+			// null when there are no rules at all.
+			return filter != null ? filter.service(request, response, handler) : handler.service(
+					request, response);
+		}
+
+		passedThrough.increment();
+		if (!initialization.isDone() && warned.compareAndSet(false, true)) {
+			logger.warn(String.format(
+					"The URL rewriter rules aren't loaded yet, passing %s on without rewriting",
+					request.getPath()));
+		}
+		return handler.service(request, response);
+
+	}
+
+	private void await() {
+
+		if (waitMillis <= 0) {
+			return;
+		}
+
+		try {
+			initialization.get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			// failures are logged when the initialization completes.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+}
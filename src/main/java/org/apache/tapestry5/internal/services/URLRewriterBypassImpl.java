@@ -0,0 +1,84 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.tapestry5.internal.services;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tapestry5.internal.urlrewriter.PrefixTrie;
+import org.apache.tapestry5.ioc.annotations.UsesConfiguration;
+import org.apache.tapestry5.services.URLRewriterBypass;
+import org.apache.tapestry5.services.URLRewriterMetrics;
+
+/**
+ * Default {@link URLRewriterBypass} implementation. Prefixes are compiled
+ * into a {@link PrefixTrie} and suffixes, reversed, into another one, so a
+ * path is checked against all of them in at most one pass over it from each
+ * end.
+ */
+@UsesConfiguration(String.class)
+public class URLRewriterBypassImpl implements URLRewriterBypass {
+
+	final private PrefixTrie prefixes = new PrefixTrie();
+
+	final private PrefixTrie suffixes = new PrefixTrie();
+
+	final private LongAdder hits;
+
+	/**
+	 * Single constructor of this class.
+	 * 
+	 * @param patterns
+	 *            a <code>Collection</code> of path prefixes and
+	 *            <code>*</code>-prefixed suffixes. It cannot be null.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @throws IllegalArgumentException
+	 *             if a pattern is empty or has a <code>*</code> anywhere but
+	 *             at its start.
+	 */
+	public URLRewriterBypassImpl(Collection<String> patterns, URLRewriterMetrics metrics) {
+
+		assert patterns != null;
+		assert metrics != null;
+
+		for (String pattern : patterns) {
+			if (pattern.length() == 0 || pattern.equals("*") || pattern.lastIndexOf('*') > 0) {
+				throw new IllegalArgumentException(String.format(
+						"Invalid bypass pattern '%s': use a path prefix or '*' and a suffix",
+						pattern));
+			}
+			if (pattern.charAt(0) == '*') {
+				suffixes.add(new StringBuilder(pattern.substring(1)).reverse().toString(), 0);
+			} else {
+				prefixes.add(pattern, 0);
+			}
+		}
+		hits = metrics.getCounter("bypass.hits");
+
+	}
+
+	public boolean isBypassed(String path) {
+
+		if ((prefixes.size() > 0 && prefixes.containsPrefixOf(path))
+				|| (suffixes.size() > 0 && suffixes.containsReversedSuffixOf(path))) {
+			hits.increment();
+			return true;
+		}
+		return false;
+
+	}
+
+}
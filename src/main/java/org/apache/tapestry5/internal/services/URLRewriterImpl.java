@@ -14,49 +14,517 @@
 
 package org.apache.tapestry5.internal.services;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.urlrewriter.CompiledRuleSet;
+import org.apache.tapestry5.internal.urlrewriter.ReverseRuleSet;
+import org.apache.tapestry5.internal.urlrewriter.RewriteResultCache;
+import org.apache.tapestry5.internal.urlrewriter.RuleSnapshot;
+import org.apache.tapestry5.internal.urlrewriter.TenantRuleSets;
+import org.apache.tapestry5.internal.urlrewriter.TerminalRequest;
+import org.apache.tapestry5.ioc.annotations.Inject;
+import org.apache.tapestry5.ioc.annotations.Symbol;
 import org.apache.tapestry5.ioc.annotations.UsesOrderedConfiguration;
+import org.apache.tapestry5.ioc.services.RegistryShutdownHub;
 import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
+import org.apache.tapestry5.urlrewriter.ReloadableRuleSource;
+import org.apache.tapestry5.urlrewriter.ReorderableRule;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
 import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterSymbols;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Default {@link org.apache.tapestry5.services.URLRewriter}
- * implementation.
+ * implementation. The contributed rules are compiled into a
+ * {@link CompiledRuleSet} when the service is built, so
+ * {@link org.apache.tapestry5.urlrewriter.DeclarativeURLRewriterRule}s are
+ * only evaluated for the requests they can match, and requests no rule can
+ * match are returned right away. If
+ * {@link URLRewriterSymbols#CACHE_SIZE} is positive and every rule is a
+ * {@link org.apache.tapestry5.urlrewriter.DeterministicRule}, results are
+ * cached in a {@link RewriteResultCache}. Large rule sets are compiled in
+ * parallel on the common {@link ForkJoinPool}, and the time taken by each
+ * phase is logged.
+ * <p/>
+ * The rules of the {@link ReloadableRuleSource} are added after the
+ * contributed ones. When they change, a new {@link RuleSnapshot} is compiled
+ * in the thread that reported the change and then published through an
+ * {@link AtomicReference}, so requests never wait for a reload nor see a
+ * partially built rule set. If the new rules can't be loaded or compiled, the
+ * current snapshot is kept.
+ * <p/>
+ * If {@link URLRewriterSymbols#TENANT_CACHE_WEIGHT} is positive, the rules
+ * the {@link TenantRuleProvider} has for the request's host are applied
+ * first, through {@link TenantRuleSets}.
+ * <p/>
+ * If {@link URLRewriterSymbols#REWRITE_LINKS} is enabled, each snapshot also
+ * gets a {@link ReverseRuleSet} used by {@link #rewriteLink(String, String)}.
+ * Tenant rules are never inverted.
+ * <p/>
+ * If {@link URLRewriterSymbols#REORDER_INTERVAL} is positive, the adjacent
+ * {@link ReorderableRule}s are periodically sorted by the number of requests
+ * they rewrote, most first, and a snapshot with the
+ * new order is published (see {@link #reorder()}). The rewrite cache is kept,
+ * as the results don't change. A {@link #reload()} restores the contributed
+ * order.
  * 
  * @since 5.1.0.2
  */
 @UsesOrderedConfiguration(URLRewriterRule.class)
 public class URLRewriterImpl implements URLRewriter {
 
-	private static final String URL_REWRITER_RULE_PROCESS_MUST_NOT_RETURN_NULL = "URLRewriterRule.process() must not return null";
-	final private List<URLRewriterRule> rules;
+	final private List<URLRewriterRule> contributedRules;
+
+	final private ReloadableRuleSource ruleSource;
+
+	final private URLRewriterMetrics metrics;
+
+	final private int cacheSize;
+
+	final private boolean ruleStatistics;
+
+	final private boolean rewriteLinks;
+
+	final private int linkCacheSize;
+
+	final private Logger logger;
+
+	final private TenantRuleSets tenantRules;
+
+	final private AtomicReference<RuleSnapshot> snapshot = new AtomicReference<RuleSnapshot>();
+
+	final private boolean reloadable;
+
+	final private LongAdder reloads;
+
+	final private LongAdder reloadFailures;
+
+	final private LongAdder reorders;
+
+	private volatile long lastReloadNanos;
+
+	private volatile long lastReorderMoves;
 
 	/**
-	 * Single constructor of this class.
+	 * Constructor used by Tapestry-IoC.
 	 * 
 	 * @param rules
 	 *            a <code>List</code> of <code>URLRewriterRule</code>. It cannot
 	 *            be null.
+	 * @param ruleSource
+	 *            a {@link ReloadableRuleSource}. It cannot be null.
+	 * @param tenantRuleProvider
+	 *            a {@link TenantRuleProvider}. It cannot be null.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param cacheSize
+	 *            the maximum number of cached rewrite results.
+	 * @param ruleStatistics
+	 *            whether per-rule statistics are collected.
+	 * @param tenantCacheWeight
+	 *            the maximum number of tenant rules kept in memory, 0 to
+	 *            disable tenant rules.
+	 * @param tenantRetryDelay
+	 *            how long, in milliseconds, a host whose tenant rules could
+	 *            not be loaded gets none before they're loaded again.
+	 * @param rewriteLinks
+	 *            whether the rules are inverted to rewrite links.
+	 * @param linkCacheSize
+	 *            the maximum number of memoized link rewrites.
+	 * @param reorderInterval
+	 *            how often reorderable rules are reordered, in milliseconds,
+	 *            or 0 to never reorder them.
+	 * @param shutdownHub
+	 *            the {@link RegistryShutdownHub} that stops the reordering.
+	 *            It can only be null if <code>reorderInterval</code> isn't
+	 *            positive.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
 	 */
-	public URLRewriterImpl(List<URLRewriterRule> rules) {
+	@Inject
+	public URLRewriterImpl(List<URLRewriterRule> rules, ReloadableRuleSource ruleSource,
+			TenantRuleProvider tenantRuleProvider, URLRewriterMetrics metrics,
+			@Symbol(URLRewriterSymbols.CACHE_SIZE) int cacheSize,
+			@Symbol(URLRewriterSymbols.RULE_STATISTICS) boolean ruleStatistics,
+			@Symbol(URLRewriterSymbols.TENANT_CACHE_WEIGHT) long tenantCacheWeight,
+			@Symbol(URLRewriterSymbols.TENANT_RETRY_DELAY) long tenantRetryDelay,
+			@Symbol(URLRewriterSymbols.REWRITE_LINKS) boolean rewriteLinks,
+			@Symbol(URLRewriterSymbols.LINK_CACHE_SIZE) int linkCacheSize,
+			@Symbol(URLRewriterSymbols.REORDER_INTERVAL) long reorderInterval,
+			RegistryShutdownHub shutdownHub, Logger logger) {
+
 		assert rules != null;
-		this.rules = rules;
+		assert ruleSource != null;
+		assert tenantRuleProvider != null;
+		assert metrics != null;
+		this.contributedRules = rules;
+		this.ruleSource = ruleSource;
+		this.metrics = metrics;
+		this.cacheSize = cacheSize;
+		this.ruleStatistics = ruleStatistics;
+		this.rewriteLinks = rewriteLinks;
+		this.linkCacheSize = linkCacheSize;
+		this.logger = logger;
+
+		// broken reloadable rules shouldn't prevent the application from
+		// starting, but cycles among the contributed ones still do.
+		RuleSnapshot initial;
+		try {
+			initial = compile(ruleSource.load(), 1);
+		} catch (IOException | RuntimeException e) {
+			logger.error(String.format("Could not load the URL rewriter rules from %s", ruleSource), e);
+			initial = compile(Collections.<URLRewriterRule> emptyList(), 1);
+		}
+		publish(initial);
+
+		tenantRules = tenantCacheWeight > 0 ? new TenantRuleSets(tenantRuleProvider,
+				tenantCacheWeight, tenantRetryDelay, metrics, logger) : null;
+
+		if (cacheSize > 0) {
+			metrics.registerGauge("cache.size", () -> {
+				RewriteResultCache cache = snapshot.get().getCache();
+				return cache != null ? cache.size() : 0;
+			});
+		}
+
+		if (rewriteLinks && linkCacheSize > 0) {
+			metrics.registerGauge("links.size", () -> snapshot.get().getReverseRules()
+					.getCacheSize());
+		}
+
+		reloadable = ruleSource.addChangeListener(this::reload);
+		if (reloadable) {
+			reloads = metrics.getCounter("rules.reloads");
+			reloadFailures = metrics.getCounter("rules.reload-failures");
+			metrics.registerGauge("rules.version", () -> snapshot.get().getVersion());
+			metrics.registerGauge("rules.last-reload-millis",
+					() -> TimeUnit.NANOSECONDS.toMillis(lastReloadNanos));
+		} else {
+			reloads = new LongAdder();
+			reloadFailures = new LongAdder();
+		}
+
+		if (reorderInterval > 0) {
+			assert shutdownHub != null;
+			reorders = metrics.getCounter("rules.reorders");
+			metrics.registerGauge("rules.last-reorder-moves", () -> lastReorderMoves);
+			scheduleReorders(reorderInterval, shutdownHub);
+		} else {
+			reorders = new LongAdder();
+		}
+
+	}
+
+	/**
+	 * Constructor that receives the rules, the rule sources and the
+	 * configuration, without reordering.
+	 * 
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>. It cannot
+	 *            be null.
+	 * @param ruleSource
+	 *            a {@link ReloadableRuleSource}. It cannot be null.
+	 * @param tenantRuleProvider
+	 *            a {@link TenantRuleProvider}. It cannot be null.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param cacheSize
+	 *            the maximum number of cached rewrite results.
+	 * @param ruleStatistics
+	 *            whether per-rule statistics are collected.
+	 * @param tenantCacheWeight
+	 *            the maximum number of tenant rules kept in memory, 0 to
+	 *            disable tenant rules.
+	 * @param rewriteLinks
+	 *            whether the rules are inverted to rewrite links.
+	 * @param linkCacheSize
+	 *            the maximum number of memoized link rewrites.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 */
+	public URLRewriterImpl(List<URLRewriterRule> rules, ReloadableRuleSource ruleSource,
+			TenantRuleProvider tenantRuleProvider, URLRewriterMetrics metrics, int cacheSize,
+			boolean ruleStatistics, long tenantCacheWeight, boolean rewriteLinks,
+			int linkCacheSize, Logger logger) {
+		this(rules, ruleSource, tenantRuleProvider, metrics, cacheSize, ruleStatistics,
+				tenantCacheWeight, TenantRuleSets.DEFAULT_RETRY_DELAY, rewriteLinks, linkCacheSize,
+				0, null, logger);
+	}
+
+	private void scheduleReorders(long interval, RegistryShutdownHub shutdownHub) {
+
+		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+				runnable -> {
+					Thread thread = new Thread(runnable, "tapestry-url-rewriter-reorder");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				reorder();
+			} catch (RuntimeException e) {
+				// an exception would cancel the next runs.
+				logger.error("Could not reorder the URL rewriter rules", e);
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		shutdownHub.addRegistryShutdownListener(executor::shutdownNow);
+
+	}
+
+	/**
+	 * Constructor that receives the rules, a {@link ReloadableRuleSource} and
+	 * the configuration, without tenant rules.
+	 * 
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>. It cannot
+	 *            be null.
+	 * @param ruleSource
+	 *            a {@link ReloadableRuleSource}. It cannot be null.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param cacheSize
+	 *            the maximum number of cached rewrite results.
+	 * @param ruleStatistics
+	 *            whether per-rule statistics are collected.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 */
+	public URLRewriterImpl(List<URLRewriterRule> rules, ReloadableRuleSource ruleSource,
+			URLRewriterMetrics metrics, int cacheSize, boolean ruleStatistics, Logger logger) {
+		this(rules, ruleSource, TenantRuleProvider.NONE, metrics, cacheSize, ruleStatistics, 0,
+				false, 0, logger);
+	}
+
+	/**
+	 * Constructor that receives the rules and the configuration, without any
+	 * {@link ReloadableRuleSource}.
+	 * 
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>. It cannot
+	 *            be null.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param cacheSize
+	 *            the maximum number of cached rewrite results.
+	 * @param ruleStatistics
+	 *            whether per-rule statistics are collected.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 */
+	public URLRewriterImpl(List<URLRewriterRule> rules, URLRewriterMetrics metrics, int cacheSize,
+			boolean ruleStatistics, Logger logger) {
+		this(rules, ReloadableRuleSource.NONE, metrics, cacheSize, ruleStatistics, logger);
+	}
+
+	/**
+	 * Constructor that only receives the rules, without caching.
+	 * 
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>. It cannot
+	 *            be null.
+	 */
+	public URLRewriterImpl(List<URLRewriterRule> rules) {
+		this(rules, new URLRewriterMetricsImpl(), 0, false, LoggerFactory.getLogger(URLRewriterImpl.class));
+	}
+
+	private RuleSnapshot compile(List<URLRewriterRule> loaded, long version) {
+		List<URLRewriterRule> all = new ArrayList<URLRewriterRule>(contributedRules.size()
+				+ loaded.size());
+		all.addAll(contributedRules);
+		all.addAll(loaded);
+		return compile(all, version, null, false);
+	}
+
+	/**
+	 * Compiles all the rules in their final order, reusing a rewrite cache if
+	 * one is given. Compiling for a reorder, which happens periodically, is
+	 * only logged at debug level.
+	 */
+	private RuleSnapshot compile(List<URLRewriterRule> all, long version,
+			RewriteResultCache reusedCache, boolean reordering) {
+
+		CompiledRuleSet rules = new CompiledRuleSet(all, ruleStatistics, ForkJoinPool.commonPool());
+		long start = System.nanoTime();
+
+		// the same rules in another order give the same results.
+		RewriteResultCache cache = reusedCache;
+		if (cache == null && cacheSize > 0 && rules.isDeterministic()) {
+			cache = new RewriteResultCache(cacheSize, rules.usesMethod(),
+					metrics.getCounter("cache.hits"), metrics.getCounter("cache.misses"),
+					metrics.getCounter("cache.evictions"));
+		} else if (cache == null && cacheSize > 0 && !reordering) {
+			logger.warn("The rewrite cache is disabled because not all URL rewriter rules implement DeterministicRule.");
+		}
+
+		ReverseRuleSet reverseRules = null;
+		if (rewriteLinks) {
+			reverseRules = new ReverseRuleSet(rules, linkCacheSize,
+					metrics.getCounter("links.hits"), metrics.getCounter("links.misses"),
+					metrics.getCounter("links.evictions"));
+		}
+
+		long links = System.nanoTime() - start;
+		if (reordering ? logger.isDebugEnabled() : logger.isInfoEnabled()) {
+			StringBuilder phases = new StringBuilder();
+			long total = links;
+			for (Map.Entry<String, Long> phase : rules.getCompileNanos().entrySet()) {
+				phases.append(String.format("%s %d ms, ", phase.getKey(),
+						TimeUnit.NANOSECONDS.toMillis(phase.getValue())));
+				total += phase.getValue();
+			}
+			String message = String.format("Compiled %d URL rewriter rules in %d ms (%slinks %d ms)",
+					rules.size(), TimeUnit.NANOSECONDS.toMillis(total), phases,
+					TimeUnit.NANOSECONDS.toMillis(links));
+			if (reordering) {
+				logger.debug(message);
+			} else {
+				logger.info(message);
+			}
+		}
+
+		return new RuleSnapshot(rules, cache, reverseRules, version);
+
+	}
+
+	private void publish(RuleSnapshot next) {
+		snapshot.set(next);
+		metrics.setRuleStatistics(next.getRules().getStatistics());
+	}
+
+	/**
+	 * Loads the rules of the {@link ReloadableRuleSource} again and, if they
+	 * can be compiled, replaces the rules in use.
+	 * 
+	 * @return <code>true</code> if the rules were replaced.
+	 */
+	public synchronized boolean reload() {
+
+		long start = System.nanoTime();
+		long version = snapshot.get().getVersion();
+		RuleSnapshot next;
+
+		try {
+			next = compile(ruleSource.load(), version + 1);
+		} catch (IOException | RuntimeException e) {
+			// malformed rules or, from CompiledRuleSet, a cycle of rewrites.
+			return failed(version, e);
+		}
+
+		publish(next);
+		lastReloadNanos = System.nanoTime() - start;
+		reloads.increment();
+		logger.info(String.format("Reloaded %d URL rewriter rules from %s in %d ms (version %d)",
+				next.getRules().size(), ruleSource,
+				TimeUnit.NANOSECONDS.toMillis(lastReloadNanos), next.getVersion()));
+		return true;
+
+	}
+
+	/**
+	 * Sorts each run of adjacent {@link ReorderableRule}s by the number of
+	 * requests they rewrote, most first, and replaces the rules in use if the
+	 * order changed. Requests counted before the previous reorder weigh half
+	 * as much, so the order follows changes in the traffic without
+	 * oscillating. The version isn't incremented.
+	 * 
+	 * @return <code>true</code> if the rules were replaced.
+	 */
+	public synchronized boolean reorder() {
+
+		RuleSnapshot current = snapshot.get();
+		List<URLRewriterRule> reordered = current.getRules().reorderedByMatches();
+		if (reordered == null) {
+			return false;
+		}
+
+		RuleSnapshot next = compile(reordered, current.getVersion(), current.getCache(), true);
+		next.getRules().inheritMatches(current.getRules());
+		next.getRules().inheritStatistics(current.getRules());
+		publish(next);
+
+		long moves = 0;
+		for (int position = 0; position < reordered.size(); position++) {
+			if (reordered.get(position) != current.getRules().getRule(position)) {
+				moves++;
+			}
+		}
+		lastReorderMoves = moves;
+		reorders.increment();
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format("Reordered the URL rewriter rules, %d of them moved", moves));
+		}
+		return true;
+
+	}
+
+	private boolean failed(long version, Exception e) {
+		reloadFailures.increment();
+		logger.error(String.format(
+				"Could not reload the URL rewriter rules from %s, keeping version %d", ruleSource,
+				version), e);
+		return false;
+	}
+
+	/**
+	 * Returns the version of the rules in use, incremented by every successful
+	 * {@link #reload()}.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public long getVersion() {
+		return snapshot.get().getVersion();
+	}
+
+	/**
+	 * Discards the rules loaded for a host, so they're loaded again from the
+	 * {@link TenantRuleProvider} on its next request.
+	 * 
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 */
+	public void invalidateTenant(String host) {
+		if (tenantRules != null) {
+			tenantRules.invalidate(host);
+		}
 	}
 
 	public Request processRequest(Request request) {
-		for (URLRewriterRule rule : rules) {
-			request = rule.process(request);
-			if (request == null) {
-				throw new RuntimeException(URL_REWRITER_RULE_PROCESS_MUST_NOT_RETURN_NULL);
+		if (tenantRules != null) {
+			request = tenantRules.process(request);
+			if (request instanceof ActionRequest) {
+				return request;
+			}
+			if (request instanceof TerminalRequest) {
+				// a terminal tenant rule ends the whole evaluation.
+				return ((TerminalRequest) request).getRequest();
 			}
 		}
-		return request;
+		return snapshot.get().process(request);
+	}
+
+	public LinkTarget rewriteLink(String serverName, String path) {
+		return snapshot.get().rewriteLink(serverName, path);
 	}
 
 	public boolean hasRequestRules() {
-		return !rules.isEmpty();
+		// reloaded and tenant rules may show up later, so the request filter is needed anyway.
+		return reloadable || tenantRules != null || !snapshot.get().getRules().isEmpty();
 	}
 
 }
@@ -0,0 +1,128 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import org.apache.tapestry5.http.Link;
+import org.apache.tapestry5.http.services.BaseURLSource;
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.services.ComponentEventRequestParameters;
+import org.apache.tapestry5.services.PageRenderRequestParameters;
+import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.services.linktransform.ComponentEventLinkTransformer;
+import org.apache.tapestry5.services.linktransform.PageRenderLinkTransformer;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
+
+/**
+ * Link transformer that replaces the path of page render and component event
+ * links with the public one returned by
+ * {@link URLRewriter#rewriteLink(String, String)}. Links to another server
+ * name become absolute URLs, like <code>https://shop.example.com/shop</code>,
+ * built from the {@link BaseURLSource} with the other server name. Tapestry
+ * puts its own base URL in front of the path of the links it makes absolute,
+ * so links forced to be secure or insecure aren't rewritten to another server
+ * name, and <code>Link.toAbsoluteURI()</code> must not be called on the ones
+ * that are. Requests are decoded by the {@link URLRewriterRequestFilter}, so the decode
+ * methods always return null.
+ */
+public class URLRewriterLinkTransformer implements PageRenderLinkTransformer,
+		ComponentEventLinkTransformer {
+
+	final private URLRewriter urlRewriter;
+
+	final private Request request;
+
+	final private BaseURLSource baseURLSource;
+
+	/**
+	 * Single constructor of this class.
+	 * 
+	 * @param urlRewriter an {@link URLRewriter}. It cannot be null.
+	 * @param request the current {@link Request}. It cannot be null.
+	 * @param baseURLSource the {@link BaseURLSource}. It cannot be null.
+	 */
+	public URLRewriterLinkTransformer(URLRewriter urlRewriter, Request request,
+			BaseURLSource baseURLSource) {
+		assert urlRewriter != null;
+		assert request != null;
+		assert baseURLSource != null;
+		this.urlRewriter = urlRewriter;
+		this.request = request;
+		this.baseURLSource = baseURLSource;
+	}
+
+	public Link transformPageRenderLink(Link defaultLink, PageRenderRequestParameters parameters) {
+		return transform(defaultLink);
+	}
+
+	public Link transformComponentEventLink(Link defaultLink,
+			ComponentEventRequestParameters parameters) {
+		return transform(defaultLink);
+	}
+
+	private Link transform(Link link) {
+
+		String contextPath = request.getContextPath();
+		String basePath = link.getBasePath();
+		if (!basePath.startsWith(contextPath)) {
+			return null;
+		}
+
+		String serverName = request.getServerName();
+		LinkTarget target = urlRewriter.rewriteLink(serverName,
+				basePath.substring(contextPath.length()));
+		if (target == null) {
+			return null;
+		}
+
+		if (target.getServerName() == null) {
+			return link.copyWithBasePath(contextPath + target.getPath());
+		}
+
+		if (link.getSecurity() != null && link.getSecurity().isAbsolute()) {
+			// it would end up after Tapestry's own base URL.
+			return null;
+		}
+
+		return link.copyWithBasePath(baseURL(target.getServerName()) + contextPath
+				+ target.getPath());
+
+	}
+
+	/**
+	 * Returns the base URL of the current request, with its scheme and port,
+	 * for another server name.
+	 */
+	private String baseURL(String serverName) {
+
+		String baseURL = baseURLSource.getBaseURL(request.isSecure());
+		int start = baseURL.indexOf("://") + 3;
+		// skips the colons of IPv6 addresses.
+		int end = baseURL.indexOf(':', baseURL.charAt(start) == '[' ? baseURL.indexOf(']', start)
+				: start);
+		if (end < 0) {
+			end = baseURL.length();
+		}
+		return baseURL.substring(0, start) + serverName + baseURL.substring(end);
+
+	}
+
+	public PageRenderRequestParameters decodePageRenderRequest(Request request) {
+		return null;
+	}
+
+	public ComponentEventRequestParameters decodeComponentEventRequest(Request request) {
+		return null;
+	}
+
+}
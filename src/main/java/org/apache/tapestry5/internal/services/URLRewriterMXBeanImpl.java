@@ -0,0 +1,55 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.urlrewriter.RuleStatistics;
+import org.apache.tapestry5.urlrewriter.URLRewriterMXBean;
+
+/**
+ * {@link URLRewriterMXBean} implementation that reads an
+ * {@link URLRewriterMetrics}.
+ */
+public class URLRewriterMXBeanImpl implements URLRewriterMXBean {
+
+	final private URLRewriterMetrics metrics;
+
+	public URLRewriterMXBeanImpl(URLRewriterMetrics metrics) {
+		assert metrics != null;
+		this.metrics = metrics;
+	}
+
+	public Map<String, Long> getCounters() {
+		return metrics.getValues();
+	}
+
+	public String[] getRuleStatistics() {
+		List<RuleStatistics> statistics = metrics.getRuleStatistics();
+		String[] lines = new String[statistics.size()];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = statistics.get(i).toString();
+		}
+		return lines;
+	}
+
+	public void resetRuleStatistics() {
+		for (RuleStatistics statistics : metrics.getRuleStatistics()) {
+			statistics.reset();
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.urlrewriter.RuleStatistics;
+
+/**
+ * Default {@link URLRewriterMetrics} implementation.
+ */
+public class URLRewriterMetricsImpl implements URLRewriterMetrics {
+
+	final private ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+	final private ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+
+	private volatile List<RuleStatistics> ruleStatistics = Collections.emptyList();
+
+	public LongAdder getCounter(String name) {
+
+		assert name != null;
+		LongAdder counter = counters.get(name);
+		if (counter == null) {
+			LongAdder created = new LongAdder();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+
+	}
+
+	public void registerGauge(String name, LongSupplier gauge) {
+		assert name != null;
+		assert gauge != null;
+		gauges.put(name, gauge);
+	}
+
+	public SortedMap<String, Long> getValues() {
+
+		SortedMap<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().sum());
+		}
+		for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().getAsLong());
+		}
+		return values;
+
+	}
+
+	public void setRuleStatistics(List<RuleStatistics> statistics) {
+		assert statistics != null;
+		ruleStatistics = statistics;
+	}
+
+	public List<RuleStatistics> getRuleStatistics() {
+		return ruleStatistics;
+	}
+
+}
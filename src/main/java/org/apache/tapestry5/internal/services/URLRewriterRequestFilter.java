@@ -20,29 +20,62 @@ import org.apache.tapestry5.http.services.RequestFilter;
 import org.apache.tapestry5.http.services.RequestHandler;
 import org.apache.tapestry5.http.services.Response;
 import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.services.URLRewriterBypass;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.URLRewriterServletFilter;
 
 /**
- * {@link RequestFilter} that applies the URL rewriting rules to requests.
+ * {@link RequestFilter} that applies the URL rewriting rules to requests. If a
+ * rule ends the request with an {@link ActionRequest}, its action is written
+ * to the response and the rest of the pipeline is skipped. Requests already
+ * processed by the {@link URLRewriterServletFilter} or bypassed by the
+ * {@link URLRewriterBypass} are passed on as they are.
  */
 public class URLRewriterRequestFilter implements RequestFilter {
 
 	final private URLRewriter urlRewriter;
 
+	final private URLRewriterBypass bypass;
+
 	/**
-	 * Single constructor of this class.
+	 * Constructor that receives the rewriter and the bypassed requests.
 	 * 
 	 * @param urlRewriter an {@link URLRewriter}. It cannot be null.
+	 * @param bypass an {@link URLRewriterBypass} or <code>null</code>.
 	 */
-	public URLRewriterRequestFilter(URLRewriter urlRewriter) {
+	public URLRewriterRequestFilter(URLRewriter urlRewriter, URLRewriterBypass bypass) {
 		assert urlRewriter != null;
 		this.urlRewriter = urlRewriter;
+		this.bypass = bypass;
+	}
+
+	/**
+	 * Constructor that only receives the rewriter, without bypassed requests.
+	 * 
+	 * @param urlRewriter an {@link URLRewriter}. It cannot be null.
+	 */
+	public URLRewriterRequestFilter(URLRewriter urlRewriter) {
+		this(urlRewriter, null);
 	}
 
 	public boolean service(Request request, Response response,
 			RequestHandler handler) throws IOException {
 
+		// assets and the like, or already rewritten by the servlet filter.
+		if ((bypass != null && bypass.isBypassed(request.getPath()))
+				|| request.getAttribute(URLRewriterServletFilter.PROCESSED_ATTRIBUTE) != null) {
+			return handler.service(request, response);
+		}
+
 		request = urlRewriter.processRequest(request);
 
+		// redirects and gone responses are answered right away, without
+		// dispatching the request.
+		if (request instanceof ActionRequest) {
+			((ActionRequest) request).getAction().write(request, response);
+			return true;
+		}
+
 		return handler.service(request, response);
 
 	}
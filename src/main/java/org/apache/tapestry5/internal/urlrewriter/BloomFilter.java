@@ -0,0 +1,87 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+/**
+ * Minimal Bloom filter of strings. It uses about 10 bits per key and 3 bit
+ * probes derived from {@link String#hashCode()}, which strings cache, giving
+ * a false positive rate around 1%. Like the other rule indexes, it's only
+ * written while a rule set is compiled.
+ */
+public final class BloomFilter {
+
+	private static final int HASHES = 3;
+
+	final private long[] bits;
+
+	final private int mask;
+
+	/**
+	 * Creates an empty filter sized for a number of keys.
+	 *
+	 * @param expectedKeys
+	 *            an <code>int</code>.
+	 */
+	public BloomFilter(int expectedKeys) {
+		int size = 64;
+		while (size < expectedKeys * 10 && size < (1 << 30)) {
+			size <<= 1;
+		}
+		bits = new long[size / 64];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key
+	 *            a {@link String}. It cannot be null.
+	 */
+	public void add(String key) {
+		int hash = key.hashCode();
+		int increment = increment(hash);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = hash & mask;
+			bits[bit >>> 6] |= 1L << bit;
+			hash += increment;
+		}
+	}
+
+	/**
+	 * Tells whether a key may have been added. A <code>false</code> result is
+	 * always right.
+	 *
+	 * @param key
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean mightContain(String key) {
+		int hash = key.hashCode();
+		int increment = increment(hash);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = hash & mask;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+			hash += increment;
+		}
+		return true;
+	}
+
+	private static int increment(int hash) {
+		hash *= 0x9E3779B9;
+		return (hash ^ (hash >>> 15)) | 1;
+	}
+
+}
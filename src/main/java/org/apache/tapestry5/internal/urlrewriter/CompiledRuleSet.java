@@ -0,0 +1,807 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.ContextURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.DeclarativeURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.DeterministicRule;
+import org.apache.tapestry5.urlrewriter.HeaderRule;
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.RegexRule;
+import org.apache.tapestry5.urlrewriter.ReorderableRule;
+import org.apache.tapestry5.urlrewriter.RewriteContext;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.RuleStatistics;
+import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TerminalRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Immutable, indexed form of an ordered list of {@link URLRewriterRule}s.
+ * <p/>
+ * Each rule keeps its position in the list. Rules whose condition has a
+ * server name, exact or wildcard, are partitioned by host in a
+ * {@link HostIndex}, so a request only looks at the rules of its own host.
+ * Among the others, {@link PatternRule}s are compiled together into a
+ * {@link PathPatternAutomaton}, whose variable offsets rewrite the path
+ * without matching it again, {@link RegexRule}s are indexed by their
+ * required literal in a {@link LiteralAutomaton}, so only the expressions
+ * whose literal occurs in the path are run, {@link HeaderRule}s are indexed
+ * by header name in a {@link HeaderIndex}, and other
+ * {@link DeclarativeURLRewriterRule}s are indexed by exact path or path
+ * prefix, while opaque rules and
+ * declarative rules without any of these keys are kept in a list that is
+ * always evaluated. Processing a request
+ * repeatedly picks the lowest position greater than the last evaluated one
+ * among the candidates for the current path and server name, so the rules
+ * are applied in exactly the same order as a linear scan would, but rules
+ * that cannot match are never called.
+ * <p/>
+ * Chains of {@link SimpleURLRewriterRule}s are resolved at compile time by a
+ * {@link RewriteChainResolver}, so a request matching the first rule of a
+ * chain is rewritten to the final target at once. Once a {@link TerminalRule}
+ * rewrites a request, the later rules are skipped.
+ * <p/>
+ * The headers of the {@link HeaderRule}s are read and classified once per
+ * request, and again after a rule rewrites it into anything but a plain
+ * {@link SimpleRequestWrapper}, since the rewritten request may have other
+ * headers. A header rule among the candidates is known to
+ * match its header, so it's applied without reading the header again.
+ * <p/>
+ * All the {@link ContextURLRewriterRule}s applied to a request share one
+ * {@link RewriteContext}, which is only built again after a rule rewrites
+ * the request.
+ * <p/>
+ * When every rule is declarative and keyed by path or host,
+ * {@link #mightMatch(Request)}
+ * rejects most requests no rule applies to with a {@link BloomFilter} probe
+ * of the path, plus prefix and host trie walks that usually stop at the first
+ * character or label and a scan for the literals of the regex rules, before
+ * any index is looked up.
+ * <p/>
+ * Compiling classifies the rules first, then builds each index, and the
+ * rules of each host, as a separate task, and finally resolves the chains
+ * in ranges of positions. Given a {@link ForkJoinPool}, large rule sets run
+ * these tasks in parallel. The time taken by each phase is available from
+ * {@link #getCompileNanos()}.
+ * <p/>
+ * The requests rewritten by each {@link ReorderableRule} are counted, so
+ * {@link #reorderedByMatches()} can tell which of them should run first.
+ */
+public final class CompiledRuleSet {
+
+	private static final String URL_REWRITER_RULE_PROCESS_MUST_NOT_RETURN_NULL = "URLRewriterRule.process() must not return null";
+
+	/**
+	 * Minimum number of rules for the compilation to use the pool. Smaller
+	 * sets compile faster than tasks can be handed to other threads.
+	 */
+	static final int PARALLEL_THRESHOLD = 1024;
+
+	private static final int[] NO_POSITIONS = new int[0];
+
+	final private URLRewriterRule[] rules;
+
+	/**
+	 * The rules that take a {@link RewriteContext}, at their positions, or
+	 * null if there are none.
+	 */
+	final private ContextURLRewriterRule[] contextRules;
+
+	/**
+	 * Whether each rule is terminal, or null if none is.
+	 */
+	final private boolean[] terminal;
+
+	final private RuleCondition[] conditions;
+
+	final private Map<String, int[]> byPath = new HashMap<String, int[]>();
+
+	final private HostIndex byHost = new HostIndex();
+
+	final private PrefixTrie byPathPrefix = new PrefixTrie();
+
+	final private PathPatternAutomaton byPattern = new PathPatternAutomaton();
+
+	final private LiteralAutomaton byLiteral = new LiteralAutomaton();
+
+	final private HeaderIndex byHeader = new HeaderIndex();
+
+	final private int[] unindexed;
+
+	final private PrefixTrie patternPrefixes = new PrefixTrie();
+
+	final private BloomFilter pathFilter;
+
+	final private RewriteChain[] chains;
+
+	final private RuleStatistics[] statistics;
+
+	/**
+	 * The number of requests rewritten by each {@link ReorderableRule}, at
+	 * their positions, or null if there are none.
+	 */
+	final private LongAdder[] matches;
+
+	final private boolean deterministic;
+
+	final private boolean usesMethod;
+
+	final private Map<String, Long> compileNanos;
+
+	/**
+	 * Compiles a list of rules without collecting statistics.
+	 *
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>, in the
+	 *            order they must be applied. It cannot be null.
+	 * @throws IllegalStateException
+	 *             if the rules rewrite some path back to itself.
+	 */
+	public CompiledRuleSet(List<URLRewriterRule> rules) {
+		this(rules, false);
+	}
+
+	/**
+	 * Compiles a list of rules on the calling thread.
+	 *
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>, in the
+	 *            order they must be applied. It cannot be null.
+	 * @param collectStatistics
+	 *            whether to keep {@link RuleStatistics} for each rule. When
+	 *            <code>false</code>, rules are invoked without any timing.
+	 * @throws IllegalStateException
+	 *             if the rules rewrite some path back to itself.
+	 */
+	public CompiledRuleSet(List<URLRewriterRule> rules, boolean collectStatistics) {
+		this(rules, collectStatistics, null);
+	}
+
+	/**
+	 * Compiles a list of rules, in parallel if there are many of them.
+	 *
+	 * @param rules
+	 *            a <code>List</code> of <code>URLRewriterRule</code>, in the
+	 *            order they must be applied. It cannot be null.
+	 * @param collectStatistics
+	 *            whether to keep {@link RuleStatistics} for each rule. When
+	 *            <code>false</code>, rules are invoked without any timing.
+	 * @param pool
+	 *            the {@link ForkJoinPool} the indexes are built and the chains
+	 *            resolved in, or <code>null</code> to compile on the calling
+	 *            thread.
+	 * @throws IllegalStateException
+	 *             if the rules rewrite some path back to itself.
+	 */
+	public CompiledRuleSet(List<URLRewriterRule> rules, boolean collectStatistics,
+			ForkJoinPool pool) {
+
+		assert rules != null;
+
+		long start = System.nanoTime();
+		this.rules = rules.toArray(new URLRewriterRule[rules.size()]);
+		this.conditions = new RuleCondition[this.rules.length];
+		if (this.rules.length < PARALLEL_THRESHOLD) {
+			pool = null;
+		}
+
+		ContextURLRewriterRule[] contextRules = null;
+		boolean[] terminal = null;
+		LongAdder[] matches = null;
+		int[] hostRules = null;
+		int[] patternRules = null;
+		int[] literalRules = null;
+		int[] headerRules = null;
+		int[] pathRules = null;
+		int[] prefixRules = null;
+		int[] unindexed = null;
+		boolean deterministic = true;
+		boolean usesMethod = false;
+
+		for (int position = 0; position < this.rules.length; position++) {
+
+			URLRewriterRule rule = this.rules[position];
+			RuleCondition condition = null;
+			if (rule instanceof DeclarativeURLRewriterRule) {
+				condition = ((DeclarativeURLRewriterRule) rule).getCondition();
+			}
+			conditions[position] = condition;
+			if (rule instanceof ContextURLRewriterRule) {
+				if (contextRules == null) {
+					contextRules = new ContextURLRewriterRule[this.rules.length];
+				}
+				contextRules[position] = (ContextURLRewriterRule) rule;
+			}
+			if (rule instanceof TerminalRule && ((TerminalRule) rule).isTerminal()) {
+				if (terminal == null) {
+					terminal = new boolean[this.rules.length];
+				}
+				terminal[position] = true;
+			}
+			if (rule instanceof ReorderableRule) {
+				if (matches == null) {
+					matches = new LongAdder[this.rules.length];
+				}
+				matches[position] = new LongAdder();
+			}
+			deterministic &= rule instanceof DeterministicRule;
+			usesMethod |= condition == null || condition.getMethod() != null;
+
+			if (condition == null) {
+				unindexed = IntArrays.append(unindexed, position);
+			} else if (rule instanceof HeaderRule) {
+				headerRules = IntArrays.append(headerRules, position);
+			} else if (condition.getHost() != null) {
+				hostRules = IntArrays.append(hostRules, position);
+			} else if (rule instanceof PatternRule) {
+				patternRules = IntArrays.append(patternRules, position);
+			} else if (rule instanceof RegexRule
+					&& ((RegexRule) rule).getRequiredLiteral() != null) {
+				literalRules = IntArrays.append(literalRules, position);
+			} else if (condition.getPath() != null) {
+				pathRules = IntArrays.append(pathRules, position);
+			} else if (condition.getPathPrefix() != null) {
+				prefixRules = IntArrays.append(prefixRules, position);
+			} else {
+				unindexed = IntArrays.append(unindexed, position);
+			}
+
+		}
+		long classified = System.nanoTime();
+
+		// each task fills its own index, so they don't need any locking.
+		final int[] patterns = patternRules;
+		final int[] literals = literalRules;
+		final int[] headers = headerRules;
+		final int[] paths = pathRules;
+		final int[] prefixes = prefixRules;
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		tasks.add(() -> {
+			for (int position : positions(patterns)) {
+				byPattern.add(((PatternRule) this.rules[position]).getPattern(), position);
+				patternPrefixes.add(conditions[position].getPathPrefix(), position);
+			}
+		});
+		tasks.add(() -> {
+			for (int position : positions(literals)) {
+				byLiteral.add(((RegexRule) this.rules[position]).getRequiredLiteral(), position);
+			}
+			byLiteral.compile();
+		});
+		tasks.add(() -> {
+			for (int position : positions(headers)) {
+				byHeader.add(((HeaderRule) this.rules[position]).getHeaderCondition(), position);
+			}
+			byHeader.compile();
+		});
+		tasks.add(() -> {
+			for (int position : positions(paths)) {
+				add(byPath, conditions[position].getPath(), position);
+			}
+		});
+		tasks.add(() -> {
+			for (int position : positions(prefixes)) {
+				byPathPrefix.add(conditions[position].getPathPrefix(), position);
+			}
+		});
+		byHost.addAll(this.rules, conditions, hostRules, tasks);
+		run(pool, tasks);
+		long indexed = System.nanoTime();
+
+		this.contextRules = contextRules;
+		this.terminal = terminal;
+		this.matches = matches;
+		this.unindexed = unindexed;
+		this.pathFilter = unindexed == null && headerRules == null ? filter(byPath.keySet())
+				: null;
+		this.deterministic = deterministic;
+		this.usesMethod = usesMethod;
+		this.chains = new RewriteChainResolver(this).resolve(pool);
+		long resolved = System.nanoTime();
+
+		if (collectStatistics) {
+			statistics = new RuleStatistics[this.rules.length];
+			for (int position = 0; position < statistics.length; position++) {
+				statistics[position] = new RuleStatistics(position, this.rules[position].toString());
+			}
+		} else {
+			statistics = null;
+		}
+
+		Map<String, Long> compileNanos = new LinkedHashMap<String, Long>();
+		compileNanos.put("classify", classified - start);
+		compileNanos.put("indexes", indexed - classified);
+		compileNanos.put("chains", resolved - indexed);
+		this.compileNanos = Collections.unmodifiableMap(compileNanos);
+
+	}
+
+	private static int[] positions(int[] positions) {
+		return positions != null ? positions : NO_POSITIONS;
+	}
+
+	/**
+	 * Runs independent tasks, in parallel if a pool is given, and waits for
+	 * all of them. The first exception thrown by a task is rethrown.
+	 */
+	static void run(ForkJoinPool pool, List<Runnable> tasks) {
+
+		if (pool == null || tasks.size() < 2) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+
+		List<ForkJoinTask<?>> submitted = new ArrayList<ForkJoinTask<?>>(tasks.size());
+		for (Runnable task : tasks) {
+			submitted.add(pool.submit(task));
+		}
+		for (ForkJoinTask<?> task : submitted) {
+			task.join();
+		}
+
+	}
+
+	private static void add(Map<String, int[]> index, String key, int position) {
+		index.put(key, IntArrays.append(index.get(key), position));
+	}
+
+	private static BloomFilter filter(Set<String> keys) {
+		BloomFilter filter = new BloomFilter(keys.size());
+		for (String key : keys) {
+			filter.add(key);
+		}
+		return filter;
+	}
+
+	/**
+	 * Tells whether any rule could apply to a request. It always returns
+	 * <code>true</code> if some rule is opaque, has no path or host key or is
+	 * a {@link HeaderRule}.
+	 * Requests for which it returns <code>false</code> can skip
+	 * {@link #process(Request)} altogether.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean mightMatch(Request request) {
+
+		if (pathFilter == null) {
+			return true;
+		}
+
+		String path = request.getPath();
+		return pathFilter.mightContain(path)
+				|| byHost.contains(request.getServerName())
+				|| (byPathPrefix.size() > 0 && byPathPrefix.containsPrefixOf(path))
+				|| (patternPrefixes.size() > 0 && patternPrefixes.containsPrefixOf(path))
+				|| (byLiteral.size() > 0 && byLiteral.match(path) != null);
+
+	}
+
+	/**
+	 * Applies the rules to a request.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	public Request process(Request request) {
+		return process(request, true, false);
+	}
+
+	/**
+	 * Applies the rules to a request like {@link #process(Request)}, but
+	 * returns a {@link TerminalRequest} wrapping the result when a terminal
+	 * rule ended the evaluation, so the caller knows to skip the rules it
+	 * would apply next.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	public Request processMarkingTerminal(Request request) {
+		return process(request, true, true);
+	}
+
+	/**
+	 * Applies the rules to a request that isn't really being served, such as
+	 * the one checking a rewritten link, without counting it in the
+	 * {@link RuleStatistics} or in the matches of the {@link ReorderableRule}s.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	public Request evaluate(Request request) {
+		return process(request, false, false);
+	}
+
+	private Request process(Request request, boolean counted, boolean markTerminal) {
+
+		String path = request.getPath();
+		String host = request.getServerName();
+		int[] pathCandidates = byPath.get(path);
+		int[] hostCandidates = byHost.candidates(host, path);
+		PathPatternAutomaton.Matches patternMatches = findPatterns(path);
+		int[] patternCandidates = matchPatterns(path, patternMatches != null ? patternMatches
+				.getPositions() : null);
+		int[] headerCandidates = byHeader.size() > 0 ? byHeader.candidates(request) : null;
+		RewriteContext context = null;
+		int position = -1;
+
+		while (true) {
+
+			int next = next(path, pathCandidates, hostCandidates, patternCandidates,
+					headerCandidates, position);
+			if (next == IntArrays.NONE) {
+				return request;
+			}
+
+			RuleCondition condition = conditions[next];
+			if (condition == null || condition.matches(request)) {
+
+				if (contextRules != null && contextRules[next] != null
+						&& (context == null || context.getRequest() != request)) {
+					// built once per request, whatever the number of rules using it.
+					context = new RewriteContext(request);
+				}
+
+				int[] offsets = null;
+				if (patternMatches != null && rules[next].getClass() == PatternRule.class) {
+					// null for the rules of a host, which aren't in the automaton.
+					offsets = patternMatches.getOffsets(next);
+				}
+				Request result = counted ? invoke(next, request, context, offsets) : apply(next,
+						request, context, offsets);
+				if (result instanceof ActionRequest) {
+					return result;
+				}
+				if (chains[next] != null) {
+					return markTerminal && chains[next].isTerminal() ? new TerminalRequest(result)
+							: result;
+				}
+
+				if (result != request && terminal != null && terminal[next]) {
+					// the final URL, like mod_rewrite's [L].
+					return markTerminal ? new TerminalRequest(result) : result;
+				}
+
+				if (result != request) {
+					request = result;
+					path = request.getPath();
+					host = request.getServerName();
+					pathCandidates = byPath.get(path);
+					hostCandidates = byHost.candidates(host, path);
+					patternMatches = findPatterns(path);
+					patternCandidates = matchPatterns(path, patternMatches != null
+							? patternMatches.getPositions() : null);
+					if (byHeader.size() > 0 && request.getClass() != SimpleRequestWrapper.class) {
+						// other requests may override the headers too.
+						headerCandidates = byHeader.candidates(request);
+					}
+				}
+
+			}
+
+			position = next;
+
+		}
+
+	}
+
+	private Request invoke(int position, Request request, RewriteContext context, int[] offsets) {
+
+		Request result;
+		if (statistics == null) {
+			result = apply(position, request, context, offsets);
+		} else {
+			long start = System.nanoTime();
+			result = apply(position, request, context, offsets);
+			statistics[position].record(System.nanoTime() - start, result != request);
+		}
+
+		if (matches != null && matches[position] != null && result != request) {
+			matches[position].increment();
+		}
+		return result;
+
+	}
+
+	private Request apply(int position, Request request, RewriteContext context, int[] offsets) {
+
+		RewriteChain chain = chains[position];
+		if (chain != null) {
+			return new SimpleRequestWrapper(request, chain.getServerName(), chain.getPath());
+		}
+		if (rules[position].getClass() == HeaderRule.class) {
+			// its header condition was checked when the candidates were found.
+			HeaderRule rule = (HeaderRule) rules[position];
+			return new SimpleRequestWrapper(request, rule.getServerName(), rule.getPath());
+		}
+		if (offsets != null) {
+			// its path was matched by the automaton.
+			return ((PatternRule) rules[position]).process(request, offsets);
+		}
+
+		Request result;
+		if (contextRules != null && contextRules[position] != null) {
+			result = contextRules[position].process(context);
+		} else {
+			result = rules[position].process(request);
+		}
+		if (result == null) {
+			throw new RuntimeException(URL_REWRITER_RULE_PROCESS_MUST_NOT_RETURN_NULL);
+		}
+		return result;
+
+	}
+
+	private int next(String path, int[] pathCandidates, int[] hostCandidates,
+			int[] patternCandidates, int[] headerCandidates, int position) {
+
+		int next = Math.min(IntArrays.firstAfter(unindexed, position),
+				Math.min(IntArrays.firstAfter(pathCandidates, position),
+						IntArrays.firstAfter(hostCandidates, position)));
+		next = Math.min(next, IntArrays.firstAfter(patternCandidates, position));
+		next = Math.min(next, IntArrays.firstAfter(headerCandidates, position));
+		if (byPathPrefix.size() > 0) {
+			next = Math.min(next, byPathPrefix.next(path, position));
+		}
+		return next;
+
+	}
+
+	/**
+	 * Returns the position of the next rule after <code>position</code> that
+	 * may apply to a path and server name, without checking its condition.
+	 * Since the headers aren't known, every {@link HeaderRule} may apply.
+	 *
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @param host
+	 *            a {@link String} or <code>null</code> to include the rules
+	 *            of every host.
+	 * @param position
+	 *            an <code>int</code>.
+	 * @return a position or {@link IntArrays#NONE}.
+	 */
+	int next(String path, String host, int position) {
+		return next(path, byPath.get(path), host != null ? byHost.candidates(host, path)
+				: byHost.anyHostCandidates(path), matchPatterns(path), byHeader.getPositions(),
+				position);
+	}
+
+	/**
+	 * Returns the rule at a position.
+	 *
+	 * @param position
+	 *            an <code>int</code> between 0 and {@link #size()} - 1.
+	 * @return an {@link URLRewriterRule}.
+	 */
+	public URLRewriterRule getRule(int position) {
+		return rules[position];
+	}
+
+	RuleCondition getCondition(int position) {
+		return conditions[position];
+	}
+
+	private int[] matchPatterns(String path) {
+		return matchPatterns(path, byPattern.size() > 0 ? byPattern.match(path) : null);
+	}
+
+	private PathPatternAutomaton.Matches findPatterns(String path) {
+		return byPattern.size() > 0 ? byPattern.find(path) : null;
+	}
+
+	private int[] matchPatterns(String path, int[] candidates) {
+
+		if (byLiteral.size() > 0) {
+			candidates = IntArrays.union(candidates, byLiteral.match(path));
+		}
+		return candidates;
+
+	}
+
+	/**
+	 * Returns the statistics of each rule, in rule order.
+	 *
+	 * @return a <code>List</code> of {@link RuleStatistics}, empty if they
+	 *         aren't collected.
+	 */
+	public List<RuleStatistics> getStatistics() {
+		return statistics != null ? Collections.unmodifiableList(Arrays.asList(statistics))
+				: Collections.<RuleStatistics> emptyList();
+	}
+
+	/**
+	 * Returns the rules with each run of adjacent {@link ReorderableRule}s
+	 * sorted by the number of requests they rewrote, most first. Rules that
+	 * rewrote as many requests keep their current order.
+	 *
+	 * @return a <code>List</code> of <code>URLRewriterRule</code>, or
+	 *         <code>null</code> if the order wouldn't change.
+	 */
+	public List<URLRewriterRule> reorderedByMatches() {
+
+		if (matches == null) {
+			return null;
+		}
+
+		URLRewriterRule[] reordered = rules.clone();
+		final long[] counts = new long[rules.length];
+		boolean changed = false;
+		int start = 0;
+
+		while (start < rules.length) {
+
+			if (matches[start] == null) {
+				start++;
+				continue;
+			}
+
+			int end = start + 1;
+			while (end < rules.length && matches[end] != null) {
+				end++;
+			}
+
+			Integer[] order = new Integer[end - start];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = start + i;
+				counts[start + i] = matches[start + i].sum();
+			}
+			// a stable sort, so ties keep their order.
+			Arrays.sort(order, (first, second) -> Long.compare(counts[second], counts[first]));
+			for (int i = 0; i < order.length; i++) {
+				reordered[start + i] = rules[order[i]];
+				changed |= order[i] != start + i;
+			}
+			start = end;
+
+		}
+
+		return changed ? Arrays.asList(reordered) : null;
+
+	}
+
+	/**
+	 * Adds to the match counts of the {@link ReorderableRule}s half of those
+	 * the same rules had in another set, so older requests still count when
+	 * reordering again, with a weight that halves each time.
+	 *
+	 * @param previous
+	 *            the {@link CompiledRuleSet} this one replaces. It cannot be
+	 *            null.
+	 */
+	public void inheritMatches(CompiledRuleSet previous) {
+
+		assert previous != null;
+		if (matches == null || previous.matches == null) {
+			return;
+		}
+
+		Map<URLRewriterRule, Long> counts = new IdentityHashMap<URLRewriterRule, Long>();
+		for (int position = 0; position < previous.rules.length; position++) {
+			if (previous.matches[position] != null) {
+				counts.put(previous.rules[position], previous.matches[position].sum());
+			}
+		}
+		for (int position = 0; position < rules.length; position++) {
+			Long count = counts.get(rules[position]);
+			if (matches[position] != null && count != null) {
+				matches[position].add(count / 2);
+			}
+		}
+
+	}
+
+	/**
+	 * Takes over the {@link RuleStatistics} of the rules of the rule set this
+	 * one replaces, matching them by identity, so reordering the rules
+	 * doesn't reset their statistics. Does nothing if either of them doesn't
+	 * collect statistics.
+	 *
+	 * @param previous
+	 *            the {@link CompiledRuleSet} this one replaces. It cannot be
+	 *            null.
+	 */
+	public void inheritStatistics(CompiledRuleSet previous) {
+
+		assert previous != null;
+		if (statistics == null || previous.statistics == null) {
+			return;
+		}
+
+		Map<URLRewriterRule, RuleStatistics> byRule = new IdentityHashMap<URLRewriterRule, RuleStatistics>();
+		for (int position = 0; position < previous.rules.length; position++) {
+			byRule.put(previous.rules[position], previous.statistics[position]);
+		}
+		for (int position = 0; position < rules.length; position++) {
+			RuleStatistics inherited = byRule.get(rules[position]);
+			if (inherited != null) {
+				statistics[position] = inherited.moveTo(position);
+			}
+		}
+
+	}
+
+	/**
+	 * Returns how long each phase of the compilation took, in the order they
+	 * ran: <code>classify</code>, <code>indexes</code> and
+	 * <code>chains</code>.
+	 *
+	 * @return an unmodifiable <code>Map</code> of phase names to nanoseconds.
+	 */
+	public Map<String, Long> getCompileNanos() {
+		return compileNanos;
+	}
+
+	/**
+	 * Tells whether all the rules are {@link DeterministicRule}s.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+
+	/**
+	 * Tells whether the result may depend on the HTTP method, either because
+	 * a condition requires one or because some rule is opaque.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean usesMethod() {
+		return usesMethod;
+	}
+
+	/**
+	 * Returns the number of rules in this set.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return rules.length;
+	}
+
+	/**
+	 * Tells whether this set has no rules.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEmpty() {
+		return rules.length == 0;
+	}
+
+}
@@ -0,0 +1,284 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tapestry5.urlrewriter.PathTemplate;
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TerminalRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Generates the Java source of an {@link org.apache.tapestry5.services.URLRewriter}
+ * applying {@link SimpleURLRewriterRule}s with exact paths and
+ * {@link PatternRule}s, none with host or method conditions or server names.
+ * Like {@link CompiledRuleSet}, the generated code applies the first rule
+ * after the last applied one that matches the current path, until none does:
+ * exact paths are found through a <code>switch</code>, which also picks among
+ * rules with the same path by position, and each pattern becomes a method with
+ * one loop per variable, matching like {@link PathTemplate#match(String)}.
+ * The path produced by a terminal rule is returned right away.
+ */
+public final class DispatcherGenerator {
+
+	private DispatcherGenerator() {
+	}
+
+	/**
+	 * Generates a class.
+	 * 
+	 * @param packageName
+	 *            a {@link String}, empty for the default package.
+	 * @param className
+	 *            a {@link String}. It cannot be null.
+	 * @param rules
+	 *            a <code>List</code> of {@link URLRewriterRule}s.
+	 * @return the source code, as a {@link String}.
+	 * @throws IllegalArgumentException
+	 *             if a rule can't be generated.
+	 * @throws IllegalStateException
+	 *             if the rules form a cycle, as {@link CompiledRuleSet} would
+	 *             report at startup.
+	 */
+	public static String generate(String packageName, String className, List<URLRewriterRule> rules) {
+
+		assert className != null;
+		assert rules != null;
+
+		Map<String, List<Integer>> exact = new LinkedHashMap<String, List<Integer>>();
+		List<Integer> patterns = new ArrayList<Integer>();
+		for (int i = 0; i < rules.size(); i++) {
+			URLRewriterRule rule = rules.get(i);
+			if (rule.getClass() == SimpleURLRewriterRule.class) {
+				SimpleURLRewriterRule simple = (SimpleURLRewriterRule) rule;
+				RuleCondition condition = simple.getCondition();
+				check(simple.getServerName() == null && condition.getPath() != null
+						&& condition.getHost() == null && condition.getMethod() == null, rule);
+				List<Integer> positions = exact.get(condition.getPath());
+				if (positions == null) {
+					positions = new ArrayList<Integer>();
+					exact.put(condition.getPath(), positions);
+				}
+				positions.add(i);
+			} else if (rule.getClass() == PatternRule.class) {
+				PatternRule pattern = (PatternRule) rule;
+				check(pattern.getServerName() == null && pattern.getCondition().getHost() == null
+						&& pattern.getCondition().getMethod() == null, rule);
+				patterns.add(i);
+			} else {
+				check(false, rule);
+			}
+		}
+
+		new CompiledRuleSet(rules);
+
+		StringBuilder out = new StringBuilder();
+		if (packageName != null && packageName.length() > 0) {
+			out.append("package ").append(packageName).append(";\n\n");
+		}
+		out.append("import org.apache.tapestry5.http.services.Request;\n");
+		out.append("import org.apache.tapestry5.services.URLRewriter;\n");
+		out.append("import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;\n\n");
+		out.append("/**\n * URL rewriter generated from ").append(rules.size())
+				.append(" rules by the tapestry-url-rewriter annotation processor.\n */\n");
+		out.append("public class ").append(className).append(" implements URLRewriter {\n\n");
+
+		if (terminal(rules)) {
+			out.append("\tprivate static final boolean[] TERMINAL = {");
+			for (int i = 0; i < rules.size(); i++) {
+				out.append(i > 0 ? ", " : " ").append(((TerminalRule) rules.get(i)).isTerminal());
+			}
+			out.append(" };\n\n");
+		}
+
+		out.append("\tpublic Request processRequest(Request request) {\n");
+		out.append("\t\tString path = rewrite(request.getPath());\n");
+		out.append("\t\treturn path != null ? new SimpleRequestWrapper(request, path) : request;\n");
+		out.append("\t}\n\n");
+
+		out.append("\tpublic boolean hasRequestRules() {\n");
+		out.append("\t\treturn ").append(!rules.isEmpty()).append(";\n");
+		out.append("\t}\n\n");
+
+		out.append("\t/**\n\t * Returns the rewritten path or null if no rule matches.\n\t */\n");
+		out.append("\tpublic static String rewrite(String path) {\n");
+		out.append("\t\tint after = -1;\n");
+		out.append("\t\tfor (;;) {\n");
+		out.append("\t\t\tint rule = -1;\n");
+		out.append("\t\t\tString next = null;\n");
+
+		if (!exact.isEmpty()) {
+			out.append("\t\t\tswitch (path) {\n");
+			for (Map.Entry<String, List<Integer>> entry : exact.entrySet()) {
+				out.append("\t\t\tcase ").append(literal(entry.getKey())).append(":\n");
+				String prefix = "\t\t\t\t";
+				for (int position : entry.getValue()) {
+					SimpleURLRewriterRule rule = (SimpleURLRewriterRule) rules.get(position);
+					out.append(prefix).append("if (after < ").append(position).append(") {\n");
+					out.append("\t\t\t\t\trule = ").append(position).append(";\n");
+					out.append("\t\t\t\t\tnext = ").append(literal(rule.getPath())).append(";\n");
+					out.append("\t\t\t\t}");
+					prefix = " else ";
+				}
+				out.append("\n\t\t\t\tbreak;\n");
+			}
+			out.append("\t\t\t}\n");
+		}
+
+		for (int position : patterns) {
+			out.append("\t\t\tif (after < ").append(position).append(" && (rule < 0 || rule > ")
+					.append(position).append(")) {\n");
+			out.append("\t\t\t\tString result = rule").append(position).append("(path);\n");
+			out.append("\t\t\t\tif (result != null) {\n");
+			out.append("\t\t\t\t\trule = ").append(position).append(";\n");
+			out.append("\t\t\t\t\tnext = result;\n");
+			out.append("\t\t\t\t}\n");
+			out.append("\t\t\t}\n");
+		}
+
+		out.append("\t\t\tif (rule < 0) {\n");
+		out.append("\t\t\t\treturn after < 0 ? null : path;\n");
+		out.append("\t\t\t}\n");
+		out.append("\t\t\tpath = next;\n");
+		if (terminal(rules)) {
+			out.append("\t\t\tif (TERMINAL[rule]) {\n");
+			out.append("\t\t\t\treturn path;\n");
+			out.append("\t\t\t}\n");
+		}
+		out.append("\t\t\tafter = rule;\n");
+		out.append("\t\t}\n");
+		out.append("\t}\n");
+
+		for (int position : patterns) {
+			PatternRule rule = (PatternRule) rules.get(position);
+			out.append("\n\t// ").append(literal(rule.getPattern().getPattern())).append(" -> ")
+					.append(literal(rule.getTarget().getPattern())).append("\n");
+			out.append("\tprivate static String rule").append(position).append("(String path) {\n");
+			pattern(out, rule.getPattern(), rule.getTarget());
+			out.append("\t}\n");
+		}
+
+		out.append("\n}\n");
+		return out.toString();
+
+	}
+
+	private static boolean terminal(List<URLRewriterRule> rules) {
+		for (URLRewriterRule rule : rules) {
+			if (((TerminalRule) rule).isTerminal()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void check(boolean supported, URLRewriterRule rule) {
+		if (!supported) {
+			throw new IllegalArgumentException(String.format(
+					"Rule %s can't be generated: only exact path and pattern rules without host, method or server name are supported",
+					rule));
+		}
+	}
+
+	/**
+	 * Generates a matcher with nested loops, trying the shortest value of each
+	 * variable first, as {@link PathTemplate#match(String)} does.
+	 */
+	private static void pattern(StringBuilder out, PathTemplate pattern, PathTemplate target) {
+
+		int count = pattern.getVariableCount();
+		String first = pattern.getLiteral(0);
+
+		if (count == 0) {
+			out.append("\t\treturn path.equals(").append(literal(first)).append(") ? ")
+					.append(literal(target.getLiteral(0))).append(" : null;\n");
+			return;
+		}
+
+		out.append("\t\tif (!path.startsWith(").append(literal(first)).append(")) {\n");
+		out.append("\t\t\treturn null;\n");
+		out.append("\t\t}\n");
+		out.append("\t\tint length = path.length();\n");
+		out.append("\t\tint s0 = ").append(first.length()).append(";\n");
+
+		String indent = "\t\t";
+		for (int i = 0; i < count; i++) {
+			String literal = pattern.getLiteral(i + 1);
+			out.append(indent).append("for (int e").append(i).append(" = s").append(i)
+					.append(" + 1; e").append(i).append(" <= length && path.charAt(e").append(i)
+					.append(" - 1) != '/'; e").append(i).append("++) {\n");
+			indent += "\t";
+			if (literal.length() > 0) {
+				out.append(indent).append("if (!path.startsWith(").append(literal(literal))
+						.append(", e").append(i).append(")) {\n");
+				out.append(indent).append("\tcontinue;\n");
+				out.append(indent).append("}\n");
+			}
+			if (i + 1 < count) {
+				out.append(indent).append("int s").append(i + 1).append(" = e").append(i)
+						.append(" + ").append(literal.length()).append(";\n");
+			} else {
+				out.append(indent).append("if (e").append(i).append(" + ")
+						.append(literal.length()).append(" == length) {\n");
+				out.append(indent).append("\treturn new StringBuilder(length)");
+				for (int j = 0; j < target.getVariableCount(); j++) {
+					if (target.getLiteral(j).length() > 0) {
+						out.append(".append(").append(literal(target.getLiteral(j))).append(")");
+					}
+					int variable = pattern.indexOf(target.getVariableNames().get(j));
+					out.append(".append(path, s").append(variable).append(", e").append(variable)
+							.append(")");
+				}
+				String last = target.getLiteral(target.getVariableCount());
+				if (last.length() > 0) {
+					out.append(".append(").append(literal(last)).append(")");
+				}
+				out.append(".toString();\n");
+				out.append(indent).append("}\n");
+			}
+		}
+		for (int i = count; i > 0; i--) {
+			indent = indent.substring(1);
+			out.append(indent).append("}\n");
+		}
+		out.append("\t\treturn null;\n");
+
+	}
+
+	/**
+	 * Returns a Java string literal, escaping everything outside printable
+	 * ASCII.
+	 */
+	static String literal(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20 || c > 0x7E) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+}
@@ -0,0 +1,203 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.HeaderCondition;
+import org.apache.tapestry5.urlrewriter.HeaderRule;
+
+/**
+ * Indexes the {@link HeaderCondition}s of the {@link HeaderRule}s by header
+ * name. Each header named by some condition is read once per request, and
+ * its value is classified into the positions of the rules whose condition it
+ * satisfies: exact values are looked up in a map, prefixes in a
+ * {@link PrefixTrie} and texts in a {@link LiteralAutomaton}, all over the
+ * value in lower case. Header values such as <code>User-Agent</code> repeat
+ * a lot, so the classifications are kept in a {@link SegmentedLruCache} per
+ * header, and a value seen before costs a single lookup. Values are chosen
+ * by the client, so only short ones are cached, bounding the memory taken
+ * by each cache. Longer values are classified again on every request.
+ * <p/>
+ * Like the other indexes, it's only written while a rule set is compiled,
+ * and {@link #compile()} must be called once before
+ * {@link #candidates(Request)}.
+ */
+final class HeaderIndex {
+
+	/**
+	 * Maximum number of values of each header whose classification is kept.
+	 */
+	static final int CACHE_SIZE = 4096;
+
+	/**
+	 * Maximum length of the header values whose classification is kept.
+	 */
+	static final int MAXIMUM_CACHED_LENGTH = 256;
+
+	private static final int[] NO_POSITIONS = new int[0];
+
+	private static final Header[] NO_HEADERS = new Header[0];
+
+	final private Map<String, Header> byName = new LinkedHashMap<String, Header>();
+
+	private Header[] headers = NO_HEADERS;
+
+	private int[] positions;
+
+	/**
+	 * Associates a position with a condition. Positions must be added in
+	 * increasing order.
+	 *
+	 * @param condition
+	 *            a {@link HeaderCondition}. It cannot be null.
+	 * @param position
+	 *            an <code>int</code>.
+	 */
+	void add(HeaderCondition condition, int position) {
+
+		String key = HeaderCondition.lowerCase(condition.getName());
+		Header header = byName.get(key);
+		if (header == null) {
+			header = new Header(condition.getName());
+			byName.put(key, header);
+		}
+		header.add(condition, position);
+		positions = IntArrays.append(positions, position);
+
+	}
+
+	/**
+	 * Prepares the index for lookups, once every condition is added.
+	 */
+	void compile() {
+		for (Header header : byName.values()) {
+			header.texts.compile();
+		}
+		headers = byName.values().toArray(new Header[byName.size()]);
+	}
+
+	/**
+	 * Returns the positions of the rules whose header condition a request
+	 * satisfies, reading each indexed header once.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a sorted <code>int[]</code> or <code>null</code> if there are
+	 *         none.
+	 */
+	int[] candidates(Request request) {
+		int[] candidates = null;
+		for (Header header : headers) {
+			candidates = IntArrays.union(candidates, header.classify(request.getHeader(header.name)));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Returns the positions of all the indexed rules, for lookups where the
+	 * headers aren't known.
+	 *
+	 * @return a sorted <code>int[]</code> or <code>null</code> if there are
+	 *         none.
+	 */
+	int[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the number of indexed rules.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	int size() {
+		return positions != null ? positions.length : 0;
+	}
+
+	final private static class Header {
+
+		final private String name;
+
+		final private Map<String, int[]> values = new HashMap<String, int[]>();
+
+		final private PrefixTrie prefixes = new PrefixTrie();
+
+		final private LiteralAutomaton texts = new LiteralAutomaton();
+
+		/**
+		 * The conditions with a text, by position, as the automaton compares
+		 * characters one at a time and its matches are checked again.
+		 */
+		final private Map<Integer, HeaderCondition> textConditions = new HashMap<Integer, HeaderCondition>();
+
+		final private SegmentedLruCache<String, int[]> cache = new SegmentedLruCache<String, int[]>(
+				CACHE_SIZE);
+
+		Header(String name) {
+			this.name = name;
+		}
+
+		void add(HeaderCondition condition, int position) {
+			if (condition.getValue() != null) {
+				values.put(condition.getValue(), IntArrays.append(values.get(condition.getValue()),
+						position));
+			} else if (condition.getPrefix() != null) {
+				prefixes.add(condition.getPrefix(), position);
+			} else {
+				texts.add(condition.getText(), position);
+				textConditions.put(position, condition);
+			}
+		}
+
+		int[] classify(String value) {
+
+			if (value == null) {
+				return null;
+			}
+
+			if (value.length() > MAXIMUM_CACHED_LENGTH) {
+				return match(HeaderCondition.lowerCase(value));
+			}
+
+			int[] positions = cache.get(value);
+			if (positions == null) {
+				positions = match(HeaderCondition.lowerCase(value));
+				cache.put(value, positions != null ? positions : NO_POSITIONS);
+			}
+			return positions != null && positions.length > 0 ? positions : null;
+
+		}
+
+		private int[] match(String value) {
+
+			int[] positions = IntArrays.union(values.get(value), prefixes.size() > 0 ? prefixes
+					.positions(value) : null);
+			int[] found = texts.size() > 0 ? texts.match(value) : null;
+			if (found != null) {
+				for (int position : found) {
+					if (textConditions.get(position).matchesLowerCase(value)) {
+						positions = IntArrays.union(positions, new int[] { position });
+					}
+				}
+			}
+			return positions;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,222 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Partitions the rules with a server name condition by host. Hosts are kept
+ * in a trie of their labels in reverse order, <code>com</code>, then
+ * <code>example</code>, then <code>shop</code> for
+ * <code>shop.example.com</code>, and each node has a {@link RuleIndex} for
+ * its exact host and another one for the wildcard host
+ * <code>*.shop.example.com</code>. Finding the rules of a server name walks
+ * one node per label, so it costs the same whatever the number of hosts.
+ * <p/>
+ * Like the other indexes, it's only written while a rule set is compiled.
+ * The rules of each host can be indexed by separate tasks (see
+ * {@link #addAll(URLRewriterRule[], RuleCondition[], int[], List)}).
+ */
+final class HostIndex {
+
+	final private Node root = new Node();
+
+	/**
+	 * All the rules, regardless of host, for lookups where the server name
+	 * isn't known.
+	 */
+	final private RuleIndex all = new RuleIndex();
+
+	private int size;
+
+	/**
+	 * Adds the rules at the given positions, whose conditions all have a
+	 * host. The trie is built at once, but the rules themselves are only
+	 * added by the returned tasks, one per host plus one for the rules of any
+	 * host, which don't share any state and can run in parallel.
+	 *
+	 * @param positions
+	 *            the sorted positions of the rules, or <code>null</code>.
+	 * @param tasks
+	 *            the <code>List</code> the tasks are added to.
+	 */
+	void addAll(final URLRewriterRule[] rules, final RuleCondition[] conditions,
+			final int[] positions, List<Runnable> tasks) {
+
+		if (positions == null) {
+			return;
+		}
+
+		Map<String, int[]> byHost = new LinkedHashMap<String, int[]>();
+		for (int position : positions) {
+			String host = conditions[position].getHost();
+			byHost.put(host, IntArrays.append(byHost.get(host), position));
+		}
+
+		for (Map.Entry<String, int[]> entry : byHost.entrySet()) {
+			final RuleIndex index = index(entry.getKey());
+			final int[] hostPositions = entry.getValue();
+			tasks.add(() -> {
+				for (int position : hostPositions) {
+					index.add(rules[position], conditions[position], position);
+				}
+			});
+		}
+		tasks.add(() -> {
+			for (int position : positions) {
+				all.add(rules[position], conditions[position], position);
+			}
+		});
+		size += positions.length;
+
+	}
+
+	/**
+	 * Returns the index of a host, exact or wildcard, creating it and its
+	 * trie nodes if needed.
+	 */
+	private RuleIndex index(String host) {
+
+		boolean wildcard = RuleCondition.isWildcard(host);
+		String name = wildcard ? host.substring(2) : host;
+
+		Node node = root;
+		int end = name.length();
+		while (end > 0) {
+			int dot = name.lastIndexOf('.', end - 1);
+			node = node.childOrCreate(name.substring(dot + 1, end));
+			end = dot;
+		}
+
+		if (wildcard) {
+			if (node.wildcard == null) {
+				node.wildcard = new RuleIndex();
+			}
+			return node.wildcard;
+		}
+		if (node.exact == null) {
+			node.exact = new RuleIndex();
+		}
+		return node.exact;
+
+	}
+
+	/**
+	 * Returns the sorted positions of the rules of a server name that may
+	 * apply to a path: those of the exact host and those of every wildcard
+	 * host covering it.
+	 */
+	int[] candidates(String host, String path) {
+
+		if (size == 0 || host == null) {
+			return null;
+		}
+
+		int[] candidates = null;
+		Node node = root;
+		int end = host.length();
+		while (end > 0) {
+			int dot = host.lastIndexOf('.', end - 1);
+			node = node.child(host.substring(dot + 1, end));
+			if (node == null) {
+				return candidates;
+			}
+			end = dot;
+			// a wildcard needs at least one more label.
+			if (end > 0 && node.wildcard != null) {
+				candidates = IntArrays.merge(candidates, node.wildcard.candidates(path));
+			}
+		}
+
+		if (node.exact != null) {
+			candidates = IntArrays.merge(candidates, node.exact.candidates(path));
+		}
+		return candidates;
+
+	}
+
+	/**
+	 * Returns the sorted positions of the rules of any host that may apply to
+	 * a path.
+	 */
+	int[] anyHostCandidates(String path) {
+		return size > 0 ? all.candidates(path) : null;
+	}
+
+	/**
+	 * Tells whether some rule may apply to a server name.
+	 */
+	boolean contains(String host) {
+
+		if (size == 0 || host == null) {
+			return false;
+		}
+
+		Node node = root;
+		int end = host.length();
+		while (end > 0) {
+			int dot = host.lastIndexOf('.', end - 1);
+			node = node.child(host.substring(dot + 1, end));
+			if (node == null) {
+				return false;
+			}
+			end = dot;
+			if (end > 0 && node.wildcard != null) {
+				return true;
+			}
+		}
+		return node.exact != null;
+
+	}
+
+	/**
+	 * Returns the number of rules in this index.
+	 */
+	int size() {
+		return size;
+	}
+
+	final private static class Node {
+
+		private Map<String, Node> children;
+
+		private RuleIndex exact;
+
+		private RuleIndex wildcard;
+
+		Node child(String label) {
+			return children != null ? children.get(label) : null;
+		}
+
+		Node childOrCreate(String label) {
+			if (children == null) {
+				children = new HashMap<String, Node>(4);
+			}
+			Node child = children.get(label);
+			if (child == null) {
+				child = new Node();
+				children.put(label, child);
+			}
+			return child;
+		}
+
+	}
+
+}
@@ -0,0 +1,171 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for the sorted <code>int</code> arrays of rule positions used by
+ * the rule indexes.
+ */
+public final class IntArrays {
+
+	/**
+	 * Value returned when there's no position.
+	 */
+	public static final int NONE = Integer.MAX_VALUE;
+
+	private IntArrays() {
+	}
+
+	/**
+	 * Returns a copy of an array with a value appended to it.
+	 *
+	 * @param array
+	 *            an <code>int[]</code> or <code>null</code>.
+	 * @param value
+	 *            an <code>int</code>.
+	 * @return an <code>int[]</code>.
+	 */
+	public static int[] append(int[] array, int value) {
+
+		if (array == null) {
+			return new int[] { value };
+		}
+		int[] result = new int[array.length + 1];
+		System.arraycopy(array, 0, result, 0, array.length);
+		result[array.length] = value;
+		return result;
+
+	}
+
+	/**
+	 * Returns the smallest value in a sorted array that is greater than
+	 * <code>after</code>.
+	 *
+	 * @param array
+	 *            a sorted <code>int[]</code> or <code>null</code>.
+	 * @param after
+	 *            an <code>int</code>.
+	 * @return the value or {@link #NONE}.
+	 */
+	public static int firstAfter(int[] array, int after) {
+
+		if (array == null) {
+			return NONE;
+		}
+
+		int low = 0;
+		int high = array.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (array[middle] <= after) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low < array.length ? array[low] : NONE;
+
+	}
+
+	/**
+	 * Merges two sorted arrays. If one of them is null or empty, the other
+	 * one is returned as is.
+	 *
+	 * @param first
+	 *            a sorted <code>int[]</code> or <code>null</code>.
+	 * @param second
+	 *            a sorted <code>int[]</code> or <code>null</code>.
+	 * @return a sorted <code>int[]</code> or <code>null</code>.
+	 */
+	public static int[] merge(int[] first, int[] second) {
+
+		if (first == null || first.length == 0) {
+			return second;
+		}
+		if (second == null || second.length == 0) {
+			return first;
+		}
+
+		int[] result = new int[first.length + second.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < first.length && j < second.length) {
+			result[k++] = first[i] <= second[j] ? first[i++] : second[j++];
+		}
+		while (i < first.length) {
+			result[k++] = first[i++];
+		}
+		while (j < second.length) {
+			result[k++] = second[j++];
+		}
+		return result;
+
+	}
+
+	/**
+	 * Returns the union of two sorted arrays without duplicated values. If
+	 * one of them already holds every value, it's returned as is.
+	 *
+	 * @param first
+	 *            a sorted <code>int[]</code> without duplicates, or
+	 *            <code>null</code>.
+	 * @param second
+	 *            a sorted <code>int[]</code> without duplicates, or
+	 *            <code>null</code>.
+	 * @return a sorted <code>int[]</code> or <code>null</code>.
+	 */
+	public static int[] union(int[] first, int[] second) {
+
+		if (first == second || second == null || second.length == 0) {
+			return first;
+		}
+		if (first == null || first.length == 0) {
+			return second;
+		}
+
+		int[] result = new int[first.length + second.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				result[k++] = first[i++];
+			} else if (first[i] > second[j]) {
+				result[k++] = second[j++];
+			} else {
+				result[k++] = first[i++];
+				j++;
+			}
+		}
+		while (i < first.length) {
+			result[k++] = first[i++];
+		}
+		while (j < second.length) {
+			result[k++] = second[j++];
+		}
+
+		if (k == first.length) {
+			return first;
+		}
+		if (k == second.length) {
+			return second;
+		}
+		return Arrays.copyOf(result, k);
+
+	}
+
+}
@@ -0,0 +1,185 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over the literals required by a set of rules, used
+ * to find in a single pass over a path every rule whose literal occurs in
+ * it. Literals are compared ignoring case, so the result is a superset of the
+ * rules that can match, whatever their case sensitivity. Literals are added
+ * first, then {@link #compile()} must be called once before
+ * {@link #match(String)}; the automaton needs no synchronization afterwards
+ * once safely published.
+ */
+public final class LiteralAutomaton {
+
+	private static final char[] NO_KEYS = new char[0];
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	final private Node root = new Node();
+
+	private int size;
+
+	private boolean compiled;
+
+	/**
+	 * Associates a position with a literal. Positions must be added in
+	 * increasing order.
+	 *
+	 * @param literal
+	 *            a non-empty {@link String}.
+	 * @param position
+	 *            an <code>int</code>.
+	 */
+	public void add(String literal, int position) {
+
+		assert literal.length() > 0;
+		assert !compiled;
+		Node node = root;
+		for (int i = 0; i < literal.length(); i++) {
+			node = node.childOrCreate(fold(literal.charAt(i)));
+		}
+		node.positions = IntArrays.append(node.positions, position);
+		size++;
+
+	}
+
+	private static char fold(char c) {
+		return c < 0x80 ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c) : Character
+				.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Computes the failure links, breadth first, and the positions reported
+	 * by each state, which include those of the states its failure links
+	 * lead to.
+	 */
+	public void compile() {
+
+		Queue<Node> queue = new ArrayDeque<Node>();
+		root.failure = root;
+		for (Node child : root.children) {
+			child.failure = root;
+			queue.add(child);
+		}
+
+		while (!queue.isEmpty()) {
+
+			Node node = queue.remove();
+			node.positions = IntArrays.union(node.positions, node.failure.positions);
+
+			for (int i = 0; i < node.keys.length; i++) {
+				Node child = node.children[i];
+				Node failure = node.failure;
+				while (failure != root && failure.child(node.keys[i]) == null) {
+					failure = failure.failure;
+				}
+				Node target = failure.child(node.keys[i]);
+				child.failure = target != null && target != child ? target : root;
+				queue.add(child);
+			}
+
+		}
+		compiled = true;
+
+	}
+
+	/**
+	 * Returns the positions of the literals that occur in a value.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a sorted <code>int[]</code> or <code>null</code> if none occurs.
+	 */
+	public int[] match(String value) {
+
+		assert compiled;
+		int[] positions = null;
+		Node node = root;
+		for (int i = 0; i < value.length(); i++) {
+
+			char c = fold(value.charAt(i));
+			Node next = node.child(c);
+			while (next == null && node != root) {
+				node = node.failure;
+				next = node.child(c);
+			}
+			node = next != null ? next : root;
+			if (node.positions != null) {
+				positions = IntArrays.union(positions, node.positions);
+			}
+
+		}
+		return positions;
+
+	}
+
+	/**
+	 * Returns the number of literal/position pairs in this automaton.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return size;
+	}
+
+	final private static class Node {
+
+		private char[] keys = NO_KEYS;
+
+		private Node[] children = NO_CHILDREN;
+
+		private Node failure;
+
+		private int[] positions;
+
+		Node child(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index >= 0 ? children[index] : null;
+		}
+
+		Node childOrCreate(char c) {
+
+			int index = Arrays.binarySearch(keys, c);
+			if (index >= 0) {
+				return children[index];
+			}
+
+			index = -index - 1;
+			Node child = new Node();
+
+			char[] newKeys = new char[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			newKeys[index] = c;
+
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+			newChildren[index] = child;
+
+			keys = newKeys;
+			children = newChildren;
+			return child;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,411 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Arrays;
+
+import org.apache.tapestry5.urlrewriter.PathTemplate;
+
+/**
+ * Automaton combining many {@link PathTemplate}s. Templates share a
+ * character trie for their literal parts, and each variable is a state that
+ * loops on any character but <code>/</code>. Matching simulates the
+ * automaton over the path once, keeping the set of active states, so its
+ * cost depends on the path length and the shape of the templates, not on
+ * how many templates there are.
+ * <p/>
+ * {@link #find(String)} also tracks where each variable starts and ends.
+ * Active states are kept in priority order, ending a variable before
+ * extending it, and a state reached twice in a step keeps its first
+ * offsets, so each template gets the same offsets as
+ * {@link PathTemplate#match(String)} without backtracking. Each thread
+ * reuses its active state sets across all the automata.
+ * <p/>
+ * Like {@link PrefixTrie}, it's only written while a rule set is compiled.
+ */
+public final class PathPatternAutomaton {
+
+	private static final char[] NO_KEYS = new char[0];
+
+	private static final State[] NO_STATES = new State[0];
+
+	private static final ThreadLocal<Matcher> MATCHERS = ThreadLocal.withInitial(Matcher::new);
+
+	final private State start = new State(-1, 0);
+
+	private int size;
+
+	/**
+	 * Number of variable states, which are the only ones reachable from two
+	 * active states at once: their parent and themselves.
+	 */
+	private int variableStateCount;
+
+	private int maximumVariables;
+
+	/**
+	 * Adds a template accepted at a rule position. Positions must be added in
+	 * increasing order.
+	 *
+	 * @param template
+	 *            a {@link PathTemplate}. It cannot be null.
+	 * @param position
+	 *            an <code>int</code>.
+	 */
+	public void add(PathTemplate template, int position) {
+
+		State state = start;
+		for (int i = 0; i <= template.getVariableCount(); i++) {
+			String literal = template.getLiteral(i);
+			for (int j = 0; j < literal.length(); j++) {
+				state = state.literalOrCreate(literal.charAt(j));
+			}
+			if (i < template.getVariableCount()) {
+				state = state.variableOrCreate(i);
+			}
+		}
+		state.positions = IntArrays.append(state.positions, position);
+		maximumVariables = Math.max(maximumVariables, template.getVariableCount());
+		size++;
+
+	}
+
+	/**
+	 * Returns the sorted positions of all the templates matching a path.
+	 *
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @return an <code>int[]</code> or <code>null</code> if no template
+	 *         matches.
+	 */
+	public int[] match(String path) {
+
+		Matcher matcher = MATCHERS.get();
+		matcher.run(this, path, false);
+
+		int[] result = null;
+		for (int i = 0; i < matcher.count; i++) {
+			if (matcher.states[i].positions != null) {
+				result = IntArrays.merge(result, matcher.states[i].positions);
+			}
+		}
+		return result;
+
+	}
+
+	/**
+	 * Returns the positions of all the templates matching a path, with the
+	 * offsets of their variables.
+	 *
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link Matches} or <code>null</code> if no template matches.
+	 */
+	public Matches find(String path) {
+
+		Matcher matcher = MATCHERS.get();
+		int width = matcher.run(this, path, true);
+
+		Matches result = null;
+		for (int i = 0; i < matcher.count; i++) {
+			State state = matcher.states[i];
+			if (state.positions != null) {
+				int[] offsets = Arrays.copyOfRange(matcher.offsets, i * width, i * width
+						+ state.variables * 2);
+				if (state.index >= 0) {
+					// the last variable runs to the end of the path.
+					offsets[state.index * 2 + 1] = path.length();
+				}
+				result = Matches.merge(result, state.positions, offsets);
+			}
+		}
+		return result;
+
+	}
+
+	/**
+	 * Returns the number of templates in this automaton.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Templates matching a path, returned by {@link PathPatternAutomaton#find(String)}.
+	 */
+	public static final class Matches {
+
+		final private int[] positions;
+
+		final private int[][] offsets;
+
+		private Matches(int[] positions, int[][] offsets) {
+			this.positions = positions;
+			this.offsets = offsets;
+		}
+
+		private static Matches merge(Matches first, int[] positions, int[] offsets) {
+
+			if (first == null) {
+				int[][] shared = new int[positions.length][];
+				Arrays.fill(shared, offsets);
+				return new Matches(positions, shared);
+			}
+
+			int length = first.positions.length + positions.length;
+			int[] mergedPositions = new int[length];
+			int[][] mergedOffsets = new int[length][];
+			int i = 0, j = 0, k = 0;
+			while (i < first.positions.length || j < positions.length) {
+				if (j == positions.length
+						|| (i < first.positions.length && first.positions[i] < positions[j])) {
+					mergedOffsets[k] = first.offsets[i];
+					mergedPositions[k++] = first.positions[i++];
+				} else {
+					mergedOffsets[k] = offsets;
+					mergedPositions[k++] = positions[j++];
+				}
+			}
+			return new Matches(mergedPositions, mergedOffsets);
+
+		}
+
+		/**
+		 * Returns the sorted positions of the matching templates.
+		 *
+		 * @return an <code>int[]</code>. It must not be modified.
+		 */
+		public int[] getPositions() {
+			return positions;
+		}
+
+		/**
+		 * Returns the variable offsets of the template at a position, in the
+		 * format of {@link PathTemplate#match(String)}.
+		 *
+		 * @param position
+		 *            an <code>int</code>.
+		 * @return an <code>int[]</code>, or <code>null</code> if the template
+		 *         at that position doesn't match. It must not be modified.
+		 */
+		public int[] getOffsets(int position) {
+			int index = Arrays.binarySearch(positions, position);
+			return index >= 0 ? offsets[index] : null;
+		}
+
+	}
+
+	/**
+	 * Active states of a thread's matching, in priority order, with the
+	 * variable offsets of each one in a slice of <code>offsets</code>.
+	 */
+	private static final class Matcher {
+
+		private State[] states = new State[16];
+
+		private int[] offsets = new int[0];
+
+		private int count;
+
+		private State[] nextStates = new State[16];
+
+		private int[] nextOffsets = new int[0];
+
+		private int nextCount;
+
+		/**
+		 * The step each variable state was last reached at, by id. Steps
+		 * keep increasing from one run to the next, so it's never cleared.
+		 */
+		private int[] reached = new int[16];
+
+		private int step;
+
+		/**
+		 * Simulates an automaton over a path, leaving the final states in
+		 * <code>states</code>.
+		 *
+		 * @return the number of offsets kept per state.
+		 */
+		int run(PathPatternAutomaton automaton, String path, boolean tracking) {
+
+			int width = tracking ? automaton.maximumVariables * 2 : 0;
+			if (offsets.length < states.length * width) {
+				offsets = new int[states.length * width];
+				nextOffsets = new int[nextStates.length * width];
+			}
+			if (reached.length < automaton.variableStateCount) {
+				reached = new int[automaton.variableStateCount];
+				step = 0;
+			}
+			count = 1;
+			states[0] = automaton.start;
+
+			for (int i = 0; i < path.length() && count > 0; i++) {
+
+				char c = path.charAt(i);
+				nextCount = 0;
+				if (++step == 0) {
+					Arrays.fill(reached, 0);
+					step = 1;
+				}
+
+				for (int j = 0; j < count; j++) {
+
+					State state = states[j];
+					State target = state.literal(c);
+					if (target != null) {
+						int slot = add(target, j, width);
+						if (width > 0 && state.index >= 0) {
+							nextOffsets[slot * width + state.index * 2 + 1] = i;
+						}
+					}
+					if (c != '/') {
+						if (state.variable != null) {
+							int slot = add(state.variable, j, width);
+							if (width > 0 && slot >= 0) {
+								nextOffsets[slot * width + state.variable.index * 2] = i;
+								if (state.index >= 0) {
+									nextOffsets[slot * width + state.index * 2 + 1] = i;
+								}
+							}
+						}
+						if (state.index >= 0) {
+							// after ending the variable, so shorter values win.
+							add(state, j, width);
+						}
+					}
+
+				}
+
+				State[] swapStates = states;
+				states = nextStates;
+				nextStates = swapStates;
+				int[] swapOffsets = offsets;
+				offsets = nextOffsets;
+				nextOffsets = swapOffsets;
+				count = nextCount;
+
+			}
+
+			return width;
+
+		}
+
+		/**
+		 * Adds a state to the next step, copying the offsets of the state it
+		 * comes from.
+		 *
+		 * @return the slot of the state, or -1 if it was already reached in
+		 *         this step.
+		 */
+		private int add(State state, int from, int width) {
+
+			if (state.id >= 0) {
+				if (reached[state.id] == step) {
+					return -1;
+				}
+				reached[state.id] = step;
+			}
+			if (nextCount == nextStates.length) {
+				nextStates = Arrays.copyOf(nextStates, nextCount * 2);
+				nextOffsets = Arrays.copyOf(nextOffsets, nextCount * 2 * width);
+				states = Arrays.copyOf(states, nextCount * 2);
+				offsets = Arrays.copyOf(offsets, nextCount * 2 * width);
+			}
+			int slot = nextCount++;
+			nextStates[slot] = state;
+			if (width > 0) {
+				System.arraycopy(offsets, from * width, nextOffsets, slot * width, width);
+			}
+			return slot;
+
+		}
+
+	}
+
+	private final class State {
+
+		/**
+		 * Id of a variable state, or -1.
+		 */
+		final private int id;
+
+		/**
+		 * Index of the variable of a variable state in its templates, or -1.
+		 */
+		final private int index;
+
+		/**
+		 * Number of variables started on the way to this state.
+		 */
+		final private int variables;
+
+		private char[] keys = NO_KEYS;
+
+		private State[] literals = NO_STATES;
+
+		private State variable;
+
+		private int[] positions;
+
+		State(int index, int variables) {
+			this.id = index >= 0 ? variableStateCount++ : -1;
+			this.index = index;
+			this.variables = variables;
+		}
+
+		State literal(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index >= 0 ? literals[index] : null;
+		}
+
+		State literalOrCreate(char c) {
+
+			int index = Arrays.binarySearch(keys, c);
+			if (index >= 0) {
+				return literals[index];
+			}
+
+			index = -index - 1;
+			State state = new State(-1, variables);
+
+			char[] newKeys = new char[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			newKeys[index] = c;
+
+			State[] newLiterals = new State[literals.length + 1];
+			System.arraycopy(literals, 0, newLiterals, 0, index);
+			System.arraycopy(literals, index, newLiterals, index + 1, literals.length - index);
+			newLiterals[index] = state;
+
+			keys = newKeys;
+			literals = newLiterals;
+			return state;
+
+		}
+
+		State variableOrCreate(int index) {
+			if (variable == null) {
+				variable = new State(index, index + 1);
+			}
+			return variable;
+		}
+
+	}
+
+}
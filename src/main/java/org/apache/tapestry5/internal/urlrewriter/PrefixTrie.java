@@ -0,0 +1,191 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Arrays;
+
+/**
+ * Character trie mapping string prefixes to sorted lists of rule positions.
+ * It is filled once while a rule set is compiled and only read afterwards, so
+ * it needs no synchronization once safely published.
+ */
+public final class PrefixTrie {
+
+	private static final char[] NO_KEYS = new char[0];
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	final private Node root = new Node();
+
+	private int size;
+
+	/**
+	 * Associates a position with a prefix. Positions must be added in
+	 * increasing order.
+	 *
+	 * @param prefix
+	 *            a {@link String}. It cannot be null.
+	 * @param position
+	 *            an <code>int</code>.
+	 */
+	public void add(String prefix, int position) {
+
+		Node node = root;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.childOrCreate(prefix.charAt(i));
+		}
+		node.positions = IntArrays.append(node.positions, position);
+		size++;
+
+	}
+
+	/**
+	 * Returns the smallest position greater than <code>after</code> associated
+	 * with any prefix of <code>value</code>, the empty prefix included.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @param after
+	 *            an <code>int</code>.
+	 * @return a position or {@link IntArrays#NONE}.
+	 */
+	public int next(String value, int after) {
+
+		int next = IntArrays.firstAfter(root.positions, after);
+		Node node = root;
+		for (int i = 0; i < value.length(); i++) {
+			node = node.child(value.charAt(i));
+			if (node == null) {
+				break;
+			}
+			next = Math.min(next, IntArrays.firstAfter(node.positions, after));
+		}
+		return next;
+
+	}
+
+	/**
+	 * Returns the sorted positions associated with all the prefixes of
+	 * <code>value</code>, the empty prefix included.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return an <code>int[]</code> or <code>null</code> if there are none.
+	 */
+	public int[] positions(String value) {
+
+		int[] positions = root.positions;
+		Node node = root;
+		for (int i = 0; i < value.length(); i++) {
+			node = node.child(value.charAt(i));
+			if (node == null) {
+				break;
+			}
+			positions = IntArrays.merge(positions, node.positions);
+		}
+		return positions;
+
+	}
+
+	/**
+	 * Tells whether any prefix added to this trie is a prefix of
+	 * <code>value</code>.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean containsPrefixOf(String value) {
+		return next(value, -1) != IntArrays.NONE;
+	}
+
+	/**
+	 * Tells whether any string added to this trie, read backwards, is a
+	 * suffix of <code>value</code>. Filled with reversed suffixes, the trie
+	 * can then match them without reversing the values looked up.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean containsReversedSuffixOf(String value) {
+
+		Node node = root;
+		if (node.positions != null) {
+			return true;
+		}
+		for (int i = value.length() - 1; i >= 0; i--) {
+			node = node.child(value.charAt(i));
+			if (node == null) {
+				return false;
+			}
+			if (node.positions != null) {
+				return true;
+			}
+		}
+		return false;
+
+	}
+
+	/**
+	 * Returns the number of prefix/position pairs in this trie.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return size;
+	}
+
+	final private static class Node {
+
+		private char[] keys = NO_KEYS;
+
+		private Node[] children = NO_CHILDREN;
+
+		private int[] positions;
+
+		Node child(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index >= 0 ? children[index] : null;
+		}
+
+		Node childOrCreate(char c) {
+
+			int index = Arrays.binarySearch(keys, c);
+			if (index >= 0) {
+				return children[index];
+			}
+
+			index = -index - 1;
+			Node child = new Node();
+
+			char[] newKeys = new char[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			newKeys[index] = c;
+
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+			newChildren[index] = child;
+
+			keys = newKeys;
+			children = newChildren;
+			return child;
+
+		}
+
+	}
+
+}
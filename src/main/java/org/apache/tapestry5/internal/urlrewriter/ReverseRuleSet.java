@@ -0,0 +1,287 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
+import org.apache.tapestry5.urlrewriter.PathTemplate;
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Inverse of the declarative rules of a {@link CompiledRuleSet}, used to
+ * rewrite outgoing links. Rules are indexed by the path they rewrite to:
+ * {@link SimpleURLRewriterRule}s with an exact path condition by their
+ * target path and {@link PatternRule}s by their target template, when every
+ * variable of the pattern appears in it. Prefix, method-conditioned and
+ * opaque rules can't be inverted and are ignored.
+ * <p/>
+ * Each inverted path is run forward through the rule set before it's
+ * accepted, so a link is only rewritten if requesting the result gives back
+ * the original path. Results, including links that aren't rewritten, are
+ * memoized in a {@link SegmentedLruCache}, so each distinct link is only
+ * inverted once.
+ */
+public final class ReverseRuleSet {
+
+	private static final LinkTarget UNCHANGED = new LinkTarget(null, "");
+
+	final private CompiledRuleSet rules;
+
+	final private Map<String, int[]> byTarget = new HashMap<String, int[]>();
+
+	final private PathPatternAutomaton byTargetPattern = new PathPatternAutomaton();
+
+	final private SegmentedLruCache<Key, LinkTarget> cache;
+
+	/**
+	 * Inverts the rules of a rule set.
+	 *
+	 * @param rules
+	 *            a {@link CompiledRuleSet}. It cannot be null.
+	 * @param cacheSize
+	 *            the maximum number of memoized links, 0 to disable the
+	 *            cache.
+	 * @param hits
+	 *            a {@link LongAdder} incremented on every cache hit.
+	 * @param misses
+	 *            a {@link LongAdder} incremented on every cache miss.
+	 * @param evictions
+	 *            a {@link LongAdder} incremented on every cache eviction.
+	 */
+	public ReverseRuleSet(CompiledRuleSet rules, int cacheSize, LongAdder hits, LongAdder misses,
+			LongAdder evictions) {
+
+		assert rules != null;
+		this.rules = rules;
+		this.cache = cacheSize > 0 ? new SegmentedLruCache<Key, LinkTarget>(cacheSize, hits,
+				misses, evictions) : null;
+
+		for (int position = 0; position < rules.size(); position++) {
+
+			URLRewriterRule rule = rules.getRule(position);
+			RuleCondition condition = rules.getCondition(position);
+			if (condition == null || condition.getMethod() != null) {
+				continue;
+			}
+
+			if (rule.getClass() == SimpleURLRewriterRule.class && condition.getPath() != null) {
+				String target = ((SimpleURLRewriterRule) rule).getPath();
+				byTarget.put(target, IntArrays.append(byTarget.get(target), position));
+			} else if (rule instanceof PatternRule && isInvertible((PatternRule) rule)) {
+				byTargetPattern.add(((PatternRule) rule).getTarget(), position);
+			}
+
+		}
+
+	}
+
+	private static boolean isInvertible(PatternRule rule) {
+		PathTemplate target = rule.getTarget();
+		for (String name : rule.getPattern().getVariableNames()) {
+			if (target.indexOf(name) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the public server name and path of a link.
+	 *
+	 * @param serverName
+	 *            the server name of the current request, or <code>null</code>.
+	 * @param path
+	 *            the path of the link, without the context path. It cannot be
+	 *            null.
+	 * @return a {@link LinkTarget} or <code>null</code> if the link isn't
+	 *         rewritten.
+	 */
+	public LinkTarget rewrite(String serverName, String path) {
+
+		if (cache == null) {
+			LinkTarget target = invert(serverName, path);
+			return target != UNCHANGED ? target : null;
+		}
+
+		Key key = new Key(serverName, path);
+		LinkTarget target = cache.get(key);
+		if (target == null) {
+			target = invert(serverName, path);
+			cache.put(key, target);
+		}
+		return target != UNCHANGED ? target : null;
+
+	}
+
+	private LinkTarget invert(String serverName, String path) {
+
+		String host = serverName;
+		String current = path;
+		int last = IntArrays.NONE;
+
+		// undoes one rule at a time, each one applied before the previous,
+		// until no rule rewrites to the current path.
+		while (true) {
+
+			int[] candidates = IntArrays.merge(byTarget.get(current), byTargetPattern.size() > 0
+					? byTargetPattern.match(current) : null);
+			boolean inverted = false;
+
+			for (int i = 0; candidates != null && i < candidates.length
+					&& candidates[i] < last; i++) {
+
+				int position = candidates[i];
+				URLRewriterRule rule = rules.getRule(position);
+				String requiredHost = rules.getCondition(position).getHost();
+				// a wildcard host doesn't tell which server name to use, so
+				// the current one is tried.
+				String requestHost = requiredHost != null && !RuleCondition.isWildcard(requiredHost)
+						? requiredHost : host;
+
+				String source = source(rule, current);
+				if (source != null && keepsServerName(rule, requestHost)
+						&& producesPath(requestHost, source, path)) {
+					host = requestHost;
+					current = source;
+					last = position;
+					inverted = true;
+					break;
+				}
+
+			}
+
+			if (!inverted) {
+				break;
+			}
+
+		}
+
+		if (last == IntArrays.NONE) {
+			return UNCHANGED;
+		}
+		return new LinkTarget(host != null && !host.equals(serverName) ? host : null, current);
+
+	}
+
+	/**
+	 * Tells whether a rule leaves the server name as it is, as links are
+	 * generated for the server name they were requested through.
+	 */
+	private static boolean keepsServerName(URLRewriterRule rule, String host) {
+
+		if (rule instanceof SimpleURLRewriterRule) {
+			String serverName = ((SimpleURLRewriterRule) rule).getServerName();
+			return serverName == null || serverName.equals(host);
+		}
+
+		PathTemplate serverName = ((PatternRule) rule).getServerName();
+		return serverName == null
+				|| (serverName.getVariableCount() == 0 && serverName.getPattern().equals(host));
+
+	}
+
+	private static String source(URLRewriterRule rule, String path) {
+
+		if (rule instanceof SimpleURLRewriterRule) {
+			return ((SimpleURLRewriterRule) rule).getCondition().getPath();
+		}
+
+		PatternRule patternRule = (PatternRule) rule;
+		int[] offsets = patternRule.getTarget().match(path);
+		if (offsets == null) {
+			return null;
+		}
+		return patternRule.getPattern().expand(new StringBuilder(path.length()),
+				patternRule.getTarget(), path, offsets).toString();
+
+	}
+
+	private boolean producesPath(String host, String source, String path) {
+
+		Request result;
+		try {
+			result = rules.evaluate(new StaticRequest(host, source));
+		} catch (UnsupportedOperationException e) {
+			// an opaque rule looked at something only a real request has, so
+			// the declarative rules are trusted.
+			return true;
+		}
+		return !(result instanceof ActionRequest) && path.equals(result.getPath())
+				&& (result.getServerName() == null || result.getServerName().equals(host));
+
+	}
+
+	/**
+	 * Returns the number of invertible rules.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		int size = byTargetPattern.size();
+		for (int[] positions : byTarget.values()) {
+			size += positions.length;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the current number of memoized links.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getCacheSize() {
+		return cache != null ? cache.size() : 0;
+	}
+
+	final private static class Key {
+
+		final private String serverName;
+
+		final private String path;
+
+		final private int hash;
+
+		Key(String serverName, String path) {
+			this.serverName = serverName;
+			this.path = path;
+			this.hash = path.hashCode() * 31 + (serverName != null ? serverName.hashCode() : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) object;
+			return hash == other.hash && path.equals(other.path)
+					&& (serverName == null ? other.serverName == null
+							: serverName.equals(other.serverName));
+		}
+
+	}
+
+}
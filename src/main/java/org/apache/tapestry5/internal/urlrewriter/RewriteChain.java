@@ -0,0 +1,75 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+/**
+ * Final server name and path of a chain of rewrites resolved at compile time.
+ */
+public final class RewriteChain {
+
+	final private String serverName;
+
+	final private String path;
+
+	final private int length;
+
+	final private boolean terminal;
+
+	public RewriteChain(String serverName, String path, int length, boolean terminal) {
+		assert path != null;
+		this.serverName = serverName;
+		this.path = path;
+		this.length = length;
+		this.terminal = terminal;
+	}
+
+	/**
+	 * Returns the final server name.
+	 *
+	 * @return a {@link String} or <code>null</code> if it's the one of the
+	 *         request.
+	 */
+	public String getServerName() {
+		return serverName;
+	}
+
+	/**
+	 * Returns the final path.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the number of rules in the chain.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Tells whether the chain ends at a terminal rule, rather than because no
+	 * later rule applies.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+}
@@ -0,0 +1,215 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.DeterministicRule;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TerminalRule;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Resolves, for each {@link SimpleURLRewriterRule} with an exact path, the
+ * chain of rewrites that follows it, like <code>/struts</code> ->
+ * <code>/jsf</code> -> <code>/tapestry</code>. The chain is followed by
+ * applying the later rules to a {@link StaticRequest}, which is only
+ * possible while every rule met is deterministic, doesn't look at the HTTP
+ * method and doesn't need a server name that isn't known yet. Otherwise the
+ * rule is left to be evaluated at runtime. A chain ends at the first
+ * {@link TerminalRule} that rewrites the request, so terminal rules don't
+ * start any.
+ * <p/>
+ * A chain that comes back to a server name and path it has already visited
+ * is a cycle, which is reported as an {@link IllegalStateException} so it
+ * fails at startup instead of producing wrong URLs.
+ * <p/>
+ * Each chain only reads the compiled rule set, so ranges of positions can be
+ * resolved in parallel.
+ */
+final class RewriteChainResolver {
+
+	/**
+	 * Number of positions below which a range isn't split any further.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	final private CompiledRuleSet rules;
+
+	RewriteChainResolver(CompiledRuleSet rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * Returns the resolved chains, indexed by the position of their first
+	 * rule. Positions without a chain of at least two rules are null.
+	 *
+	 * @param pool
+	 *            the {@link ForkJoinPool} ranges of positions are resolved
+	 *            in, or <code>null</code> to resolve them all on the calling
+	 *            thread.
+	 */
+	RewriteChain[] resolve(ForkJoinPool pool) {
+
+		RewriteChain[] chains = new RewriteChain[rules.size()];
+		if (pool != null && chains.length > BATCH_SIZE) {
+			pool.invoke(new Range(chains, 0, chains.length));
+		} else {
+			resolve(chains, 0, chains.length);
+		}
+		return chains;
+
+	}
+
+	private void resolve(RewriteChain[] chains, int from, int to) {
+		for (int position = from; position < to; position++) {
+			URLRewriterRule rule = rules.getRule(position);
+			if (rule.getClass() == SimpleURLRewriterRule.class) {
+				chains[position] = resolve((SimpleURLRewriterRule) rule, position);
+			}
+		}
+
+	}
+
+	private RewriteChain resolve(SimpleURLRewriterRule first, int position) {
+
+		RuleCondition condition = first.getCondition();
+		if (first.isTerminal() || condition.getPath() == null || condition.getMethod() != null) {
+			return null;
+		}
+
+		List<String> visited = new ArrayList<String>();
+		visited.add(key(condition.getHost(), condition.getPath()));
+
+		String host = first.getServerName() != null ? first.getServerName() : condition.getHost();
+		if (host != null && RuleCondition.isWildcard(host)) {
+			// the server name will only be known at runtime.
+			return null;
+		}
+		String path = first.getPath();
+		visit(visited, host, path);
+		int length = 1;
+		boolean terminal = false;
+
+		while (true) {
+
+			position = rules.next(path, host, position);
+			if (position == IntArrays.NONE) {
+				break;
+			}
+
+			URLRewriterRule rule = rules.getRule(position);
+			condition = rules.getCondition(position);
+			if (condition == null || !(rule instanceof DeterministicRule)
+					|| condition.getMethod() != null
+					|| (condition.getHost() != null && host == null)) {
+				return null;
+			}
+
+			Request request = new StaticRequest(host, path);
+			if (!condition.matches(request)) {
+				continue;
+			}
+
+			Request result;
+			try {
+				result = rule.process(request);
+			} catch (UnsupportedOperationException e) {
+				// the rule needs more than the server name and path.
+				return null;
+			}
+
+			if (result instanceof ActionRequest) {
+				// the chain ends the request, which is left to runtime.
+				return null;
+			}
+			if (result != null && result != request) {
+				host = result.getServerName();
+				path = result.getPath();
+				visit(visited, host, path);
+				length++;
+				if (rule instanceof TerminalRule && ((TerminalRule) rule).isTerminal()) {
+					terminal = true;
+					break;
+				}
+			}
+
+		}
+
+		return length > 1 ? new RewriteChain(host, path, length, terminal) : null;
+
+	}
+
+	private static void visit(List<String> visited, String host, String path) {
+
+		String key = key(host, path);
+		if (visited.contains(key)) {
+			visited.add(key);
+			throw new IllegalStateException(String.format(
+					"URL rewriter rules form a cycle: %s", join(visited)));
+		}
+		visited.add(key);
+
+	}
+
+	private static String key(String host, String path) {
+		return host != null ? host + path : path;
+	}
+
+	private static String join(List<String> keys) {
+		StringBuilder builder = new StringBuilder();
+		for (String key : keys) {
+			if (builder.length() > 0) {
+				builder.append(" -> ");
+			}
+			builder.append(key);
+		}
+		return builder.toString();
+	}
+
+	final private class Range extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final private RewriteChain[] chains;
+
+		final private int from;
+
+		final private int to;
+
+		Range(RewriteChain[] chains, int from, int to) {
+			this.chains = chains;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_SIZE) {
+				resolve(chains, from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Range(chains, from, middle), new Range(chains, middle, to));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,169 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.RewriteAction;
+import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
+
+/**
+ * Caches the final server name and path produced by a rule set for a given
+ * server name, path and, if any rule looks at it, HTTP method, or the
+ * {@link RewriteAction} that ends the request. Requests that aren't rewritten
+ * are cached too, so the rules aren't run again for them.
+ */
+public final class RewriteResultCache {
+
+	private static final Target UNCHANGED = new Target(null, null, null);
+
+	final private SegmentedLruCache<Key, Target> cache;
+
+	final private boolean includeMethod;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of cached results.
+	 * @param includeMethod
+	 *            whether the HTTP method is part of the key.
+	 * @param hits
+	 *            a {@link LongAdder} incremented on every hit.
+	 * @param misses
+	 *            a {@link LongAdder} incremented on every miss.
+	 * @param evictions
+	 *            a {@link LongAdder} incremented on every eviction.
+	 */
+	public RewriteResultCache(int maximumSize, boolean includeMethod, LongAdder hits,
+			LongAdder misses, LongAdder evictions) {
+		this.cache = new SegmentedLruCache<Key, Target>(maximumSize, hits, misses, evictions);
+		this.includeMethod = includeMethod;
+	}
+
+	/**
+	 * Returns the cached result for a request, building a single
+	 * {@link SimpleRequestWrapper} over it if it was rewritten.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @param rules
+	 *            the {@link CompiledRuleSet} used on a cache miss.
+	 * @return a {@link Request}.
+	 */
+	public Request process(Request request, CompiledRuleSet rules) {
+
+		Key key = new Key(request.getServerName(), request.getPath(),
+				includeMethod ? request.getMethod() : null);
+		Target target = cache.get(key);
+
+		if (target == null) {
+			Request result = rules.process(request);
+			if (result == request) {
+				target = UNCHANGED;
+			} else if (result instanceof ActionRequest) {
+				target = new Target(null, null, ((ActionRequest) result).getAction());
+			} else {
+				target = new Target(result.getServerName(), result.getPath(), null);
+			}
+			cache.put(key, target);
+			return result;
+		}
+
+		if (target == UNCHANGED) {
+			return request;
+		}
+		if (target.action != null) {
+			return new ActionRequest(request, target.action);
+		}
+		return new SimpleRequestWrapper(request, target.serverName, target.path);
+
+	}
+
+	/**
+	 * Returns the current number of cached results.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Removes all the cached results.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	final private static class Key {
+
+		final private String serverName;
+
+		final private String path;
+
+		final private String method;
+
+		final private int hash;
+
+		Key(String serverName, String path, String method) {
+			this.serverName = serverName;
+			this.path = path;
+			this.method = method;
+			int hash = path.hashCode();
+			hash = hash * 31 + (serverName != null ? serverName.hashCode() : 0);
+			hash = hash * 31 + (method != null ? method.hashCode() : 0);
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) object;
+			return hash == other.hash && path.equals(other.path)
+					&& equals(serverName, other.serverName) && equals(method, other.method);
+		}
+
+		private static boolean equals(String first, String second) {
+			return first == null ? second == null : first.equals(second);
+		}
+
+	}
+
+	final private static class Target {
+
+		final private String serverName;
+
+		final private String path;
+
+		final private RewriteAction action;
+
+		Target(String serverName, String path, RewriteAction action) {
+			this.serverName = serverName;
+			this.path = path;
+			this.action = action;
+		}
+
+	}
+
+}
@@ -0,0 +1,159 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link HttpServletRequest} with the changes made by the rules, passed to
+ * the rest of the filter chain by the
+ * {@link org.apache.tapestry5.urlrewriter.URLRewriterServletFilter}. Besides
+ * the server name and path, the parameters, headers and method are read
+ * from the rewritten {@link Request}, so changes such as the ones of a
+ * {@link org.apache.tapestry5.urlrewriter.ParameterRequestWrapper} reach
+ * Tapestry. The whole rewritten path is returned as the servlet path, which
+ * is how Tapestry sees requests handled by its filter.
+ */
+public final class RewrittenServletRequest extends HttpServletRequestWrapper {
+
+	final private Request result;
+
+	final private String serverName;
+
+	final private String path;
+
+	private Map<String, String[]> parameters;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param request
+	 *            an {@link HttpServletRequest}. It cannot be null.
+	 * @param result
+	 *            the {@link Request} returned by the rules for it. It cannot
+	 *            be null.
+	 */
+	public RewrittenServletRequest(HttpServletRequest request, Request result) {
+		super(request);
+		assert result != null;
+		this.result = result;
+		this.serverName = result.getServerName();
+		this.path = result.getPath();
+	}
+
+	@Override
+	public String getServerName() {
+		return serverName;
+	}
+
+	@Override
+	public String getServletPath() {
+		return path;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return getContextPath() + path;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+
+		StringBuffer url = new StringBuffer(getScheme()).append("://").append(serverName);
+		int port = getServerPort();
+		if (port > 0 && !(port == 80 && "http".equals(getScheme()))
+				&& !(port == 443 && "https".equals(getScheme()))) {
+			url.append(':').append(port);
+		}
+		return url.append(getRequestURI());
+
+	}
+
+	@Override
+	public String getParameter(String name) {
+		return result.getParameter(name);
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		return result.getParameters(name);
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(result.getParameterNames());
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+
+		if (parameters == null) {
+			Map<String, String[]> map = new LinkedHashMap<String, String[]>();
+			for (String name : result.getParameterNames()) {
+				map.put(name, result.getParameters(name));
+			}
+			parameters = Collections.unmodifiableMap(map);
+		}
+		return parameters;
+
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return result.getHeader(name);
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(result.getHeaderNames());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Enumeration<String> getHeaders(String name) {
+
+		String value = result.getHeader(name);
+		if (value == null) {
+			return Collections.enumeration(Collections.<String> emptyList());
+		}
+		// all the values, unless a rule replaced the header.
+		return value.equals(super.getHeader(name)) ? super.getHeaders(name) : Collections
+				.enumeration(Collections.singletonList(value));
+
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		return result.getDateHeader(name);
+	}
+
+	@Override
+	public String getMethod() {
+		return result.getMethod();
+	}
+
+}
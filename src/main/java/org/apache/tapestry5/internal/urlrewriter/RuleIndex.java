@@ -0,0 +1,72 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Index of the rules of one partition of a {@link CompiledRuleSet}, such as
+ * the rules of a single host, by exact path, path prefix and pattern. Rules
+ * without any of these keys are always candidates.
+ */
+final class RuleIndex {
+
+	final private Map<String, int[]> byPath = new HashMap<String, int[]>();
+
+	final private PrefixTrie byPathPrefix = new PrefixTrie();
+
+	final private PathPatternAutomaton byPattern = new PathPatternAutomaton();
+
+	private int[] others;
+
+	/**
+	 * Adds a rule. Positions must be added in increasing order.
+	 */
+	void add(URLRewriterRule rule, RuleCondition condition, int position) {
+
+		if (rule instanceof PatternRule) {
+			byPattern.add(((PatternRule) rule).getPattern(), position);
+		} else if (condition.getPath() != null) {
+			byPath.put(condition.getPath(), IntArrays.append(byPath.get(condition.getPath()),
+					position));
+		} else if (condition.getPathPrefix() != null) {
+			byPathPrefix.add(condition.getPathPrefix(), position);
+		} else {
+			others = IntArrays.append(others, position);
+		}
+
+	}
+
+	/**
+	 * Returns the sorted positions of the rules that may apply to a path.
+	 */
+	int[] candidates(String path) {
+
+		int[] candidates = IntArrays.merge(others, byPath.get(path));
+		if (byPathPrefix.size() > 0) {
+			candidates = IntArrays.merge(candidates, byPathPrefix.positions(path));
+		}
+		if (byPattern.size() > 0) {
+			candidates = IntArrays.merge(candidates, byPattern.match(path));
+		}
+		return candidates;
+
+	}
+
+}
@@ -0,0 +1,120 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
+
+/**
+ * Immutable pairing of a {@link CompiledRuleSet} with its
+ * {@link RewriteResultCache} and {@link ReverseRuleSet}, if any, and a
+ * version number. Reloading rules
+ * builds a new snapshot and publishes it with a single reference write, so a
+ * request always runs against one complete rule set.
+ */
+public final class RuleSnapshot {
+
+	final private CompiledRuleSet rules;
+
+	final private RewriteResultCache cache;
+
+	final private ReverseRuleSet reverseRules;
+
+	final private long version;
+
+	/**
+	 * Creates a snapshot.
+	 *
+	 * @param rules
+	 *            a {@link CompiledRuleSet}. It cannot be null.
+	 * @param cache
+	 *            a {@link RewriteResultCache} or <code>null</code>.
+	 * @param version
+	 *            the version of the snapshot, starting at 1.
+	 */
+	public RuleSnapshot(CompiledRuleSet rules, RewriteResultCache cache, long version) {
+		this(rules, cache, null, version);
+	}
+
+	/**
+	 * Creates a snapshot that also rewrites links.
+	 *
+	 * @param rules
+	 *            a {@link CompiledRuleSet}. It cannot be null.
+	 * @param cache
+	 *            a {@link RewriteResultCache} or <code>null</code>.
+	 * @param reverseRules
+	 *            the {@link ReverseRuleSet} of <code>rules</code> or
+	 *            <code>null</code> if links aren't rewritten.
+	 * @param version
+	 *            the version of the snapshot, starting at 1.
+	 */
+	public RuleSnapshot(CompiledRuleSet rules, RewriteResultCache cache,
+			ReverseRuleSet reverseRules, long version) {
+		assert rules != null;
+		this.rules = rules;
+		this.cache = cache;
+		this.reverseRules = reverseRules;
+		this.version = version;
+	}
+
+	/**
+	 * Applies the rules to a request.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a {@link Request}.
+	 */
+	public Request process(Request request) {
+		if (!rules.mightMatch(request)) {
+			return request;
+		}
+		if (cache != null) {
+			return cache.process(request, rules);
+		}
+		return rules.process(request);
+	}
+
+	/**
+	 * Returns the public server name and path of a link.
+	 *
+	 * @param serverName
+	 *            the server name of the current request, or <code>null</code>.
+	 * @param path
+	 *            the path of the link, without the context path. It cannot be
+	 *            null.
+	 * @return a {@link LinkTarget} or <code>null</code> if the link isn't
+	 *         rewritten.
+	 */
+	public LinkTarget rewriteLink(String serverName, String path) {
+		return reverseRules != null ? reverseRules.rewrite(serverName, path) : null;
+	}
+
+	public CompiledRuleSet getRules() {
+		return rules;
+	}
+
+	public RewriteResultCache getCache() {
+		return cache;
+	}
+
+	public ReverseRuleSet getReverseRules() {
+		return reverseRules;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+}
@@ -0,0 +1,259 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent, size-bounded cache using a segmented LRU eviction policy. New
+ * entries go to a probationary segment and are promoted to a protected
+ * segment when read again, so a burst of one-off keys can't evict the
+ * entries that are actually hot. The cache is split into independently
+ * locked stripes by key hash to keep lock contention low.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public final class SegmentedLruCache<K, V> {
+
+	private static final int MAXIMUM_STRIPES = 16;
+
+	final private Stripe<K, V>[] stripes;
+
+	final private int maximumSize;
+
+	final private LongAdder hits;
+
+	final private LongAdder misses;
+
+	final private LongAdder evictions;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries. It must be positive.
+	 * @param hits
+	 *            the {@link LongAdder} incremented on every hit.
+	 * @param misses
+	 *            the {@link LongAdder} incremented on every miss.
+	 * @param evictions
+	 *            the {@link LongAdder} incremented on every eviction.
+	 */
+	@SuppressWarnings("unchecked")
+	public SegmentedLruCache(int maximumSize, LongAdder hits, LongAdder misses,
+			LongAdder evictions) {
+
+		assert maximumSize > 0;
+		this.maximumSize = maximumSize;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+
+		int stripeCount = 1;
+		while (stripeCount < MAXIMUM_STRIPES && stripeCount * 64 < maximumSize) {
+			stripeCount <<= 1;
+		}
+		stripes = new Stripe[stripeCount];
+		int stripeSize = (maximumSize + stripeCount - 1) / stripeCount;
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe<K, V>(stripeSize);
+		}
+
+	}
+
+	/**
+	 * Creates a cache with its own counters.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries. It must be positive.
+	 */
+	public SegmentedLruCache(int maximumSize) {
+		this(maximumSize, new LongAdder(), new LongAdder(), new LongAdder());
+	}
+
+	private Stripe<K, V> stripe(Object key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return stripes[hash & (stripes.length - 1)];
+	}
+
+	/**
+	 * Returns the value cached for a key.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 * @return the value or <code>null</code>.
+	 */
+	public V get(K key) {
+
+		V value = stripe(key).get(key);
+		if (value != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return value;
+
+	}
+
+	/**
+	 * Caches a value, evicting the least recently used probationary entry if
+	 * the cache is full.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 * @param value
+	 *            the value. It cannot be null.
+	 */
+	public void put(K key, V value) {
+		assert value != null;
+		if (stripe(key).put(key, value)) {
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Removes a key from the cache.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 */
+	public void remove(K key) {
+		stripe(key).remove(key);
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear() {
+		for (Stripe<K, V> stripe : stripes) {
+			stripe.clear();
+		}
+	}
+
+	/**
+	 * Returns the current number of entries.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of entries.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	final private static class Stripe<K, V> {
+
+		final private int capacity;
+
+		final private int protectedCapacity;
+
+		final private LinkedHashMap<K, V> probation = new LinkedHashMap<K, V>(16, 0.75f, true);
+
+		final private LinkedHashMap<K, V> protectedEntries = new LinkedHashMap<K, V>(16, 0.75f,
+				true);
+
+		Stripe(int capacity) {
+			this.capacity = capacity;
+			this.protectedCapacity = Math.max(1, capacity * 4 / 5);
+		}
+
+		synchronized V get(K key) {
+
+			V value = protectedEntries.get(key);
+			if (value == null) {
+				value = probation.remove(key);
+				if (value != null) {
+					protectedEntries.put(key, value);
+					if (protectedEntries.size() > protectedCapacity) {
+						Map.Entry<K, V> eldest = removeEldest(protectedEntries);
+						probation.put(eldest.getKey(), eldest.getValue());
+					}
+				}
+			}
+			return value;
+
+		}
+
+		/**
+		 * Returns <code>true</code> if an entry was evicted.
+		 */
+		synchronized boolean put(K key, V value) {
+
+			if (protectedEntries.containsKey(key)) {
+				protectedEntries.put(key, value);
+				return false;
+			}
+
+			probation.put(key, value);
+			if (probation.size() + protectedEntries.size() > capacity) {
+				removeEldest(probation.isEmpty() ? protectedEntries : probation);
+				return true;
+			}
+			return false;
+
+		}
+
+		synchronized void remove(K key) {
+			if (protectedEntries.remove(key) == null) {
+				probation.remove(key);
+			}
+		}
+
+		synchronized void clear() {
+			probation.clear();
+			protectedEntries.clear();
+		}
+
+		synchronized int size() {
+			return probation.size() + protectedEntries.size();
+		}
+
+		private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+			Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+			Map.Entry<K, V> eldest = iterator.next();
+			iterator.remove();
+			return eldest;
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.Session;
+
+/**
+ * Minimal {@link Request} over an {@link HttpServletRequest}, used to run
+ * the rules before Tapestry builds its own request. The path is computed
+ * like Tapestry does, from the servlet path and the path info. Sessions are
+ * {@link ServletSessionAdapter}s over the servlet session.
+ */
+public final class ServletRequestAdapter implements Request {
+
+	private static final String XHR_HEADER_NAME = "X-Requested-With";
+
+	private static final String XHR_HEADER_VALUE = "XMLHttpRequest";
+
+	final private HttpServletRequest request;
+
+	private String path;
+
+	private ServletSessionAdapter session;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param request
+	 *            an {@link HttpServletRequest}. It cannot be null.
+	 */
+	public ServletRequestAdapter(HttpServletRequest request) {
+		assert request != null;
+		this.request = request;
+	}
+
+	public String getPath() {
+
+		if (path == null) {
+			String servletPath = request.getServletPath();
+			String pathInfo = request.getPathInfo();
+			path = pathInfo != null ? servletPath + pathInfo : servletPath;
+			if (path.length() == 0) {
+				path = "/";
+			}
+		}
+		return path;
+
+	}
+
+	public String getServerName() {
+		return request.getServerName();
+	}
+
+	public Session getSession(boolean create) {
+
+		if (session != null && session.isInvalidated()) {
+			session = null;
+		}
+		if (session == null) {
+			HttpSession httpSession = request.getSession(create);
+			if (httpSession != null) {
+				session = new ServletSessionAdapter(httpSession);
+			}
+		}
+		return session;
+
+	}
+
+	public boolean isSessionInvalidated() {
+		return session != null && session.isInvalidated();
+	}
+
+	public String getContextPath() {
+		return request.getContextPath();
+	}
+
+	public List<String> getParameterNames() {
+		return Collections.list(request.getParameterNames());
+	}
+
+	public String getParameter(String name) {
+		return request.getParameter(name);
+	}
+
+	public String[] getParameters(String name) {
+		return request.getParameterValues(name);
+	}
+
+	public Locale getLocale() {
+		return request.getLocale();
+	}
+
+	public List<String> getHeaderNames() {
+		return Collections.list(request.getHeaderNames());
+	}
+
+	public long getDateHeader(String name) {
+		return request.getDateHeader(name);
+	}
+
+	public String getHeader(String name) {
+		return request.getHeader(name);
+	}
+
+	public boolean isXHR() {
+		return XHR_HEADER_VALUE.equals(request.getHeader(XHR_HEADER_NAME));
+	}
+
+	public boolean isSecure() {
+		return request.isSecure();
+	}
+
+	public boolean isRequestedSessionIdValid() {
+		return request.isRequestedSessionIdValid();
+	}
+
+	public Object getAttribute(String name) {
+		return request.getAttribute(name);
+	}
+
+	public void setAttribute(String name, Object value) {
+		request.setAttribute(name, value);
+	}
+
+	public List<String> getAttributeNames() {
+		return Collections.list(request.getAttributeNames());
+	}
+
+	public String getMethod() {
+		return request.getMethod();
+	}
+
+	public int getLocalPort() {
+		return request.getLocalPort();
+	}
+
+	public int getServerPort() {
+		return request.getServerPort();
+	}
+
+	public String getRemoteHost() {
+		return request.getRemoteHost();
+	}
+
+}
@@ -0,0 +1,98 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpSession;
+
+import org.apache.tapestry5.http.services.Session;
+
+/**
+ * Minimal {@link Session} over an {@link HttpSession}, given to the rules
+ * applied by the {@link org.apache.tapestry5.urlrewriter.URLRewriterServletFilter}
+ * through a {@link ServletRequestAdapter}. Attributes are read and written
+ * straight from the servlet session, as Tapestry's own session does when no
+ * persisted object needs to be restored.
+ */
+public final class ServletSessionAdapter implements Session {
+
+	final private HttpSession session;
+
+	private boolean invalidated;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param session
+	 *            an {@link HttpSession}. It cannot be null.
+	 */
+	public ServletSessionAdapter(HttpSession session) {
+		assert session != null;
+		this.session = session;
+	}
+
+	public List<String> getAttributeNames() {
+		return Collections.list(session.getAttributeNames());
+	}
+
+	public List<String> getAttributeNames(String prefix) {
+		List<String> names = new ArrayList<String>();
+		for (String name : getAttributeNames()) {
+			if (name.startsWith(prefix)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	public Object getAttribute(String name) {
+		return session.getAttribute(name);
+	}
+
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			session.removeAttribute(name);
+		} else {
+			session.setAttribute(name, value);
+		}
+	}
+
+	public boolean containsAttribute(String name) {
+		return session.getAttribute(name) != null;
+	}
+
+	public int getMaxInactiveInterval() {
+		return session.getMaxInactiveInterval();
+	}
+
+	public void setMaxInactiveInterval(int seconds) {
+		session.setMaxInactiveInterval(seconds);
+	}
+
+	public void invalidate() {
+		invalidated = true;
+		session.invalidate();
+	}
+
+	public boolean isInvalidated() {
+		return invalidated;
+	}
+
+	public void restoreDirtyObjects() {
+	}
+
+}
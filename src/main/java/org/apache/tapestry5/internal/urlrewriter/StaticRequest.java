@@ -0,0 +1,131 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.Session;
+
+/**
+ * {@link Request} that only has a server name and a path, used to evaluate
+ * deterministic rules while a rule set is compiled. Every other method throws
+ * {@link UnsupportedOperationException}.
+ */
+final class StaticRequest implements Request {
+
+	final private String serverName;
+
+	final private String path;
+
+	StaticRequest(String serverName, String path) {
+		this.serverName = serverName;
+		this.path = path;
+	}
+
+	public String getServerName() {
+		return serverName;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	private static UnsupportedOperationException unsupported() {
+		return new UnsupportedOperationException(
+				"Only the server name and the path are known while rules are compiled");
+	}
+
+	public Session getSession(boolean create) {
+		throw unsupported();
+	}
+
+	public String getContextPath() {
+		throw unsupported();
+	}
+
+	public List<String> getParameterNames() {
+		throw unsupported();
+	}
+
+	public String getParameter(String name) {
+		throw unsupported();
+	}
+
+	public String[] getParameters(String name) {
+		throw unsupported();
+	}
+
+	public Locale getLocale() {
+		throw unsupported();
+	}
+
+	public List<String> getHeaderNames() {
+		throw unsupported();
+	}
+
+	public long getDateHeader(String name) {
+		throw unsupported();
+	}
+
+	public String getHeader(String name) {
+		throw unsupported();
+	}
+
+	public boolean isXHR() {
+		throw unsupported();
+	}
+
+	public boolean isSecure() {
+		throw unsupported();
+	}
+
+	public boolean isRequestedSessionIdValid() {
+		throw unsupported();
+	}
+
+	public Object getAttribute(String name) {
+		throw unsupported();
+	}
+
+	public void setAttribute(String name, Object value) {
+		throw unsupported();
+	}
+
+	public String getMethod() {
+		throw unsupported();
+	}
+
+	public int getLocalPort() {
+		throw unsupported();
+	}
+
+	public int getServerPort() {
+		throw unsupported();
+	}
+
+	public String getRemoteHost() {
+		throw unsupported();
+	}
+
+	public List<String> getAttributeNames() {
+		throw unsupported();
+	}
+
+	public boolean isSessionInvalidated() {
+		throw unsupported();
+	}
+
+}
@@ -0,0 +1,222 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.urlrewriter.LatencyHistogram;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.slf4j.Logger;
+
+/**
+ * Compiled rules of each host, loaded from a {@link TenantRuleProvider} on
+ * the first request for the host and kept in a {@link WeightedLruCache}
+ * weighing each rule set by its number of rules, plus one so hosts without
+ * rules count too. Concurrent first requests for a host wait for a single
+ * load instead of each calling the provider. A host whose load failed gets
+ * no rules until a retry delay elapses, so a failing provider is called, and
+ * the failure logged, once per delay instead of on every request.
+ */
+public final class TenantRuleSets {
+
+	private static final CompiledRuleSet NO_RULES = new CompiledRuleSet(
+			Collections.<URLRewriterRule> emptyList());
+
+	/**
+	 * Default delay, in milliseconds, before loading the rules of a host
+	 * again after a failure, as set by
+	 * {@link org.apache.tapestry5.urlrewriter.URLRewriterSymbols#TENANT_RETRY_DELAY}.
+	 */
+	public static final long DEFAULT_RETRY_DELAY = 30000;
+
+	final private TenantRuleProvider provider;
+
+	final private WeightedLruCache<String, CompiledRuleSet> cache;
+
+	/**
+	 * The <code>System.nanoTime()</code> until which each failed host gets no
+	 * rules, bounded like the rules so a flood of failing hosts can't fill
+	 * the memory.
+	 */
+	final private WeightedLruCache<String, Long> failedUntil;
+
+	final private long retryDelay;
+
+	final private ConcurrentMap<String, CompletableFuture<CompiledRuleSet>> loading = new ConcurrentHashMap<String, CompletableFuture<CompiledRuleSet>>();
+
+	final private LatencyHistogram loadLatency = new LatencyHistogram();
+
+	final private LongAdder hits;
+
+	final private LongAdder misses;
+
+	final private LongAdder failures;
+
+	final private Logger logger;
+
+	/**
+	 * Creates the rule sets, registering their counters and gauges.
+	 *
+	 * @param provider
+	 *            a {@link TenantRuleProvider}. It cannot be null.
+	 * @param maximumWeight
+	 *            the maximum number of rules kept in memory.
+	 * @param retryDelay
+	 *            how long, in milliseconds, a host whose rules could not be
+	 *            loaded gets no rules before they're loaded again.
+	 * @param metrics
+	 *            an {@link URLRewriterMetrics}. It cannot be null.
+	 * @param logger
+	 *            a {@link Logger}. It cannot be null.
+	 */
+	public TenantRuleSets(TenantRuleProvider provider, long maximumWeight, long retryDelay,
+			URLRewriterMetrics metrics, Logger logger) {
+
+		assert provider != null;
+		assert metrics != null;
+		assert retryDelay >= 0;
+		this.provider = provider;
+		this.logger = logger;
+		this.retryDelay = TimeUnit.MILLISECONDS.toNanos(retryDelay);
+		this.cache = new WeightedLruCache<String, CompiledRuleSet>(maximumWeight,
+				rules -> rules.size() + 1, metrics.getCounter("tenants.evictions"));
+		this.failedUntil = new WeightedLruCache<String, Long>(maximumWeight, until -> 1,
+				new LongAdder());
+		this.hits = metrics.getCounter("tenants.hits");
+		this.misses = metrics.getCounter("tenants.misses");
+		this.failures = metrics.getCounter("tenants.load-failures");
+
+		metrics.registerGauge("tenants.size", cache::size);
+		metrics.registerGauge("tenants.weight", cache::getWeight);
+		metrics.registerGauge("tenants.loads", loadLatency::getCount);
+		metrics.registerGauge("tenants.load-mean-micros",
+				() -> TimeUnit.NANOSECONDS.toMicros(loadLatency.getMean()));
+		metrics.registerGauge("tenants.load-p99-micros",
+				() -> TimeUnit.NANOSECONDS.toMicros(loadLatency.getPercentile(99)));
+		metrics.registerGauge("tenants.load-max-micros",
+				() -> TimeUnit.NANOSECONDS.toMicros(loadLatency.getMaximum()));
+
+	}
+
+	/**
+	 * Applies the rules of the request's host to it.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a {@link Request}, which is a {@link TerminalRequest} if a
+	 *         terminal rule ended the evaluation.
+	 */
+	public Request process(Request request) {
+
+		String host = request.getServerName();
+		if (host == null) {
+			return request;
+		}
+		CompiledRuleSet rules = get(host);
+		return rules.mightMatch(request) ? rules.processMarkingTerminal(request) : request;
+
+	}
+
+	/**
+	 * Returns the rules of a host, loading them if needed.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link CompiledRuleSet}, empty if the host has no rules or
+	 *         they could not be loaded.
+	 */
+	public CompiledRuleSet get(String host) {
+
+		CompiledRuleSet rules = cache.get(host);
+		if (rules != null) {
+			hits.increment();
+			return rules;
+		}
+		Long until = failedUntil.get(host);
+		if (until != null) {
+			if (System.nanoTime() - until < 0) {
+				return NO_RULES;
+			}
+			failedUntil.remove(host);
+		}
+		misses.increment();
+
+		CompletableFuture<CompiledRuleSet> created = new CompletableFuture<CompiledRuleSet>();
+		CompletableFuture<CompiledRuleSet> existing = loading.putIfAbsent(host, created);
+		if (existing != null) {
+			return existing.join();
+		}
+
+		try {
+			// another thread may have finished loading it after our miss.
+			rules = cache.get(host);
+			if (rules == null) {
+				rules = load(host);
+			}
+			created.complete(rules);
+			return rules;
+		} catch (RuntimeException | Error e) {
+			// don't leave the threads waiting for this load hanging.
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(host, created);
+		}
+
+	}
+
+	private CompiledRuleSet load(String host) {
+
+		long start = System.nanoTime();
+		try {
+			List<URLRewriterRule> loaded = provider.getRules(host);
+			CompiledRuleSet rules = loaded != null && !loaded.isEmpty() ? new CompiledRuleSet(
+					loaded) : NO_RULES;
+			cache.put(host, rules);
+			return rules;
+		} catch (Exception e) {
+			failures.increment();
+			failedUntil.put(host, System.nanoTime() + retryDelay);
+			logger.error(String.format(
+					"Could not load the URL rewriter rules of %s, retrying in %d ms", host,
+					TimeUnit.NANOSECONDS.toMillis(retryDelay)), e);
+			return NO_RULES;
+		} finally {
+			loadLatency.record(System.nanoTime() - start);
+		}
+
+	}
+
+	/**
+	 * Discards the rules of a host, or its failed load, so they're loaded
+	 * again on its next request.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 */
+	public void invalidate(String host) {
+		cache.remove(host);
+		failedUntil.remove(host);
+	}
+
+}
@@ -0,0 +1,40 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.services.DelegatingRequest;
+
+/**
+ * Marks the result of {@link CompiledRuleSet#processMarkingTerminal(Request)}
+ * when a terminal rule ended the evaluation, so the rules that would be
+ * applied after that rule set, such as the contributed rules after the
+ * tenant ones, are skipped too. It's unwrapped before the request goes any
+ * further.
+ */
+public final class TerminalRequest extends DelegatingRequest {
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param request
+	 *            the {@link Request} returned by the terminal rule. It cannot
+	 *            be null.
+	 */
+	public TerminalRequest(Request request) {
+		super(request);
+		assert request != null;
+	}
+
+}
@@ -0,0 +1,126 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.apache.tapestry5.urlrewriter.GenerateURLRewriter;
+import org.apache.tapestry5.urlrewriter.MappingFileRuleSource;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+
+/**
+ * Annotation processor generating the classes requested through
+ * {@link GenerateURLRewriter} with a {@link DispatcherGenerator}. Malformed,
+ * unsupported or cyclic rules are reported as compilation errors on the annotated
+ * type.
+ */
+@SupportedAnnotationTypes("org.apache.tapestry5.urlrewriter.GenerateURLRewriter")
+public class URLRewriterProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+
+		for (Element element : environment.getElementsAnnotatedWith(GenerateURLRewriter.class)) {
+
+			GenerateURLRewriter annotation = element.getAnnotation(GenerateURLRewriter.class);
+			String packageName = packageOf(element);
+			String className = packageName.length() > 0 ? packageName + "."
+					+ annotation.className() : annotation.className();
+
+			try {
+				List<URLRewriterRule> rules = new ArrayList<URLRewriterRule>();
+				StringBuilder definitions = new StringBuilder();
+				for (String rule : annotation.rules()) {
+					definitions.append(rule).append('\n');
+				}
+				rules.addAll(MappingFileRuleSource.parse(new StringReader(definitions.toString()),
+						"@GenerateURLRewriter rules"));
+				if (annotation.file().length() > 0) {
+					rules.addAll(MappingFileRuleSource.parse(read(packageName, annotation.file()),
+							annotation.file()));
+				}
+
+				String source = DispatcherGenerator.generate(packageName, annotation.className(),
+						rules);
+				Writer writer = processingEnv.getFiler().createSourceFile(className, element)
+						.openWriter();
+				try {
+					writer.write(source);
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				error(element, className, e);
+			} catch (IllegalArgumentException e) {
+				error(element, className, e);
+			} catch (IllegalStateException e) {
+				error(element, className, e);
+			}
+
+		}
+
+		return true;
+
+	}
+
+	private Reader read(String packageName, String file) throws IOException {
+
+		Filer filer = processingEnv.getFiler();
+		FileObject resource;
+		try {
+			resource = filer.getResource(StandardLocation.CLASS_OUTPUT, packageName, file);
+			return resource.openReader(true);
+		} catch (IOException e) {
+			resource = filer.getResource(StandardLocation.SOURCE_PATH, packageName, file);
+			return resource.openReader(true);
+		}
+
+	}
+
+	private static String packageOf(Element element) {
+		while (!(element instanceof PackageElement)) {
+			element = element.getEnclosingElement();
+		}
+		return ((PackageElement) element).getQualifiedName().toString();
+	}
+
+	private void error(Element element, String className, Exception e) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				String.format("Could not generate %s: %s", className, e.getMessage()), element);
+	}
+
+}
@@ -0,0 +1,234 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Concurrent LRU cache bounded by the total weight of its values instead of
+ * their number. Like {@link SegmentedLruCache}, it's split into
+ * independently locked stripes, each one with an equal share of the maximum
+ * weight. A value heavier than a stripe's share isn't cached at all.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public final class WeightedLruCache<K, V> {
+
+	private static final int MAXIMUM_STRIPES = 16;
+
+	final private Stripe<K, V>[] stripes;
+
+	final private ToIntFunction<V> weigher;
+
+	final private long maximumWeight;
+
+	final private LongAdder evictions;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maximumWeight
+	 *            the maximum total weight. It must be positive.
+	 * @param weigher
+	 *            a <code>ToIntFunction</code> returning the weight of a
+	 *            value, at least 1. It cannot be null.
+	 * @param evictions
+	 *            the {@link LongAdder} incremented on every eviction.
+	 */
+	@SuppressWarnings("unchecked")
+	public WeightedLruCache(long maximumWeight, ToIntFunction<V> weigher, LongAdder evictions) {
+
+		assert maximumWeight > 0;
+		assert weigher != null;
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		this.evictions = evictions;
+
+		int stripeCount = 1;
+		while (stripeCount < MAXIMUM_STRIPES && stripeCount * 1024L < maximumWeight) {
+			stripeCount <<= 1;
+		}
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe<K, V>(maximumWeight / stripeCount);
+		}
+
+	}
+
+	private Stripe<K, V> stripe(Object key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return stripes[hash & (stripes.length - 1)];
+	}
+
+	/**
+	 * Returns the value cached for a key.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 * @return the value or <code>null</code>.
+	 */
+	public V get(K key) {
+		return stripe(key).get(key);
+	}
+
+	/**
+	 * Caches a value, evicting the least recently used entries until the
+	 * stripe is within its weight.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 * @param value
+	 *            the value. It cannot be null.
+	 * @return <code>false</code> if the value is too heavy to be cached.
+	 */
+	public boolean put(K key, V value) {
+		assert value != null;
+		int weight = Math.max(1, weigher.applyAsInt(value));
+		int evicted = stripe(key).put(key, value, weight);
+		if (evicted < 0) {
+			return false;
+		}
+		evictions.add(evicted);
+		return true;
+	}
+
+	/**
+	 * Removes a key from the cache.
+	 *
+	 * @param key
+	 *            the key. It cannot be null.
+	 */
+	public void remove(K key) {
+		stripe(key).remove(key);
+	}
+
+	/**
+	 * Returns the current number of entries.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the current total weight.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			weight += stripe.weight();
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the maximum total weight.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	final private static class Stripe<K, V> {
+
+		final private long capacity;
+
+		final private LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<K, Weighted<V>>(
+				16, 0.75f, true);
+
+		private long weight;
+
+		Stripe(long capacity) {
+			this.capacity = capacity;
+		}
+
+		synchronized V get(K key) {
+			Weighted<V> entry = entries.get(key);
+			return entry != null ? entry.value : null;
+		}
+
+		/**
+		 * Returns the number of evicted entries or -1 if the value is too
+		 * heavy.
+		 */
+		synchronized int put(K key, V value, int valueWeight) {
+
+			if (valueWeight > capacity) {
+				remove(key);
+				return -1;
+			}
+
+			Weighted<V> previous = entries.put(key, new Weighted<V>(value, valueWeight));
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += valueWeight;
+
+			int evicted = 0;
+			Iterator<Map.Entry<K, Weighted<V>>> iterator = entries.entrySet().iterator();
+			while (weight > capacity) {
+				Weighted<V> eldest = iterator.next().getValue();
+				iterator.remove();
+				weight -= eldest.weight;
+				evicted++;
+			}
+			return evicted;
+
+		}
+
+		synchronized void remove(K key) {
+			Weighted<V> removed = entries.remove(key);
+			if (removed != null) {
+				weight -= removed.weight;
+			}
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+
+		synchronized long weight() {
+			return weight;
+		}
+
+	}
+
+	final private static class Weighted<V> {
+
+		final private V value;
+
+		final private int weight;
+
+		Weighted(V value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+
+	}
+
+}
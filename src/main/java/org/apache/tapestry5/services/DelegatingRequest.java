@@ -56,6 +56,15 @@ public class DelegatingRequest implements Request {
 		this.request = request;
 	}
 
+	/**
+	 * Returns the delegate request.
+	 * 
+	 * @return a {@link Request}.
+	 */
+	public Request getRequest() {
+		return request;
+	}
+
 	/**
 	 * @param create
 	 * @return
@@ -15,6 +15,7 @@
 package org.apache.tapestry5.services;
 
 import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
 
 /**
  * Service that implements URL rewriting.
@@ -42,4 +43,19 @@ public interface URLRewriter {
 	 */
 	boolean hasRequestRules();
 
+	/**
+	 * Returns the public URL of a link, that is, a server name and path that
+	 * this rewriter turns into the given ones when they're requested. This is
+	 * the inverse of {@link #processRequest(Request)} and is used to rewrite
+	 * the links Tapestry generates. The default implementation never
+	 * rewrites links.
+	 * 
+	 * @param serverName the server name of the current request, or <code>null</code>.
+	 * @param path the path of the link, without the context path. It cannot be null.
+	 * @return a {@link LinkTarget} or <code>null</code> if the link doesn't need to be rewritten.
+	 */
+	default LinkTarget rewriteLink(String serverName, String path) {
+		return null;
+	}
+
 }
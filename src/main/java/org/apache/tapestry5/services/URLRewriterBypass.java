@@ -0,0 +1,37 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.tapestry5.services;
+
+/**
+ * Service that tells which requests the URL rewriter doesn't need to look
+ * at, such as asset and module requests. Its configuration is a set of path
+ * prefixes, like <code>/assets/</code>, and suffixes written with a leading
+ * <code>*</code>, like <code>*.css</code>. Requests whose path matches any of
+ * them are passed on by the
+ * {@link org.apache.tapestry5.internal.services.URLRewriterRequestFilter}
+ * without running the rules, and counted in the <code>bypass.hits</code>
+ * counter of the {@link URLRewriterMetrics}.
+ */
+public interface URLRewriterBypass {
+
+	/**
+	 * Tells whether the rules must be skipped for a path.
+	 * 
+	 * @param path the path of the request. It cannot be null.
+	 * @return <code>true</code> if the request doesn't need to be rewritten.
+	 */
+	boolean isBypassed(String path);
+
+}
@@ -0,0 +1,75 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.tapestry5.services;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.tapestry5.urlrewriter.RuleStatistics;
+
+/**
+ * Service that collects the counters and gauges of the URL rewriter, such as
+ * rewrite cache hits and misses, and the per-rule statistics. Counters are
+ * {@link LongAdder}s, so updating them from many request threads doesn't
+ * cause contention. Everything here is also published as an
+ * {@link org.apache.tapestry5.urlrewriter.URLRewriterMXBean}.
+ */
+public interface URLRewriterMetrics {
+
+	/**
+	 * Returns the counter with a given name, creating it if needed.
+	 *
+	 * @param name a {@link String}. It cannot be null.
+	 * @return a {@link LongAdder}.
+	 */
+	LongAdder getCounter(String name);
+
+	/**
+	 * Registers a gauge, a value computed when read. A gauge registered with
+	 * the same name as a previous one replaces it.
+	 *
+	 * @param name a {@link String}. It cannot be null.
+	 * @param gauge a {@link LongSupplier}. It cannot be null.
+	 */
+	void registerGauge(String name, LongSupplier gauge);
+
+	/**
+	 * Returns the current value of every counter and gauge, sorted by name.
+	 *
+	 * @return a {@link SortedMap}.
+	 */
+	SortedMap<String, Long> getValues();
+
+	/**
+	 * Sets the statistics of the rules currently in use, replacing any
+	 * previous ones.
+	 *
+	 * @param statistics a <code>List</code> of {@link RuleStatistics}. It
+	 *        cannot be null.
+	 */
+	void setRuleStatistics(List<RuleStatistics> statistics);
+
+	/**
+	 * Returns the statistics of the rules currently in use. It's empty unless
+	 * {@link org.apache.tapestry5.urlrewriter.URLRewriterSymbols#RULE_STATISTICS}
+	 * is enabled.
+	 *
+	 * @return a <code>List</code> of {@link RuleStatistics}.
+	 */
+	List<RuleStatistics> getRuleStatistics();
+
+}
@@ -14,11 +14,39 @@
 
 package org.apache.tapestry5.services;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.tapestry5.SymbolConstants;
+import org.apache.tapestry5.commons.Configuration;
+import org.apache.tapestry5.commons.MappedConfiguration;
 import org.apache.tapestry5.commons.OrderedConfiguration;
+import org.apache.tapestry5.http.TapestryHttpSymbolConstants;
+import org.apache.tapestry5.http.services.BaseURLSource;
+import org.apache.tapestry5.http.services.Request;
 import org.apache.tapestry5.http.services.RequestFilter;
+import org.apache.tapestry5.internal.services.DeferredURLRewriterRequestFilter;
+import org.apache.tapestry5.internal.services.URLRewriterBypassImpl;
 import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.internal.services.URLRewriterLinkTransformer;
+import org.apache.tapestry5.internal.services.URLRewriterMXBeanImpl;
+import org.apache.tapestry5.internal.services.URLRewriterMetricsImpl;
 import org.apache.tapestry5.internal.services.URLRewriterRequestFilter;
 import org.apache.tapestry5.ioc.ServiceBinder;
+import org.apache.tapestry5.ioc.annotations.Startup;
+import org.apache.tapestry5.ioc.annotations.Symbol;
+import org.apache.tapestry5.ioc.services.RegistryShutdownHub;
+import org.apache.tapestry5.services.linktransform.ComponentEventLinkTransformer;
+import org.apache.tapestry5.services.linktransform.PageRenderLinkTransformer;
+import org.apache.tapestry5.urlrewriter.MappingFileRuleSource;
+import org.apache.tapestry5.urlrewriter.ReloadableRuleSource;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
+import org.apache.tapestry5.urlrewriter.URLRewriterSymbols;
+import org.slf4j.Logger;
 
 /**
  * Tapestry-IoC module for the URL Rewriter API.
@@ -27,27 +55,241 @@ public class UrlRewriterModule {
 
 	public static void bind(ServiceBinder binder) {
 		binder.bind(URLRewriter.class, URLRewriterImpl.class);
+		binder.bind(URLRewriterMetrics.class, URLRewriterMetricsImpl.class);
+		binder.bind(URLRewriterBypass.class, URLRewriterBypassImpl.class);
+	}
+
+	/**
+	 * Contributes the default values of the {@link URLRewriterSymbols}.
+	 * @param configuration a {@link MappedConfiguration}.
+	 */
+	public static void contributeFactoryDefaults(MappedConfiguration<String, Object> configuration) {
+		configuration.add(URLRewriterSymbols.CACHE_SIZE, "0");
+		configuration.add(URLRewriterSymbols.RULE_STATISTICS, "false");
+		configuration.add(URLRewriterSymbols.JMX_OBJECT_NAME, "org.apache.tapestry5.urlrewriter:type=URLRewriter");
+		configuration.add(URLRewriterSymbols.RULES_FILE, "");
+		configuration.add(URLRewriterSymbols.RULES_FILE_CHECK_INTERVAL, "5000");
+		configuration.add(URLRewriterSymbols.TENANT_CACHE_WEIGHT, "0");
+		configuration.add(URLRewriterSymbols.TENANT_RETRY_DELAY, "30000");
+		configuration.add(URLRewriterSymbols.REWRITE_LINKS, "false");
+		configuration.add(URLRewriterSymbols.LINK_CACHE_SIZE, "1000");
+		configuration.add(URLRewriterSymbols.BYPASS_ASSETS, "true");
+		configuration.add(URLRewriterSymbols.DEFERRED_INITIALIZATION, "false");
+		configuration.add(URLRewriterSymbols.INITIALIZATION_WAIT, "5000");
+		configuration.add(URLRewriterSymbols.REORDER_INTERVAL, "0");
+	}
+
+	/**
+	 * Contributes the prefixes of Tapestry's asset and JavaScript module
+	 * requests, built from the same symbols Tapestry's dispatchers use, to the
+	 * {@link URLRewriterBypass} if {@link URLRewriterSymbols#BYPASS_ASSETS} is
+	 * enabled.
+	 * @param configuration a {@link Configuration}.
+	 * @param bypassAssets whether asset requests are bypassed.
+	 * @param applicationFolder the folder Tapestry is mapped to, or an empty string.
+	 * @param assetPathPrefix the path prefix of the asset requests.
+	 * @param modulePathPrefix the path prefix of the module requests.
+	 */
+	public static void contributeURLRewriterBypass(Configuration<String> configuration,
+			@Symbol(URLRewriterSymbols.BYPASS_ASSETS) boolean bypassAssets,
+			@Symbol(TapestryHttpSymbolConstants.APPLICATION_FOLDER) String applicationFolder,
+			@Symbol(SymbolConstants.ASSET_PATH_PREFIX) String assetPathPrefix,
+			@Symbol(SymbolConstants.MODULE_PATH_PREFIX) String modulePathPrefix) {
+
+		if (bypassAssets) {
+			String folder = "/" + applicationFolder + "/";
+			configuration.add(bypassPrefix(folder + assetPathPrefix + "/"));
+			configuration.add(bypassPrefix(folder + modulePathPrefix + "/"));
+			// gzip compressed modules.
+			configuration.add(bypassPrefix(folder + trimSlashes(modulePathPrefix) + ".gz/"));
+		}
+
+	}
+
+	/**
+	 * Collapses the runs of slashes left by empty or slash-delimited symbol
+	 * values, as Tapestry does when it builds its own paths.
+	 */
+	static String bypassPrefix(String path) {
+		return path.replaceAll("//+", "/");
+	}
+
+	private static String trimSlashes(String path) {
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(start, end);
+	}
+
+	/**
+	 * Builds the {@link TenantRuleProvider} used by the {@link URLRewriter},
+	 * which has no rules. Override this service to provide the rules of each
+	 * host, and set {@link URLRewriterSymbols#TENANT_CACHE_WEIGHT} to enable
+	 * it.
+	 * @return a {@link TenantRuleProvider}.
+	 */
+	public static TenantRuleProvider buildTenantRuleProvider() {
+		return TenantRuleProvider.NONE;
+	}
+
+	/**
+	 * Builds the {@link ReloadableRuleSource} used by the {@link URLRewriter}: a
+	 * {@link MappingFileRuleSource} if {@link URLRewriterSymbols#RULES_FILE} is
+	 * set, {@link ReloadableRuleSource#NONE} otherwise. Override this service
+	 * to load rules from somewhere else.
+	 * @param rulesFile the path of the mapping file or an empty string.
+	 * @param checkInterval how often the file is checked, in milliseconds.
+	 * @param shutdownHub a {@link RegistryShutdownHub}.
+	 * @return a {@link ReloadableRuleSource}.
+	 */
+	public static ReloadableRuleSource buildReloadableRuleSource(
+			@Symbol(URLRewriterSymbols.RULES_FILE) String rulesFile,
+			@Symbol(URLRewriterSymbols.RULES_FILE_CHECK_INTERVAL) long checkInterval,
+			RegistryShutdownHub shutdownHub) {
+
+		if (rulesFile.trim().length() == 0) {
+			return ReloadableRuleSource.NONE;
+		}
+
+		final MappingFileRuleSource source = new MappingFileRuleSource(new File(rulesFile.trim()),
+				checkInterval);
+		shutdownHub.addRegistryShutdownListener(new Runnable() {
+
+			public void run() {
+				source.stop();
+			}
+
+		});
+		return source;
+
 	}
 
 	/**
-	 * Contributes the URL rewriter request filter if there are URL rewriter rules.
+	 * Registers the {@link org.apache.tapestry5.urlrewriter.URLRewriterMXBean}
+	 * in the platform MBean server, unregistering it when the registry shuts down.
+	 * @param metrics an {@link URLRewriterMetrics}.
+	 * @param objectName the object name, or an empty string to skip the registration.
+	 * @param shutdownHub a {@link RegistryShutdownHub}.
+	 * @param logger a {@link Logger}.
+	 */
+	@Startup
+	public static void registerMXBean(URLRewriterMetrics metrics,
+			@Symbol(URLRewriterSymbols.JMX_OBJECT_NAME) String objectName,
+			RegistryShutdownHub shutdownHub, final Logger logger) {
+
+		if (objectName.trim().length() == 0) {
+			return;
+		}
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			final ObjectName name = new ObjectName(objectName);
+			server.registerMBean(new URLRewriterMXBeanImpl(metrics), name);
+			shutdownHub.addRegistryShutdownListener(new Runnable() {
+
+				public void run() {
+					try {
+						server.unregisterMBean(name);
+					} catch (JMException e) {
+						logger.warn("Could not unregister the URL rewriter MBean", e);
+					}
+				}
+
+			});
+		} catch (JMException e) {
+			// most likely another application in the same JVM already registered it.
+			logger.warn(String.format("Could not register the URL rewriter MBean as %s", objectName), e);
+		}
+
+	}
+
+	/**
+	 * Contributes the URL rewriter request filter if there are URL rewriter
+	 * rules. If {@link URLRewriterSymbols#DEFERRED_INITIALIZATION} is enabled,
+	 * a {@link DeferredURLRewriterRequestFilter} is always contributed instead,
+	 * and the rules are only looked at on a background thread.
 	 * @param configuration an {@link OrderedConfiguration}.
 	 * @param urlRewriter an {@link URLRewriter}.
+	 * @param bypass the {@link URLRewriterBypass} of requests the rules are skipped for.
+	 * @param deferred whether the rules are initialized on a background thread.
+	 * @param initializationWait how long requests wait for deferred rules, in milliseconds.
+	 * @param metrics an {@link URLRewriterMetrics}.
+	 * @param logger a {@link Logger}.
 	 */
 	public void contributeRequestHandler(
 			OrderedConfiguration<RequestFilter> configuration,
-			URLRewriter urlRewriter) {
+			final URLRewriter urlRewriter, final URLRewriterBypass bypass,
+			@Symbol(URLRewriterSymbols.DEFERRED_INITIALIZATION) boolean deferred,
+			@Symbol(URLRewriterSymbols.INITIALIZATION_WAIT) long initializationWait,
+			URLRewriterMetrics metrics, Logger logger) {
+
+		if (deferred) {
+			// hasRequestRules() is what builds the service and compiles the
+			// rules, so it isn't called here.
+			configuration.add("URLRewriter", DeferredURLRewriterRequestFilter.start(
+					() -> urlRewriter.hasRequestRules() ? new URLRewriterRequestFilter(
+							urlRewriter, bypass) : null, initializationWait, metrics, logger),
+					"before:StaticFiles");
+			return;
+		}
 
 		// we just need the URLRewriterRequestFilter if we have URL rewriter
 		// rules, of course.
 		if (urlRewriter.hasRequestRules()) {
 
 			URLRewriterRequestFilter urlRewriterRequestFilter = new URLRewriterRequestFilter(
-					urlRewriter);
+					urlRewriter, bypass);
 			configuration.add("URLRewriter", urlRewriterRequestFilter, "before:StaticFiles");
 
 		}
 
 	}
 
+	/**
+	 * Contributes the {@link URLRewriterLinkTransformer} for page render links
+	 * if {@link URLRewriterSymbols#REWRITE_LINKS} is enabled.
+	 * @param configuration an {@link OrderedConfiguration}.
+	 * @param rewriteLinks whether links are rewritten.
+	 * @param urlRewriter an {@link URLRewriter}.
+	 * @param request the current {@link Request}.
+	 * @param baseURLSource the {@link BaseURLSource}.
+	 */
+	public static void contributePageRenderLinkTransformer(
+			OrderedConfiguration<PageRenderLinkTransformer> configuration,
+			@Symbol(URLRewriterSymbols.REWRITE_LINKS) boolean rewriteLinks,
+			URLRewriter urlRewriter, Request request, BaseURLSource baseURLSource) {
+
+		if (rewriteLinks) {
+			configuration.add("URLRewriter", new URLRewriterLinkTransformer(urlRewriter, request,
+					baseURLSource));
+		}
+
+	}
+
+	/**
+	 * Contributes the {@link URLRewriterLinkTransformer} for component event
+	 * links if {@link URLRewriterSymbols#REWRITE_LINKS} is enabled.
+	 * @param configuration an {@link OrderedConfiguration}.
+	 * @param rewriteLinks whether links are rewritten.
+	 * @param urlRewriter an {@link URLRewriter}.
+	 * @param request the current {@link Request}.
+	 * @param baseURLSource the {@link BaseURLSource}.
+	 */
+	public static void contributeComponentEventLinkTransformer(
+			OrderedConfiguration<ComponentEventLinkTransformer> configuration,
+			@Symbol(URLRewriterSymbols.REWRITE_LINKS) boolean rewriteLinks,
+			URLRewriter urlRewriter, Request request, BaseURLSource baseURLSource) {
+
+		if (rewriteLinks) {
+			configuration.add("URLRewriter", new URLRewriterLinkTransformer(urlRewriter, request,
+					baseURLSource));
+		}
+
+	}
+
 }
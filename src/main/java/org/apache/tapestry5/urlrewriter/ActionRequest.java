@@ -0,0 +1,53 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.services.DelegatingRequest;
+
+/**
+ * {@link Request} returned by a {@link URLRewriterRule} to end the request
+ * with a {@link RewriteAction} instead of rewriting it. No later rule is
+ * applied to it, and the
+ * {@link org.apache.tapestry5.internal.services.URLRewriterRequestFilter}
+ * writes the action to the response instead of passing the request on.
+ */
+public class ActionRequest extends DelegatingRequest {
+
+	final private RewriteAction action;
+
+	/**
+	 * Constructor that receives the request and the action that ends it.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @param action
+	 *            a {@link RewriteAction}. It cannot be null.
+	 */
+	public ActionRequest(Request request, RewriteAction action) {
+		super(request);
+		assert action != null;
+		this.action = action;
+	}
+
+	/**
+	 * Returns the action that ends the request.
+	 *
+	 * @return a {@link RewriteAction}.
+	 */
+	public RewriteAction getAction() {
+		return action;
+	}
+
+}
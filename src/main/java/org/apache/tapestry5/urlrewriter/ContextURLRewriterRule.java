@@ -0,0 +1,45 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link URLRewriterRule} that receives a {@link RewriteContext} instead of
+ * the bare request. The {@link org.apache.tapestry5.services.URLRewriter}
+ * builds one context per request and passes it to every rule of this kind,
+ * so lower-casing, decoding and splitting the path is done once, not once per
+ * rule. A rule that doesn't match should return
+ * {@link RewriteContext#getRequest()} and, by only using the context, can do
+ * so without allocating anything.
+ */
+public interface ContextURLRewriterRule extends URLRewriterRule {
+
+	/**
+	 * Processes a request through its context. The same rules as
+	 * {@link URLRewriterRule#process(Request)} apply.
+	 * 
+	 * @param context a {@link RewriteContext}. It cannot be null.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	Request process(RewriteContext context);
+
+	/**
+	 * Processes a request outside a rule set, building a context just for it.
+	 */
+	default Request process(Request request) {
+		return process(new RewriteContext(request));
+	}
+
+}
@@ -0,0 +1,47 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * An {@link URLRewriterRule} that declares up front which requests it applies
+ * to. The {@link org.apache.tapestry5.services.URLRewriter} only calls
+ * {@link #process(org.apache.tapestry5.http.services.Request)} for requests
+ * matching {@link #getCondition()}, so rules contributed this way don't cost
+ * anything for requests they can't rewrite.
+ * <p/>
+ * {@link #process(org.apache.tapestry5.http.services.Request)} must still
+ * return the request unchanged when it doesn't match the condition, as it
+ * may be invoked directly.
+ * <p/>
+ * Declarative rules are {@link TerminalRule}s, terminal by default: once one
+ * rewrites a request, the later rules are skipped.
+ */
+public interface DeclarativeURLRewriterRule extends TerminalRule {
+
+	/**
+	 * Returns the condition a request must satisfy for this rule to be applied.
+	 *
+	 * @return a {@link RuleCondition}. It cannot be null.
+	 */
+	RuleCondition getCondition();
+
+	/**
+	 * Returns <code>true</code>, so the later rules are skipped after this
+	 * one rewrites a request.
+	 */
+	default boolean isTerminal() {
+		return true;
+	}
+
+}
@@ -0,0 +1,26 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * Marker interface for {@link URLRewriterRule}s whose result depends only on
+ * the server name, the path and the HTTP method of the request, and which
+ * only change the server name and the path or end the request with an
+ * {@link ActionRequest}. When every contributed rule is
+ * deterministic, the {@link org.apache.tapestry5.services.URLRewriter} can
+ * cache rewrite results (see {@link URLRewriterSymbols#CACHE_SIZE}).
+ */
+public interface DeterministicRule extends URLRewriterRule {
+
+}
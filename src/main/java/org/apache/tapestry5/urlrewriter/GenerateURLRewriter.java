@@ -0,0 +1,74 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates, at compile time, an {@link org.apache.tapestry5.services.URLRewriter}
+ * implementing a fixed set of rules with <code>switch</code> statements on the
+ * path and inlined pattern matching, so no rule objects are built at startup
+ * and no rule is invoked through an interface. The class is generated in the
+ * package of the annotated type by an annotation processor that
+ * <code>javac</code> finds in this library's JAR.
+ * <p/>
+ * The rules use the {@link MappingFileRuleSource} syntax and are applied like
+ * contributed {@link SimpleURLRewriterRule}s and {@link PatternRule}s in the
+ * same order. The generated class replaces the default service, for example in
+ * the application module:
+ * 
+ * <pre>
+ * &#064;GenerateURLRewriter(className = &quot;AppURLRewriter&quot;, rules = {
+ * 		&quot;/spring /campaign/spring&quot;, &quot;/product/{id} /catalog/show/{id}&quot; })
+ * public class AppModule {
+ * 
+ * 	public static void contributeServiceOverride(MappedConfiguration&lt;Class, Object&gt; configuration) {
+ * 		configuration.add(URLRewriter.class, new AppURLRewriter());
+ * 	}
+ * 
+ * }
+ * </pre>
+ * 
+ * Contributed rules are then ignored. Each rule adds a few bytecodes to a
+ * single method, so sets of many thousands of rules belong in a
+ * {@link MappingStore} instead.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateURLRewriter {
+
+	/**
+	 * Simple name of the generated class.
+	 */
+	String className();
+
+	/**
+	 * Rule definitions, one per element.
+	 */
+	String[] rules() default {};
+
+	/**
+	 * Path, relative to the package of the annotated type, of a mapping file
+	 * whose rules are added after {@link #rules()}. It is looked up in the
+	 * class output directory, where Maven copies resources, and then in the
+	 * source path.
+	 */
+	String file() default "";
+
+}
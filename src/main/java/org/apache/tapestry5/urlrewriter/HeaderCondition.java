@@ -0,0 +1,176 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.Locale;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * Immutable description of the values of a request header a
+ * {@link HeaderRule} applies to: exactly one value, values starting with a
+ * prefix, such as <code>pt</code> for an <code>Accept-Language</code>
+ * header, or values containing a text, such as <code>Mobile</code> for a
+ * <code>User-Agent</code>. Values are compared ignoring case, and a request
+ * without the header never matches. Since these are known before any request
+ * arrives, the {@link org.apache.tapestry5.services.URLRewriter} indexes
+ * them by header name at startup.
+ */
+public final class HeaderCondition {
+
+	final private String name;
+
+	final private String value;
+
+	final private String prefix;
+
+	final private String text;
+
+	private HeaderCondition(String name, String value, String prefix, String text) {
+		assert name != null;
+		this.name = name;
+		this.value = value != null ? lowerCase(value) : null;
+		this.prefix = prefix != null ? lowerCase(prefix) : null;
+		this.text = text != null ? lowerCase(text) : null;
+	}
+
+	/**
+	 * Returns a condition that matches requests whose header has exactly the
+	 * given value.
+	 *
+	 * @param name
+	 *            the header name. It cannot be null.
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link HeaderCondition}.
+	 */
+	public static HeaderCondition equalTo(String name, String value) {
+		assert value != null;
+		return new HeaderCondition(name, value, null, null);
+	}
+
+	/**
+	 * Returns a condition that matches requests whose header value starts
+	 * with the given prefix.
+	 *
+	 * @param name
+	 *            the header name. It cannot be null.
+	 * @param prefix
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link HeaderCondition}.
+	 */
+	public static HeaderCondition startsWith(String name, String prefix) {
+		assert prefix != null;
+		return new HeaderCondition(name, null, prefix, null);
+	}
+
+	/**
+	 * Returns a condition that matches requests whose header value contains
+	 * the given text.
+	 *
+	 * @param name
+	 *            the header name. It cannot be null.
+	 * @param text
+	 *            a non-empty {@link String}.
+	 * @return a {@link HeaderCondition}.
+	 */
+	public static HeaderCondition contains(String name, String text) {
+		assert text != null && text.length() > 0;
+		return new HeaderCondition(name, null, null, text);
+	}
+
+	/**
+	 * Returns a value in lower case, the way header values are compared.
+	 *
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public static String lowerCase(String value) {
+		return value.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Tells whether the given request satisfies this condition.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matches(Request request) {
+		String value = request.getHeader(name);
+		return value != null && matchesLowerCase(lowerCase(value));
+	}
+
+	/**
+	 * Tells whether a header value, already in lower case, satisfies this
+	 * condition.
+	 *
+	 * @param value
+	 *            a {@link String} returned by {@link #lowerCase(String)}.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matchesLowerCase(String value) {
+		if (this.value != null) {
+			return this.value.equals(value);
+		}
+		if (prefix != null) {
+			return value.startsWith(prefix);
+		}
+		return value.contains(text);
+	}
+
+	/**
+	 * Returns the name of the header.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the value required by this condition, in lower case.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the prefix required by this condition, in lower case.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Returns the text required by this condition, in lower case.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("HeaderCondition[name=%s, value=%s, prefix=%s, text=%s]", name,
+				value, prefix, text);
+	}
+
+}
@@ -0,0 +1,142 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link DeclarativeURLRewriterRule} that rewrites every request matching
+ * both a {@link RuleCondition} and a {@link HeaderCondition} to a fixed path
+ * and, optionally, a fixed server name, for instance to route mobile
+ * browsers by their <code>User-Agent</code> or visitors by their
+ * <code>Accept-Language</code>. Its result depends on the request headers, so
+ * it isn't a {@link DeterministicRule}.
+ */
+public class HeaderRule implements DeclarativeURLRewriterRule {
+
+	final private RuleCondition condition;
+
+	final private HeaderCondition header;
+
+	final private String serverName;
+
+	final private String path;
+
+	final private boolean terminal;
+
+	/**
+	 * Constructor that receives a condition, a header condition, a server
+	 * name and a path.
+	 *
+	 * @param condition
+	 *            a {@link RuleCondition}. It cannot be null.
+	 * @param header
+	 *            a {@link HeaderCondition}. It cannot be null.
+	 * @param serverName
+	 *            a {@link String}. If null, the server name of the request is
+	 *            kept.
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 */
+	public HeaderRule(RuleCondition condition, HeaderCondition header, String serverName,
+			String path) {
+		this(condition, header, serverName, path, true);
+	}
+
+	private HeaderRule(RuleCondition condition, HeaderCondition header, String serverName,
+			String path, boolean terminal) {
+		assert condition != null;
+		assert header != null;
+		assert path != null;
+		this.condition = condition;
+		this.header = header;
+		this.serverName = serverName;
+		this.path = path;
+		this.terminal = terminal;
+	}
+
+	/**
+	 * Constructor that receives a condition, a header condition and a path.
+	 * The server name of the request is kept.
+	 *
+	 * @param condition
+	 *            a {@link RuleCondition}. It cannot be null.
+	 * @param header
+	 *            a {@link HeaderCondition}. It cannot be null.
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 */
+	public HeaderRule(RuleCondition condition, HeaderCondition header, String path) {
+		this(condition, header, null, path);
+	}
+
+	/**
+	 * Returns a copy of this rule that isn't terminal, so the later rules are
+	 * still applied to the requests it rewrites.
+	 *
+	 * @return a {@link HeaderRule}.
+	 */
+	public HeaderRule chained() {
+		return new HeaderRule(condition, header, serverName, path, false);
+	}
+
+	public Request process(Request request) {
+		if (condition.matches(request) && header.matches(request)) {
+			request = new SimpleRequestWrapper(request, serverName, path);
+		}
+		return request;
+	}
+
+	public RuleCondition getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Returns the condition on the request headers.
+	 *
+	 * @return a {@link HeaderCondition}.
+	 */
+	public HeaderCondition getHeaderCondition() {
+		return header;
+	}
+
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+	/**
+	 * Returns the server name requests are rewritten to.
+	 *
+	 * @return a {@link String} or <code>null</code> if the server name is kept.
+	 */
+	public String getServerName() {
+		return serverName;
+	}
+
+	/**
+	 * Returns the path requests are rewritten to.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("HeaderRule[%s, %s -> %s%s]", condition, header,
+				serverName != null ? serverName : "", path);
+	}
+
+}
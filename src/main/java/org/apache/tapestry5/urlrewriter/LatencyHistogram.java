@@ -0,0 +1,177 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds. Like an HDR histogram, it
+ * splits each power of two in four linear sub-buckets, so recorded values
+ * are kept with a 25% precision from 1ns to about 18 minutes. Buckets are
+ * {@link LongAdder}s created on first use, so recording from many threads
+ * doesn't contend and unused buckets take no memory.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAXIMUM_EXPONENT = 40;
+
+	private static final int BUCKETS = SUB_BUCKETS + (MAXIMUM_EXPONENT - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKETS;
+
+	final private AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<LongAdder>(
+			BUCKETS);
+
+	final private LongAdder count = new LongAdder();
+
+	final private LongAdder total = new LongAdder();
+
+	final private LongAccumulator maximum = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            a latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int index = index(nanos);
+		LongAdder bucket = buckets.get(index);
+		if (bucket == null) {
+			buckets.compareAndSet(index, null, new LongAdder());
+			bucket = buckets.get(index);
+		}
+		bucket.increment();
+		count.increment();
+		total.add(nanos);
+		maximum.accumulate(nanos);
+
+	}
+
+	private static int index(long value) {
+
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAXIMUM_EXPONENT);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		if (exponent == MAXIMUM_EXPONENT && value >= (2L << MAXIMUM_EXPONENT)) {
+			subBucket = SUB_BUCKETS - 1;
+		}
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+
+	}
+
+	private static long upperBound(int index) {
+
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean latency in nanoseconds.
+	 *
+	 * @return a <code>long</code>, 0 if nothing was recorded.
+	 */
+	public long getMean() {
+		long count = this.count.sum();
+		return count > 0 ? total.sum() / count : 0;
+	}
+
+	/**
+	 * Returns the largest recorded latency in nanoseconds.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMaximum() {
+		return maximum.get();
+	}
+
+	/**
+	 * Returns an upper bound of the latency below which a percentage of the
+	 * recorded latencies fall.
+	 *
+	 * @param percentile
+	 *            a <code>double</code> between 0 and 100.
+	 * @return a latency in nanoseconds, 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null) {
+				counts[i] = bucket.sum();
+				total += counts[i];
+			}
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				// the last bucket also holds everything beyond the maximum exponent.
+				return i == BUCKETS - 1 ? getMaximum() : Math.min(upperBound(i), getMaximum());
+			}
+		}
+		return getMaximum();
+
+	}
+
+	/**
+	 * Clears all the recorded latencies. Buckets are zeroed instead of
+	 * dropped, so a latency being recorded at the same time never finds its
+	 * bucket gone.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null) {
+				bucket.reset();
+			}
+		}
+		count.reset();
+		total.reset();
+		maximum.reset();
+	}
+
+}
@@ -0,0 +1,66 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * Public server name and path of a link, as produced by
+ * {@link org.apache.tapestry5.services.URLRewriter#rewriteLink(String, String)}
+ * from the path Tapestry generated for it.
+ */
+public final class LinkTarget {
+
+	final private String serverName;
+
+	final private String path;
+
+	/**
+	 * Creates a link target.
+	 *
+	 * @param serverName
+	 *            a {@link String} or <code>null</code> if the link stays on
+	 *            the server name of the current request.
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 */
+	public LinkTarget(String serverName, String path) {
+		assert path != null;
+		this.serverName = serverName;
+		this.path = path;
+	}
+
+	/**
+	 * Returns the server name the link must point to.
+	 *
+	 * @return a {@link String} or <code>null</code> if it's the server name
+	 *         of the current request.
+	 */
+	public String getServerName() {
+		return serverName;
+	}
+
+	/**
+	 * Returns the public path of the link, without the context path.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LinkTarget[%s%s]", serverName != null ? serverName : "", path);
+	}
+
+}
@@ -0,0 +1,225 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReloadableRuleSource} reading a UTF-8 mapping file, checked for
+ * changes every few seconds. Each line has a source path and a target path
+ * separated by whitespace. A source containing variables, such as
+ * <code>/product/{id}</code>, becomes a {@link PatternRule}; a source
+ * starting with <code>^</code> is a regular expression and becomes a
+ * {@link RegexRule}; any other source becomes a {@link SimpleURLRewriterRule}
+ * matching that exact path. These rules are terminal, unless the line ends
+ * with <code>[chain]</code>, in which case the rules after it still run on
+ * the rewritten request. Empty lines and lines starting with <code>#</code>
+ * are ignored.
+ *
+ * <pre>
+ * # spring campaign
+ * /spring          /campaign/show/spring
+ * /promo/{code}    /campaign/promo/{code}
+ * ^/p/(\d+)$       /product/show/$1
+ * /old/{page}      /{page}   [chain]
+ * </pre>
+ */
+public class MappingFileRuleSource implements ReloadableRuleSource {
+
+	private static final String CHAIN = "[chain]";
+
+	final private File file;
+
+	final private long checkInterval;
+
+	final private List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+	private ScheduledExecutorService executor;
+
+	private volatile long stamp;
+
+	/**
+	 * Constructor that receives the mapping file and how often it is checked.
+	 *
+	 * @param file
+	 *            a {@link File}. It cannot be null.
+	 * @param checkInterval
+	 *            the interval between checks, in milliseconds. If not
+	 *            positive, the file is never checked.
+	 */
+	public MappingFileRuleSource(File file, long checkInterval) {
+		assert file != null;
+		this.file = file;
+		this.checkInterval = checkInterval;
+	}
+
+	public List<URLRewriterRule> load() throws IOException {
+
+		stamp = stamp();
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+		try {
+			return parse(reader, file.getPath());
+		} finally {
+			reader.close();
+		}
+
+	}
+
+	/**
+	 * Parses the rules of a mapping file.
+	 *
+	 * @param reader
+	 *            a {@link Reader}. It cannot be null.
+	 * @param name
+	 *            the name of the file, used in error messages.
+	 * @return a <code>List</code> of {@link URLRewriterRule}s.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 * @throws IllegalArgumentException
+	 *             if a line is malformed.
+	 */
+	public static List<URLRewriterRule> parse(Reader reader, String name) throws IOException {
+
+		assert reader != null;
+		List<URLRewriterRule> rules = new ArrayList<URLRewriterRule>();
+		BufferedReader lines = new BufferedReader(reader);
+		int number = 0;
+		String line;
+
+		while ((line = lines.readLine()) != null) {
+
+			number++;
+			line = line.trim();
+			if (line.length() == 0 || line.charAt(0) == '#') {
+				continue;
+			}
+
+			String[] fields = line.split("\\s+");
+			if (fields.length < 2 || fields.length > 3
+					|| !(fields[0].startsWith("/") || fields[0].startsWith("^/"))
+					|| !fields[1].startsWith("/")
+					|| (fields.length == 3 && !fields[2].equals(CHAIN))) {
+				throw new IllegalArgumentException(String.format(
+						"%s, line %d: expected a source path, a target path and an optional %s but found '%s'",
+						name, number, CHAIN, line));
+			}
+			boolean chained = fields.length == 3;
+
+			try {
+				if (fields[0].charAt(0) == '^') {
+					RegexRule rule = new RegexRule(fields[0], fields[1]);
+					rules.add(chained ? rule.chained() : rule);
+				} else if (fields[0].indexOf('{') >= 0) {
+					PatternRule rule = new PatternRule(fields[0], fields[1]);
+					rules.add(chained ? rule.chained() : rule);
+				} else {
+					SimpleURLRewriterRule rule = new SimpleURLRewriterRule(RuleCondition
+							.path(fields[0]), fields[1]);
+					rules.add(chained ? rule.chained() : rule);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(String.format("%s, line %d: %s", name, number,
+						e.getMessage()), e);
+			}
+
+		}
+
+		return rules;
+
+	}
+
+	public synchronized boolean addChangeListener(Runnable listener) {
+
+		assert listener != null;
+		if (checkInterval <= 0) {
+			return false;
+		}
+		listeners.add(listener);
+
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "tapestry-url-rewriter-file-watcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+
+			});
+			executor.scheduleWithFixedDelay(new Runnable() {
+
+				public void run() {
+					check();
+				}
+
+			}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Notifies the listeners if the file was modified, created or deleted
+	 * since it was last loaded or checked.
+	 */
+	void check() {
+
+		long current = stamp();
+		if (current != stamp) {
+			stamp = current;
+			for (Runnable listener : listeners) {
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					// ignored, as it would cancel the next checks.
+				}
+			}
+		}
+
+	}
+
+	private long stamp() {
+		return file.lastModified() * 31 + file.length();
+	}
+
+	/**
+	 * Stops checking the file for changes.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return file.getPath();
+	}
+
+}
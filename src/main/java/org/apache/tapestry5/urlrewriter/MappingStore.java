@@ -0,0 +1,219 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only map from paths to paths stored in a file built by
+ * {@link MappingStoreBuilder} and memory-mapped, so millions of mappings take
+ * no heap and opening the store doesn't read it. The file has a header, a
+ * table with the offset of each record, sorted by key, and the records, each
+ * an unsigned 16-bit length followed by UTF-8 bytes for the key and then for
+ * the value:
+ * 
+ * <pre>
+ * int magic, int version, int count
+ * int[count] offsets
+ * (short keyLength, byte[] key, short valueLength, byte[] value)[count]
+ * </pre>
+ * 
+ * Lookups binary search the offsets, comparing the key with the UTF-8 bytes
+ * in place, so only the returned value is allocated. A store is safe for use
+ * by many threads. The mapping is released when the store is garbage
+ * collected.
+ */
+public final class MappingStore {
+
+	static final int MAGIC = 0x54555253;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 12;
+
+	final private ByteBuffer buffer;
+
+	final private int count;
+
+	final private String name;
+
+	private MappingStore(ByteBuffer buffer, String name) {
+		this.buffer = buffer;
+		this.name = name;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException(String.format("%s is not a mapping store", name));
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException(String.format(
+					"%s has version %d of the mapping store format, expected %d", name,
+					buffer.getInt(4), VERSION));
+		}
+		this.count = buffer.getInt(8);
+		if (count < 0 || HEADER_SIZE + (long) count * 4 > buffer.capacity()) {
+			throw new IllegalArgumentException(String.format("%s is truncated", name));
+		}
+	}
+
+	/**
+	 * Maps a store file in memory.
+	 * 
+	 * @param file
+	 *            a {@link File} built by {@link MappingStoreBuilder}. It cannot
+	 *            be null.
+	 * @return a {@link MappingStore}.
+	 * @throws IOException
+	 *             if the file could not be mapped.
+	 * @throws IllegalArgumentException
+	 *             if the file isn't a mapping store.
+	 */
+	public static MappingStore open(File file) throws IOException {
+
+		assert file != null;
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the channel is closed.
+			FileChannel channel = input.getChannel();
+			return new MappingStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+					file.getPath());
+		} finally {
+			input.close();
+		}
+
+	}
+
+	/**
+	 * Wraps a buffer holding a store, such as one built in memory.
+	 * 
+	 * @param buffer
+	 *            a {@link ByteBuffer}. It cannot be null.
+	 * @return a {@link MappingStore}.
+	 */
+	public static MappingStore wrap(ByteBuffer buffer) {
+		assert buffer != null;
+		return new MappingStore(buffer, "buffer");
+	}
+
+	/**
+	 * Returns the value mapped to a key.
+	 * 
+	 * @param key
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link String} or <code>null</code> if there's no such key.
+	 */
+	public String get(String key) {
+
+		assert key != null;
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int record = buffer.getInt(HEADER_SIZE + middle * 4);
+			int comparison = compare(key, record + 2, buffer.getChar(record));
+			if (comparison > 0) {
+				low = middle + 1;
+			} else if (comparison < 0) {
+				high = middle - 1;
+			} else {
+				int value = record + 2 + buffer.getChar(record);
+				return decode(value + 2, buffer.getChar(value));
+			}
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Compares a key with UTF-8 bytes of the buffer, encoding it on the fly.
+	 * Unpaired surrogates are encoded as '?', like {@link String#getBytes}
+	 * does.
+	 */
+	private int compare(String key, int offset, int length) {
+
+		int position = offset;
+		int end = offset + length;
+
+		for (int i = 0; i < key.length(); i++) {
+
+			int c = key.charAt(i);
+			int bytes;
+			int encoded;
+
+			if (c < 0x80) {
+				bytes = 1;
+				encoded = c;
+			} else if (c < 0x800) {
+				bytes = 2;
+				encoded = (0xC0 | c >> 6) << 8 | 0x80 | c & 0x3F;
+			} else if (Character.isSurrogate((char) c)) {
+				if (Character.isHighSurrogate((char) c) && i + 1 < key.length()
+						&& Character.isLowSurrogate(key.charAt(i + 1))) {
+					c = Character.toCodePoint((char) c, key.charAt(++i));
+					bytes = 4;
+					encoded = (0xF0 | c >> 18) << 24 | (0x80 | c >> 12 & 0x3F) << 16
+							| (0x80 | c >> 6 & 0x3F) << 8 | 0x80 | c & 0x3F;
+				} else {
+					bytes = 1;
+					encoded = '?';
+				}
+			} else {
+				bytes = 3;
+				encoded = (0xE0 | c >> 12) << 16 | (0x80 | c >> 6 & 0x3F) << 8 | 0x80 | c & 0x3F;
+			}
+
+			for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+				if (position == end) {
+					return 1;
+				}
+				int difference = (encoded >>> shift & 0xFF) - (buffer.get(position++) & 0xFF);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+
+		}
+
+		return position == end ? 0 : -1;
+
+	}
+
+	private String decode(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of mappings.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%d mappings)", name, count);
+	}
+
+}
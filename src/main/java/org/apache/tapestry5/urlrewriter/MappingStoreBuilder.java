@@ -0,0 +1,270 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds {@link MappingStore} files from CSV files with two columns, the old
+ * path and the new path. Fields may be quoted with double quotes, as in RFC
+ * 4180, and a first line starting with <code>#</code> is ignored. It can be
+ * run from the command line:
+ * 
+ * <pre>
+ * java -cp tapestry-url-rewriter.jar org.apache.tapestry5.urlrewriter.MappingStoreBuilder mappings.csv mappings.store
+ * </pre>
+ */
+public final class MappingStoreBuilder {
+
+	final private List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Adds a mapping.
+	 * 
+	 * @param key
+	 *            a {@link String}. It cannot be null.
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return this builder.
+	 * @throws IllegalArgumentException
+	 *             if the key or the value is longer than 65535 bytes in
+	 *             UTF-8.
+	 */
+	public MappingStoreBuilder add(String key, String value) {
+		assert key != null;
+		assert value != null;
+		entries.add(new Entry(encode(key), encode(value)));
+		return this;
+	}
+
+	private static byte[] encode(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException(String.format(
+					"'%s...' is longer than 65535 bytes", value.substring(0, 40)));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Adds the mappings of a CSV file.
+	 * 
+	 * @param reader
+	 *            a {@link Reader}. It cannot be null.
+	 * @param name
+	 *            the name of the file, used in error messages.
+	 * @return this builder.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 * @throws IllegalArgumentException
+	 *             if a line doesn't have exactly two fields.
+	 */
+	public MappingStoreBuilder addCsv(Reader reader, String name) throws IOException {
+
+		assert reader != null;
+		BufferedReader lines = new BufferedReader(reader);
+		List<String> fields = new ArrayList<String>(2);
+		int number = 0;
+		String line;
+
+		while ((line = lines.readLine()) != null) {
+			number++;
+			if (line.length() == 0 || (number == 1 && line.startsWith("#"))) {
+				continue;
+			}
+			fields.clear();
+			if (!split(line, fields) || fields.size() != 2) {
+				throw new IllegalArgumentException(String.format(
+						"%s, line %d: expected an old path and a new path but found '%s'", name,
+						number, line));
+			}
+			add(fields.get(0), fields.get(1));
+		}
+
+		return this;
+
+	}
+
+	/**
+	 * Splits a CSV line, returning false if a quoted field isn't closed.
+	 */
+	private static boolean split(String line, List<String> fields) {
+
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString().trim());
+
+		return !quoted;
+
+	}
+
+	/**
+	 * Writes the store, sorting the mappings by key.
+	 * 
+	 * @param output
+	 *            an {@link OutputStream}. It cannot be null.
+	 * @throws IOException
+	 *             if the store could not be written.
+	 * @throws IllegalArgumentException
+	 *             if a key was added twice or the store would be larger than
+	 *             2GB.
+	 */
+	public void write(OutputStream output) throws IOException {
+
+		assert output != null;
+		Collections.sort(entries);
+
+		long offset = MappingStore.HEADER_SIZE + 4L * entries.size();
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			if (i > 0 && entry.compareTo(entries.get(i - 1)) == 0) {
+				throw new IllegalArgumentException(String.format("Duplicated key '%s'", new String(
+						entry.key, StandardCharsets.UTF_8)));
+			}
+			offset += 4 + entry.key.length + entry.value.length;
+		}
+		if (offset > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The mappings don't fit in a 2GB store");
+		}
+
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(MappingStore.MAGIC);
+		data.writeInt(MappingStore.VERSION);
+		data.writeInt(entries.size());
+		int position = MappingStore.HEADER_SIZE + 4 * entries.size();
+		for (Entry entry : entries) {
+			data.writeInt(position);
+			position += 4 + entry.key.length + entry.value.length;
+		}
+		for (Entry entry : entries) {
+			data.writeShort(entry.key.length);
+			data.write(entry.key);
+			data.writeShort(entry.value.length);
+			data.write(entry.value);
+		}
+		data.flush();
+
+	}
+
+	/**
+	 * Returns the number of mappings added.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Builds a store file from a CSV file.
+	 * 
+	 * @param args
+	 *            the CSV file and the store file.
+	 * @throws IOException
+	 *             if a file could not be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 2) {
+			System.err.println("Usage: MappingStoreBuilder <mappings.csv> <mappings.store>");
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		MappingStoreBuilder builder = new MappingStoreBuilder();
+		Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(args[0])),
+				StandardCharsets.UTF_8);
+		try {
+			builder.addCsv(reader, args[0]);
+		} finally {
+			reader.close();
+		}
+
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(args[1]));
+		try {
+			builder.write(output);
+		} finally {
+			output.close();
+		}
+
+		System.out.println(String.format("Wrote %d mappings to %s (%d bytes) in %d ms",
+				builder.size(), args[1], new File(args[1]).length(), System.currentTimeMillis()
+						- start));
+
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+
+		final private byte[] key;
+
+		final private byte[] value;
+
+		Entry(byte[] key, byte[] value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		/**
+		 * Compares the keys as unsigned bytes, the order
+		 * {@link MappingStore#get(String)} searches in.
+		 */
+		public int compareTo(Entry other) {
+			int length = Math.min(key.length, other.key.length);
+			for (int i = 0; i < length; i++) {
+				int difference = (key[i] & 0xFF) - (other.key[i] & 0xFF);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return key.length - other.key.length;
+		}
+
+	}
+
+}
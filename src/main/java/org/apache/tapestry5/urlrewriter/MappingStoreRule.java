@@ -0,0 +1,55 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link URLRewriterRule} that rewrites paths found in a {@link MappingStore}
+ * to the path they're mapped to, for large sets of one-to-one mappings, such
+ * as the URLs of a migrated site.
+ */
+public class MappingStoreRule implements DeterministicRule {
+
+	final private MappingStore store;
+
+	/**
+	 * Constructor that receives the store.
+	 * 
+	 * @param store
+	 *            a {@link MappingStore}. It cannot be null.
+	 */
+	public MappingStoreRule(MappingStore store) {
+		assert store != null;
+		this.store = store;
+	}
+
+	public Request process(Request request) {
+		String path = store.get(request.getPath());
+		if (path != null) {
+			request = new SimpleRequestWrapper(request, path);
+		}
+		return request;
+	}
+
+	public MappingStore getStore() {
+		return store;
+	}
+
+	@Override
+	public String toString() {
+		return "MappingStoreRule " + store;
+	}
+
+}
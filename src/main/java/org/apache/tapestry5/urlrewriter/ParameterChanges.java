@@ -0,0 +1,172 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of changes to the query parameters of a request: parameters
+ * set to new values, removed or renamed. Each method returns a copy with one
+ * more change, applied after the previous ones. A
+ * {@link ParameterRequestWrapper} applies the changes when the parameters
+ * are read, so the parameters of the original request are never copied.
+ * <p/>
+ * Changes that don't depend on the request can be built once and shared by
+ * every request a rule rewrites.
+ */
+public final class ParameterChanges {
+
+	private static final ParameterChanges NONE = new ParameterChanges(
+			Collections.<String, Change> emptyMap());
+
+	final private Map<String, Change> changes;
+
+	private ParameterChanges(Map<String, Change> changes) {
+		this.changes = changes;
+	}
+
+	/**
+	 * Returns an empty set of changes.
+	 *
+	 * @return a {@link ParameterChanges}.
+	 */
+	public static ParameterChanges none() {
+		return NONE;
+	}
+
+	/**
+	 * Returns a copy of these changes that also sets a parameter, replacing
+	 * any values it had.
+	 *
+	 * @param name
+	 *            the parameter name. It cannot be null.
+	 * @param values
+	 *            the new values. There must be at least one.
+	 * @return a {@link ParameterChanges}.
+	 */
+	public ParameterChanges set(String name, String... values) {
+		assert name != null;
+		assert values.length > 0;
+		return with(name, new Change(values.clone(), null));
+	}
+
+	/**
+	 * Returns a copy of these changes that also removes a parameter.
+	 *
+	 * @param name
+	 *            the parameter name. It cannot be null.
+	 * @return a {@link ParameterChanges}.
+	 */
+	public ParameterChanges remove(String name) {
+		assert name != null;
+		return with(name, Change.REMOVED);
+	}
+
+	/**
+	 * Returns a copy of these changes that also renames a parameter. Its
+	 * values, as left by the previous changes, replace those of
+	 * <code>to</code>, and <code>from</code> is removed.
+	 *
+	 * @param from
+	 *            the current parameter name. It cannot be null.
+	 * @param to
+	 *            the new parameter name. It cannot be null.
+	 * @return a {@link ParameterChanges}.
+	 */
+	public ParameterChanges rename(String from, String to) {
+
+		assert from != null;
+		assert to != null;
+		if (from.equals(to)) {
+			return this;
+		}
+
+		Change change = changes.get(from);
+		if (change == null) {
+			change = new Change(null, from);
+		}
+		Map<String, Change> copy = new HashMap<String, Change>(changes);
+		copy.put(to, change);
+		copy.put(from, Change.REMOVED);
+		return new ParameterChanges(copy);
+
+	}
+
+	private ParameterChanges with(String name, Change change) {
+		Map<String, Change> copy = new HashMap<String, Change>(changes);
+		copy.put(name, change);
+		return new ParameterChanges(copy);
+	}
+
+	/**
+	 * Returns the change made to a parameter.
+	 */
+	Change get(String name) {
+		return changes.isEmpty() ? null : changes.get(name);
+	}
+
+	/**
+	 * Returns the names of the parameters these changes affect.
+	 */
+	Set<String> getNames() {
+		return changes.keySet();
+	}
+
+	/**
+	 * Tells whether there are no changes.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ParameterChanges%s", changes);
+	}
+
+	/**
+	 * Change to a single parameter: either new values, the name of the
+	 * original parameter the values are read from, or neither if it was
+	 * removed.
+	 */
+	static final class Change {
+
+		static final Change REMOVED = new Change(null, null);
+
+		final String[] values;
+
+		final String source;
+
+		Change(String[] values, String source) {
+			this.values = values;
+			this.source = source;
+		}
+
+		@Override
+		public String toString() {
+			if (values != null) {
+				return Arrays.toString(values);
+			}
+			return source != null ? "<-" + source : "removed";
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link SimpleRequestWrapper} that also changes the query parameters of the
+ * request through {@link ParameterChanges}. The changes are an overlay over
+ * the original parameters: parameters they don't touch are read straight
+ * from the wrapped request, so rewriting a large form post costs nothing per
+ * untouched parameter. Only {@link #getParameterNames()} builds a new list,
+ * and only when it's called.
+ * <p/>
+ * The rewrite cache only keeps server names and paths, so rules returning
+ * this wrapper must not implement {@link DeterministicRule}.
+ */
+public class ParameterRequestWrapper extends SimpleRequestWrapper {
+
+	final private ParameterChanges changes;
+
+	private List<String> parameterNames;
+
+	/**
+	 * Constructor that receives a request, a server name, a path and the
+	 * parameter changes.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @param serverName
+	 *            a {@link String}. If null, the server name of the request is
+	 *            kept.
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @param changes
+	 *            a {@link ParameterChanges}. It cannot be null.
+	 */
+	public ParameterRequestWrapper(Request request, String serverName, String path,
+			ParameterChanges changes) {
+		super(request, serverName, path);
+		assert changes != null;
+		this.changes = changes;
+	}
+
+	/**
+	 * Constructor that only changes the parameters of a request.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @param changes
+	 *            a {@link ParameterChanges}. It cannot be null.
+	 */
+	public ParameterRequestWrapper(Request request, ParameterChanges changes) {
+		this(request, null, request.getPath(), changes);
+	}
+
+	@Override
+	public String getParameter(String name) {
+
+		ParameterChanges.Change change = changes.get(name);
+		if (change == null) {
+			return super.getParameter(name);
+		}
+		if (change.values != null) {
+			return change.values[0];
+		}
+		return change.source != null ? super.getParameter(change.source) : null;
+
+	}
+
+	@Override
+	public String[] getParameters(String name) {
+
+		ParameterChanges.Change change = changes.get(name);
+		if (change == null) {
+			return super.getParameters(name);
+		}
+		if (change.values != null) {
+			return change.values.clone();
+		}
+		return change.source != null ? super.getParameters(change.source) : null;
+
+	}
+
+	@Override
+	public List<String> getParameterNames() {
+
+		if (changes.isEmpty()) {
+			return super.getParameterNames();
+		}
+
+		if (parameterNames == null) {
+
+			List<String> names = new ArrayList<String>();
+			for (String name : super.getParameterNames()) {
+				if (changes.get(name) == null) {
+					names.add(name);
+				}
+			}
+			for (String name : changes.getNames()) {
+				ParameterChanges.Change change = changes.get(name);
+				if (change.values != null
+						|| (change.source != null && super.getParameters(change.source) != null)) {
+					names.add(name);
+				}
+			}
+			Collections.sort(names);
+			parameterNames = Collections.unmodifiableList(names);
+
+		}
+		return parameterNames;
+
+	}
+
+	/**
+	 * Returns the parameter changes.
+	 *
+	 * @return a {@link ParameterChanges}.
+	 */
+	public ParameterChanges getParameterChanges() {
+		return changes;
+	}
+
+}
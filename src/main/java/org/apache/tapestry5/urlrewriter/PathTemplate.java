@@ -0,0 +1,270 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed path template such as <code>/product/{id}/{slug}</code>. Text
+ * outside braces is matched literally and each <code>{name}</code> variable
+ * matches one or more characters other than <code>/</code>. Two variables
+ * cannot be adjacent, as the boundary between them would be ambiguous.
+ * <p/>
+ * Matching doesn't create substrings: {@link #match(String)} returns the
+ * offsets of each variable in the matched path, and the values are only
+ * copied when a target is built through
+ * {@link #expand(StringBuilder, PathTemplate, String, int[])} or read through
+ * {@link #getVariable(String, int[], String)}.
+ */
+public final class PathTemplate {
+
+	final private String pattern;
+
+	/**
+	 * Literal text around the variables. The literal at index i comes before
+	 * the variable at index i, so there's always one literal more than
+	 * variables.
+	 */
+	final private String[] literals;
+
+	final private String[] variables;
+
+	private PathTemplate(String pattern, String[] literals, String[] variables) {
+		this.pattern = pattern;
+		this.literals = literals;
+		this.variables = variables;
+	}
+
+	/**
+	 * Parses a template.
+	 *
+	 * @param pattern
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link PathTemplate}.
+	 * @throws IllegalArgumentException
+	 *             if the template is malformed.
+	 */
+	public static PathTemplate parse(String pattern) {
+
+		assert pattern != null;
+
+		List<String> literals = new ArrayList<String>();
+		List<String> variables = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		int index = 0;
+
+		while (index < pattern.length()) {
+
+			char c = pattern.charAt(index);
+
+			if (c == '{') {
+
+				int end = pattern.indexOf('}', index);
+				if (end < 0) {
+					throw new IllegalArgumentException(String.format(
+							"Unclosed variable in path template '%s'", pattern));
+				}
+				String name = pattern.substring(index + 1, end);
+				if (name.length() == 0 || name.indexOf('/') >= 0 || name.indexOf('{') >= 0) {
+					throw new IllegalArgumentException(String.format(
+							"Invalid variable name '%s' in path template '%s'", name, pattern));
+				}
+				if (variables.contains(name)) {
+					throw new IllegalArgumentException(String.format(
+							"Duplicated variable '%s' in path template '%s'", name, pattern));
+				}
+				if (!variables.isEmpty() && literal.length() == 0) {
+					throw new IllegalArgumentException(String.format(
+							"Adjacent variables in path template '%s'", pattern));
+				}
+
+				literals.add(literal.toString());
+				literal.setLength(0);
+				variables.add(name);
+				index = end + 1;
+
+			} else if (c == '}') {
+				throw new IllegalArgumentException(String.format(
+						"Unopened variable in path template '%s'", pattern));
+			} else {
+				literal.append(c);
+				index++;
+			}
+
+		}
+
+		literals.add(literal.toString());
+
+		return new PathTemplate(pattern, literals.toArray(new String[literals.size()]),
+				variables.toArray(new String[variables.size()]));
+
+	}
+
+	/**
+	 * Matches a path against this template.
+	 *
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @return an <code>int</code> array with the start and end offsets of each
+	 *         variable in <code>path</code>, in declaration order, or
+	 *         <code>null</code> if the path doesn't match.
+	 */
+	public int[] match(String path) {
+
+		if (!path.startsWith(literals[0])) {
+			return null;
+		}
+
+		int[] offsets = new int[variables.length * 2];
+		return match(path, literals[0].length(), 0, offsets) ? offsets : null;
+
+	}
+
+	private boolean match(String path, int start, int variable, int[] offsets) {
+
+		if (variable == variables.length) {
+			return start == path.length();
+		}
+
+		String next = literals[variable + 1];
+		int end = start + 1;
+
+		// the variable takes at least one character and never crosses a '/'.
+		while (end <= path.length() && path.charAt(end - 1) != '/') {
+			if (path.startsWith(next, end) && match(path, end + next.length(), variable + 1, offsets)) {
+				offsets[variable * 2] = start;
+				offsets[variable * 2 + 1] = end;
+				return true;
+			}
+			end++;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Appends this template to a builder, replacing each variable by its
+	 * value in a path matched by another template.
+	 *
+	 * @param builder
+	 *            a {@link StringBuilder}. It cannot be null.
+	 * @param source
+	 *            the {@link PathTemplate} that matched <code>path</code>.
+	 * @param path
+	 *            the matched {@link String}.
+	 * @param offsets
+	 *            the offsets returned by <code>source.match(path)</code>.
+	 * @return <code>builder</code>.
+	 * @throws IllegalArgumentException
+	 *             if this template uses a variable <code>source</code>
+	 *             doesn't define.
+	 */
+	public StringBuilder expand(StringBuilder builder, PathTemplate source, String path,
+			int[] offsets) {
+
+		for (int i = 0; i < variables.length; i++) {
+			builder.append(literals[i]);
+			int index = source.indexOf(variables[i]);
+			if (index < 0) {
+				throw new IllegalArgumentException(String.format(
+						"Variable '%s' is not defined in path template '%s'", variables[i], source));
+			}
+			builder.append(path, offsets[index * 2], offsets[index * 2 + 1]);
+		}
+		return builder.append(literals[variables.length]);
+
+	}
+
+	/**
+	 * Returns the value of a variable in a path matched by this template.
+	 *
+	 * @param path
+	 *            the matched {@link String}.
+	 * @param offsets
+	 *            the offsets returned by {@link #match(String)}.
+	 * @param name
+	 *            the variable name.
+	 * @return a {@link String} or <code>null</code> if there's no such
+	 *         variable.
+	 */
+	public String getVariable(String path, int[] offsets, String name) {
+		int index = indexOf(name);
+		return index >= 0 ? path.substring(offsets[index * 2], offsets[index * 2 + 1]) : null;
+	}
+
+	/**
+	 * Returns the index of a variable.
+	 *
+	 * @param name
+	 *            the variable name.
+	 * @return an <code>int</code> or -1 if there's no such variable.
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the variable names, in declaration order.
+	 *
+	 * @return a <code>List</code> of {@link String}.
+	 */
+	public List<String> getVariableNames() {
+		return Collections.unmodifiableList(Arrays.asList(variables));
+	}
+
+	/**
+	 * Returns the number of variables.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getVariableCount() {
+		return variables.length;
+	}
+
+	/**
+	 * Returns the literal text that comes before a variable. The literal at
+	 * index {@link #getVariableCount()} is the text after the last variable.
+	 *
+	 * @param index
+	 *            an <code>int</code>.
+	 * @return a {@link String}, possibly empty.
+	 */
+	public String getLiteral(int index) {
+		return literals[index];
+	}
+
+	/**
+	 * Returns the template as it was parsed.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+}
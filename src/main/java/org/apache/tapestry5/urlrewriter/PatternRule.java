@@ -0,0 +1,255 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link DeclarativeURLRewriterRule} that rewrites paths matching a
+ * {@link PathTemplate} to another template, such as
+ * <code>/product/{id}/{slug}</code> to <code>/catalog/show/{id}</code>. The
+ * target server name may be a template too.
+ * <p/>
+ * The {@link org.apache.tapestry5.services.URLRewriter} compiles all the
+ * contributed pattern rules into a single automaton, so a request is matched
+ * against all of them in one pass over its path.
+ */
+public class PatternRule implements DeclarativeURLRewriterRule, DeterministicRule {
+
+	final private PathTemplate pattern;
+
+	final private PathTemplate target;
+
+	final private PathTemplate serverName;
+
+	final private RuleCondition condition;
+
+	final private boolean terminal;
+
+	/**
+	 * Constructor that receives a pattern and a target path template.
+	 *
+	 * @param pattern
+	 *            a {@link String}. It cannot be null.
+	 * @param target
+	 *            a {@link String}. It cannot be null.
+	 */
+	public PatternRule(String pattern, String target) {
+		this(pattern, null, target);
+	}
+
+	/**
+	 * Constructor that receives a pattern, a target server name template and a
+	 * target path template.
+	 *
+	 * @param pattern
+	 *            a {@link String}. It cannot be null.
+	 * @param serverName
+	 *            a {@link String}. If null, the server name of the request is
+	 *            kept.
+	 * @param target
+	 *            a {@link String}. It cannot be null.
+	 * @throws IllegalArgumentException
+	 *             if a template is malformed or the targets use variables not
+	 *             defined in the pattern.
+	 */
+	public PatternRule(String pattern, String serverName, String target) {
+		this(PathTemplate.parse(pattern), serverName != null ? PathTemplate.parse(serverName)
+				: null, PathTemplate.parse(target), null, null, true);
+	}
+
+	private PatternRule(PathTemplate pattern, PathTemplate serverName, PathTemplate target,
+			String host, String method, boolean terminal) {
+
+		assert pattern != null;
+		assert target != null;
+
+		checkVariables(target, pattern);
+		if (serverName != null) {
+			checkVariables(serverName, pattern);
+		}
+
+		this.pattern = pattern;
+		this.serverName = serverName;
+		this.target = target;
+		this.terminal = terminal;
+
+		RuleCondition condition = RuleCondition.pathPrefix(pattern.getLiteral(0));
+		if (host != null) {
+			condition = condition.host(host);
+		}
+		if (method != null) {
+			condition = condition.method(method);
+		}
+		this.condition = condition;
+
+	}
+
+	private static void checkVariables(PathTemplate template, PathTemplate pattern) {
+		for (String name : template.getVariableNames()) {
+			if (pattern.indexOf(name) < 0) {
+				throw new IllegalArgumentException(String.format(
+						"Variable '%s' used in '%s' is not defined in pattern '%s'", name,
+						template, pattern));
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of this rule that only applies to the given server name.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link PatternRule}.
+	 */
+	public PatternRule host(String host) {
+		assert host != null;
+		return new PatternRule(pattern, serverName, target, host, condition.getMethod(),
+				terminal);
+	}
+
+	/**
+	 * Returns a copy of this rule that only applies to the given HTTP method.
+	 *
+	 * @param method
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link PatternRule}.
+	 */
+	public PatternRule method(String method) {
+		assert method != null;
+		return new PatternRule(pattern, serverName, target, condition.getHost(), method,
+				terminal);
+	}
+
+	/**
+	 * Returns a copy of this rule that isn't terminal, so the later rules are
+	 * still applied to the requests it rewrites.
+	 *
+	 * @return a {@link PatternRule}.
+	 */
+	public PatternRule chained() {
+		return new PatternRule(pattern, serverName, target, condition.getHost(),
+				condition.getMethod(), false);
+	}
+
+	public Request process(Request request) {
+
+		if (!condition.matches(request)) {
+			return request;
+		}
+
+		final String path = request.getPath();
+		final int[] offsets = pattern.match(path);
+		if (offsets == null) {
+			return request;
+		}
+
+		return rewrite(request, path, offsets);
+
+	}
+
+	/**
+	 * Rewrites a request whose path is already known to match the pattern,
+	 * without checking the condition or matching the path again. The
+	 * {@link org.apache.tapestry5.services.URLRewriter} uses it with the
+	 * offsets found by the automaton it compiles the pattern rules into.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @param offsets
+	 *            the variable offsets of its path, as returned by
+	 *            {@link PathTemplate#match(String)}. It cannot be null.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	public Request process(Request request, int[] offsets) {
+		assert offsets != null;
+		return rewrite(request, request.getPath(), offsets);
+	}
+
+	/**
+	 * Builds the rewritten request for a path matched by the pattern.
+	 * Subclasses can override this method to build other kinds of requests,
+	 * as long as they only change the server name and the path, as required
+	 * by {@link DeterministicRule}.
+	 *
+	 * @param request
+	 *            the matched {@link Request}.
+	 * @param path
+	 *            the matched path.
+	 * @param offsets
+	 *            the variable offsets returned by
+	 *            {@link PathTemplate#match(String)}.
+	 * @return a {@link Request}. It cannot be null.
+	 */
+	protected Request rewrite(Request request, String path, int[] offsets) {
+
+		String newServerName = null;
+		if (serverName != null) {
+			newServerName = serverName.expand(new StringBuilder(), pattern, path, offsets)
+					.toString();
+		}
+		String newPath = target.expand(new StringBuilder(path.length()), pattern, path, offsets)
+				.toString();
+
+		return new SimpleRequestWrapper(request, newServerName, newPath);
+
+	}
+
+	/**
+	 * Returns a condition covering the literal prefix of the pattern plus the
+	 * host and method restrictions, if any.
+	 */
+	public RuleCondition getCondition() {
+		return condition;
+	}
+
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+	/**
+	 * Returns the pattern requests are matched against.
+	 *
+	 * @return a {@link PathTemplate}.
+	 */
+	public PathTemplate getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the template of the rewritten path.
+	 *
+	 * @return a {@link PathTemplate}.
+	 */
+	public PathTemplate getTarget() {
+		return target;
+	}
+
+	/**
+	 * Returns the template of the rewritten server name.
+	 *
+	 * @return a {@link PathTemplate} or <code>null</code> if the server name is
+	 *         kept.
+	 */
+	public PathTemplate getServerName() {
+		return serverName;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PatternRule[%s -> %s%s]", pattern,
+				serverName != null ? serverName : "", target);
+	}
+
+}
@@ -0,0 +1,70 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link DeclarativeURLRewriterRule} that ends every request matching a
+ * {@link RuleCondition} with a {@link RewriteAction}, such as a permanent
+ * redirect from a legacy URL, so the request never reaches Tapestry's
+ * dispatchers.
+ */
+public class RedirectRule implements DeclarativeURLRewriterRule, DeterministicRule {
+
+	final private RuleCondition condition;
+
+	final private RewriteAction action;
+
+	/**
+	 * Constructor that receives a condition and an action.
+	 *
+	 * @param condition
+	 *            a {@link RuleCondition}. It cannot be null.
+	 * @param action
+	 *            a {@link RewriteAction}. It cannot be null.
+	 */
+	public RedirectRule(RuleCondition condition, RewriteAction action) {
+		assert condition != null;
+		assert action != null;
+		this.condition = condition;
+		this.action = action;
+	}
+
+	public Request process(Request request) {
+		if (condition.matches(request)) {
+			request = new ActionRequest(request, action);
+		}
+		return request;
+	}
+
+	public RuleCondition getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Returns the action that ends the matched requests.
+	 *
+	 * @return a {@link RewriteAction}.
+	 */
+	public RewriteAction getAction() {
+		return action;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RedirectRule[%s -> %s]", condition, action);
+	}
+
+}
@@ -0,0 +1,476 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * {@link DeclarativeURLRewriterRule} that rewrites paths matching a regular
+ * expression, like Apache's <code>mod_rewrite</code>: if the expression is
+ * found in the path, the whole path is replaced by the replacement, where
+ * <code>$n</code> is the text matched by the <i>n</i>-th group and
+ * <code>\</code> escapes the next character. For example,
+ * <code>^/blog/(\d+)/(\d+)/([a-z-]+)$</code> to
+ * <code>/article/show/$3</code>.
+ * <p/>
+ * The expression is compiled once and each thread reuses its own
+ * {@link Matcher}, so matching doesn't allocate. The longest literal every
+ * match must contain is extracted from the expression (see
+ * {@link #getRequiredLiteral()}): the
+ * {@link org.apache.tapestry5.services.URLRewriter} scans the path once for
+ * the literals of all the contributed regex rules and only runs the
+ * expressions whose literal was found.
+ */
+public class RegexRule implements DeclarativeURLRewriterRule, DeterministicRule {
+
+	final private Pattern pattern;
+
+	final private String replacement;
+
+	final private String[] replacementLiterals;
+
+	final private int[] replacementGroups;
+
+	final private String requiredLiteral;
+
+	final private RuleCondition condition;
+
+	final private ThreadLocal<Matcher> matchers;
+
+	final private boolean terminal;
+
+	/**
+	 * Constructor that receives a regular expression and a replacement.
+	 *
+	 * @param regex
+	 *            a {@link String}. It cannot be null.
+	 * @param replacement
+	 *            a {@link String}. It cannot be null.
+	 * @throws IllegalArgumentException
+	 *             if the expression is malformed or the replacement refers to
+	 *             a group that doesn't exist.
+	 */
+	public RegexRule(String regex, String replacement) {
+		this(regex, replacement, 0);
+	}
+
+	/**
+	 * Constructor that receives a regular expression, a replacement and the
+	 * flags the expression is compiled with.
+	 *
+	 * @param regex
+	 *            a {@link String}. It cannot be null.
+	 * @param replacement
+	 *            a {@link String}. It cannot be null.
+	 * @param flags
+	 *            a combination of {@link Pattern} flags, such as
+	 *            {@link Pattern#CASE_INSENSITIVE}.
+	 * @throws IllegalArgumentException
+	 *             if the expression is malformed or the replacement refers to
+	 *             a group that doesn't exist.
+	 */
+	public RegexRule(String regex, String replacement, int flags) {
+		this(Pattern.compile(regex, flags), replacement, null, null, true);
+	}
+
+	private RegexRule(Pattern pattern, String replacement, String host, String method,
+			boolean terminal) {
+
+		assert pattern != null;
+		assert replacement != null;
+
+		this.pattern = pattern;
+		this.replacement = replacement;
+		this.terminal = terminal;
+
+		List<String> literals = new ArrayList<String>();
+		List<Integer> groups = new ArrayList<Integer>();
+		parseReplacement(replacement, pattern.matcher("").groupCount(), literals, groups);
+		replacementLiterals = literals.toArray(new String[literals.size()]);
+		replacementGroups = new int[groups.size()];
+		for (int i = 0; i < replacementGroups.length; i++) {
+			replacementGroups[i] = groups.get(i);
+		}
+
+		requiredLiteral = requiredLiteral(pattern);
+		matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+
+		RuleCondition condition = RuleCondition.any();
+		if (host != null) {
+			condition = condition.host(host);
+		}
+		if (method != null) {
+			condition = condition.method(method);
+		}
+		this.condition = condition;
+
+	}
+
+	/**
+	 * Splits a replacement in literals separated by group references, so
+	 * that <code>literals</code> ends up with one more element than
+	 * <code>groups</code>.
+	 */
+	private static void parseReplacement(String replacement, int groupCount,
+			List<String> literals, List<Integer> groups) {
+
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < replacement.length()) {
+
+			char c = replacement.charAt(i++);
+			if (c == '\\') {
+				if (i == replacement.length()) {
+					throw new IllegalArgumentException(String.format(
+							"Replacement '%s' ends with an escape character", replacement));
+				}
+				literal.append(replacement.charAt(i++));
+			} else if (c == '$') {
+
+				if (i == replacement.length() || !isDigit(replacement.charAt(i))) {
+					throw new IllegalArgumentException(String.format(
+							"Expected a group number after '$' at index %d of '%s'", i - 1,
+							replacement));
+				}
+				// like Matcher.appendReplacement(), take as many digits as
+				// still make a valid group number.
+				int group = replacement.charAt(i++) - '0';
+				while (i < replacement.length() && isDigit(replacement.charAt(i))
+						&& group * 10 + replacement.charAt(i) - '0' <= groupCount) {
+					group = group * 10 + replacement.charAt(i++) - '0';
+				}
+				if (group > groupCount) {
+					throw new IllegalArgumentException(String.format(
+							"Replacement '%s' refers to group %d but the expression has %d",
+							replacement, group, groupCount));
+				}
+				literals.add(literal.toString());
+				literal.setLength(0);
+				groups.add(group);
+
+			} else {
+				literal.append(c);
+			}
+
+		}
+		literals.add(literal.toString());
+
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Returns the longest run of literal characters every match of a pattern
+	 * must contain, or null if none was found. Anything that isn't plainly
+	 * literal, such as groups, classes, quantified characters and escaped
+	 * letters, ends the current run, and an alternation at the top level
+	 * means there's no required literal at all.
+	 */
+	private static String requiredLiteral(Pattern pattern) {
+
+		String regex = pattern.pattern();
+		int flags = pattern.flags();
+		if ((flags & Pattern.LITERAL) != 0) {
+			return regex.length() > 0 ? regex : null;
+		}
+		if ((flags & Pattern.COMMENTS) != 0) {
+			return null;
+		}
+
+		String longest = null;
+		StringBuilder run = new StringBuilder();
+		boolean lastIsLiteral = false;
+		int i = 0;
+
+		while (i < regex.length()) {
+
+			char c = regex.charAt(i++);
+			boolean literal = false;
+
+			switch (c) {
+			case '\\':
+				if (i == regex.length()) {
+					return null;
+				}
+				c = regex.charAt(i++);
+				if (Character.isLetterOrDigit(c)) {
+					if (c == 'Q' || c == 'p' || c == 'P' || c == 'x' || c == 'k' || c == 'c'
+							|| c == 'N' || c == 'u' || c == '0') {
+						// escapes spanning more than one character.
+						return longest;
+					}
+				} else {
+					run.append(c);
+					literal = true;
+				}
+				break;
+			case '[':
+				i = skipClass(regex, i);
+				break;
+			case '(':
+				if (setsCommentsFlag(regex, i)) {
+					return null;
+				}
+				i = skipGroup(regex, i);
+				break;
+			case '|':
+				return null;
+			case '?':
+			case '*':
+			case '{':
+				if (lastIsLiteral) {
+					// the quantified character is optional.
+					run.setLength(run.length() - 1);
+				}
+				if (c == '{') {
+					int end = regex.indexOf('}', i);
+					if (end < 0) {
+						return null;
+					}
+					i = end + 1;
+				}
+				i = skipQuantifierSuffix(regex, i);
+				break;
+			case '+':
+				// the character is required but repeated, so the run can't go on.
+				i = skipQuantifierSuffix(regex, i);
+				break;
+			case '.':
+			case '^':
+			case '$':
+				break;
+			default:
+				run.append(c);
+				literal = true;
+			}
+
+			if (!literal) {
+				longest = longest(longest, run);
+				run.setLength(0);
+			}
+			lastIsLiteral = literal;
+
+		}
+
+		return longest(longest, run);
+
+	}
+
+	private static String longest(String longest, StringBuilder run) {
+		return run.length() > 0 && (longest == null || run.length() > longest.length()) ? run
+				.toString() : longest;
+	}
+
+	private static int skipQuantifierSuffix(String regex, int i) {
+		return i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+') ? i + 1
+				: i;
+	}
+
+	/**
+	 * Tells whether the group whose <code>(</code> is just before
+	 * <code>i</code> is an embedded flag expression turning on
+	 * {@link Pattern#COMMENTS}, such as <code>(?x)</code>.
+	 */
+	private static boolean setsCommentsFlag(String regex, int i) {
+
+		if (i == regex.length() || regex.charAt(i) != '?') {
+			return false;
+		}
+		for (i++; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == 'x') {
+				return true;
+			}
+			if (c == '-' || c == ':' || c == ')' || !Character.isLetter(c)) {
+				return false;
+			}
+		}
+		return false;
+
+	}
+
+	/**
+	 * Returns the index after the <code>]</code> closing a class whose
+	 * <code>[</code> is just before <code>i</code>.
+	 */
+	private static int skipClass(String regex, int i) {
+
+		if (i < regex.length() && regex.charAt(i) == '^') {
+			i++;
+		}
+		if (i < regex.length() && regex.charAt(i) == ']') {
+			i++;
+		}
+		while (i < regex.length()) {
+			char c = regex.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(regex, i);
+			} else if (c == ']') {
+				return i;
+			}
+		}
+		return i;
+
+	}
+
+	/**
+	 * Returns the index after the <code>)</code> closing a group whose
+	 * <code>(</code> is just before <code>i</code>.
+	 */
+	private static int skipGroup(String regex, int i) {
+
+		int depth = 1;
+		while (i < regex.length()) {
+			char c = regex.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(regex, i);
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')' && --depth == 0) {
+				return i;
+			}
+		}
+		return i;
+
+	}
+
+	/**
+	 * Returns a copy of this rule that only applies to the given server name.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RegexRule}.
+	 */
+	public RegexRule host(String host) {
+		assert host != null;
+		return new RegexRule(pattern, replacement, host, condition.getMethod(), terminal);
+	}
+
+	/**
+	 * Returns a copy of this rule that only applies to the given HTTP method.
+	 *
+	 * @param method
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RegexRule}.
+	 */
+	public RegexRule method(String method) {
+		assert method != null;
+		return new RegexRule(pattern, replacement, condition.getHost(), method, terminal);
+	}
+
+	/**
+	 * Returns a copy of this rule that isn't terminal, so the later rules are
+	 * still applied to the requests it rewrites.
+	 *
+	 * @return a {@link RegexRule}.
+	 */
+	public RegexRule chained() {
+		return new RegexRule(pattern, replacement, condition.getHost(), condition.getMethod(),
+				false);
+	}
+
+	public Request process(Request request) {
+
+		if (!condition.matches(request)) {
+			return request;
+		}
+
+		final String path = request.getPath();
+		final Matcher matcher = matchers.get();
+		matcher.reset(path);
+
+		try {
+
+			if (!matcher.find()) {
+				return request;
+			}
+
+			StringBuilder builder = new StringBuilder(path.length() + replacement.length());
+			builder.append(replacementLiterals[0]);
+			for (int i = 0; i < replacementGroups.length; i++) {
+				int start = matcher.start(replacementGroups[i]);
+				if (start >= 0) {
+					builder.append(path, start, matcher.end(replacementGroups[i]));
+				}
+				builder.append(replacementLiterals[i + 1]);
+			}
+
+			String newPath = builder.toString();
+			return newPath.equals(path) ? request : new SimpleRequestWrapper(request, null,
+					newPath);
+
+		} finally {
+			// doesn't keep the path reachable from the thread.
+			matcher.reset("");
+		}
+
+	}
+
+	/**
+	 * Returns a condition without any path key, plus the host and method
+	 * restrictions, if any.
+	 */
+	public RuleCondition getCondition() {
+		return condition;
+	}
+
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+	/**
+	 * Returns the compiled regular expression.
+	 *
+	 * @return a {@link Pattern}.
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the replacement of matched paths.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getReplacement() {
+		return replacement;
+	}
+
+	/**
+	 * Returns the longest literal every path matched by the expression
+	 * contains, possibly with a different case.
+	 *
+	 * @return a {@link String} or <code>null</code> if none could be found.
+	 */
+	public String getRequiredLiteral() {
+		return requiredLiteral;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RegexRule[%s -> %s]", pattern.pattern(), replacement);
+	}
+
+}
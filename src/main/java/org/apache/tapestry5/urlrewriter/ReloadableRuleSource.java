@@ -0,0 +1,72 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Source of {@link URLRewriterRule}s that can change while the application is
+ * running, such as {@link MappingFileRuleSource}. Its rules are added after
+ * the contributed ones. When they change, the
+ * {@link org.apache.tapestry5.services.URLRewriter} loads them again and
+ * compiles a new rule set in the background, replacing the one in use only if
+ * that succeeds.
+ */
+public interface ReloadableRuleSource {
+
+	/**
+	 * Source without any rules, used when no rules file is configured.
+	 */
+	ReloadableRuleSource NONE = new ReloadableRuleSource() {
+
+		public List<URLRewriterRule> load() {
+			return Collections.emptyList();
+		}
+
+		public boolean addChangeListener(Runnable listener) {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "no reloadable rules";
+		}
+
+	};
+
+	/**
+	 * Loads the current rules.
+	 *
+	 * @return a <code>List</code> of {@link URLRewriterRule}s.
+	 * @throws IOException
+	 *             if the rules could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the rules are malformed.
+	 */
+	List<URLRewriterRule> load() throws IOException;
+
+	/**
+	 * Registers a listener invoked, from a background thread, whenever the
+	 * rules change.
+	 *
+	 * @param listener
+	 *            a {@link Runnable}. It cannot be null.
+	 * @return <code>false</code> if the rules never change, so the listener
+	 *         will never be invoked.
+	 */
+	boolean addChangeListener(Runnable listener);
+
+}
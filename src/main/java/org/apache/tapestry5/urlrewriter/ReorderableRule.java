@@ -0,0 +1,29 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * Marker interface for {@link URLRewriterRule}s whose order among the
+ * adjacent reorderable rules doesn't matter, because none of them matches a
+ * request another one matches or produces. When
+ * {@link URLRewriterSymbols#REORDER_INTERVAL} is positive, the
+ * {@link org.apache.tapestry5.services.URLRewriter} counts the requests each
+ * one rewrites and periodically moves the most frequently matched first
+ * within each run of adjacent reorderable rules. Other rules, such as those
+ * contributed with <code>before:</code> or <code>after:</code> constraints,
+ * never move, and no rule is moved past them.
+ */
+public interface ReorderableRule extends URLRewriterRule {
+
+}
@@ -0,0 +1,193 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.Response;
+
+/**
+ * Immutable response that ends a request instead of rewriting it: a
+ * permanent (301) or temporary (302) redirect, or a 410 Gone. Rules return
+ * it wrapped in an {@link ActionRequest} and the
+ * {@link org.apache.tapestry5.internal.services.URLRewriterRequestFilter}
+ * writes it to the {@link Response} without dispatching the request to
+ * Tapestry.
+ * <p/>
+ * Locations starting with a single <code>/</code> are relative to the
+ * context path, which is only known once a request arrives. The resulting
+ * header value is built once and reused for every later request, as the
+ * context path doesn't change; other locations are used as they are.
+ */
+public final class RewriteAction {
+
+	/**
+	 * Status code of a permanent redirect.
+	 */
+	public static final int MOVED_PERMANENTLY = 301;
+
+	/**
+	 * Status code of a temporary redirect.
+	 */
+	public static final int FOUND = 302;
+
+	/**
+	 * Status code of a resource that was removed for good.
+	 */
+	public static final int GONE = 410;
+
+	final private int status;
+
+	final private String location;
+
+	final private boolean contextRelative;
+
+	/**
+	 * Last context path and the location resolved against it.
+	 */
+	private volatile String[] resolved;
+
+	private RewriteAction(int status, String location) {
+		this.status = status;
+		this.location = location;
+		this.contextRelative = location != null && location.startsWith("/")
+				&& !location.startsWith("//");
+		if (location != null && !contextRelative) {
+			resolved = new String[] { null, location };
+		}
+	}
+
+	/**
+	 * Returns a permanent redirect.
+	 *
+	 * @param location
+	 *            the URL to redirect to. It cannot be null.
+	 * @return a {@link RewriteAction}.
+	 */
+	public static RewriteAction movedPermanently(String location) {
+		assert location != null;
+		return new RewriteAction(MOVED_PERMANENTLY, location);
+	}
+
+	/**
+	 * Returns a temporary redirect.
+	 *
+	 * @param location
+	 *            the URL to redirect to. It cannot be null.
+	 * @return a {@link RewriteAction}.
+	 */
+	public static RewriteAction found(String location) {
+		assert location != null;
+		return new RewriteAction(FOUND, location);
+	}
+
+	/**
+	 * Returns a 410 Gone response.
+	 *
+	 * @return a {@link RewriteAction}.
+	 */
+	public static RewriteAction gone() {
+		return new RewriteAction(GONE, null);
+	}
+
+	/**
+	 * Writes this action to a response.
+	 *
+	 * @param request
+	 *            the {@link Request} being answered. It cannot be null.
+	 * @param response
+	 *            a {@link Response}. It cannot be null.
+	 * @throws IOException
+	 *             if the response can't be written.
+	 */
+	public void write(Request request, Response response) throws IOException {
+		write(request.getContextPath(), response::setStatus, response::setHeader,
+				response::setContentLength);
+	}
+
+	/**
+	 * Writes this action through the setters of any kind of response, so
+	 * every filter answers an action the same way.
+	 *
+	 * @param contextPath
+	 *            the context path of the request, empty for the root context.
+	 * @param status
+	 *            sets the status code. It cannot be null.
+	 * @param headers
+	 *            sets a header by name. It cannot be null.
+	 * @param contentLength
+	 *            sets the content length. It cannot be null.
+	 */
+	public void write(String contextPath, IntConsumer status, BiConsumer<String, String> headers,
+			IntConsumer contentLength) {
+
+		status.accept(this.status);
+		if (location != null) {
+			headers.accept("Location", getLocation(contextPath));
+		}
+		contentLength.accept(0);
+
+	}
+
+	/**
+	 * Returns the value of the <code>Location</code> header for a context
+	 * path.
+	 *
+	 * @param contextPath
+	 *            a {@link String}, empty for the root context.
+	 * @return a {@link String} or <code>null</code> if there's no location.
+	 */
+	public String getLocation(String contextPath) {
+
+		String[] resolved = this.resolved;
+		if (resolved != null && (!contextRelative || resolved[0].equals(contextPath))) {
+			return resolved[1];
+		}
+		if (location == null) {
+			return null;
+		}
+		String value = contextPath + location;
+		this.resolved = new String[] { contextPath, value };
+		return value;
+
+	}
+
+	/**
+	 * Returns the HTTP status code.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the location as it was given.
+	 *
+	 * @return a {@link String} or <code>null</code> for a 410 Gone.
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	@Override
+	public String toString() {
+		return location != null ? String.format("RewriteAction[%d %s]", status, location)
+				: String.format("RewriteAction[%d]", status);
+	}
+
+}
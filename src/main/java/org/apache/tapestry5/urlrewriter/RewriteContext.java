@@ -0,0 +1,287 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * Read-only view of a request for {@link ContextURLRewriterRule}s, built
+ * once per request and shared by all the rules that look at it, so case
+ * folding, decoding and splitting the path happen at most once instead of
+ * once per rule. Every derived value is computed on first use.
+ * <p/>
+ * Path segments are exposed as offsets into {@link #getPath()}, so rules can
+ * compare them with {@link #segmentEquals(int, String)} and
+ * {@link #segmentEqualsIgnoreCase(int, String)} without creating substrings.
+ * Empty segments, such as the one between the slashes of <code>//</code>,
+ * are skipped.
+ * <p/>
+ * A context isn't thread-safe: it belongs to the thread processing its
+ * request.
+ */
+public final class RewriteContext {
+
+	private static final int[] NO_SEGMENTS = new int[0];
+
+	final private Request request;
+
+	final private String path;
+
+	final private String serverName;
+
+	private String lowerCasePath;
+
+	private String lowerCaseServerName;
+
+	private String normalizedPath;
+
+	private int[] segments;
+
+	/**
+	 * Creates the context of a request.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 */
+	public RewriteContext(Request request) {
+		assert request != null;
+		this.request = request;
+		this.path = request.getPath();
+		this.serverName = request.getServerName();
+	}
+
+	/**
+	 * Returns the request, to be returned unchanged or wrapped by the rules.
+	 *
+	 * @return a {@link Request}.
+	 */
+	public Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * Returns the path of the request, as returned by
+	 * {@link Request#getPath()}.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the server name of the request.
+	 *
+	 * @return a {@link String}, possibly null.
+	 */
+	public String getServerName() {
+		return serverName;
+	}
+
+	/**
+	 * Returns the path in lower case.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getLowerCasePath() {
+		if (lowerCasePath == null) {
+			lowerCasePath = path.toLowerCase(Locale.ENGLISH);
+		}
+		return lowerCasePath;
+	}
+
+	/**
+	 * Returns the server name in lower case.
+	 *
+	 * @return a {@link String}, possibly null.
+	 */
+	public String getLowerCaseServerName() {
+		if (lowerCaseServerName == null && serverName != null) {
+			lowerCaseServerName = serverName.toLowerCase(Locale.ENGLISH);
+		}
+		return lowerCaseServerName;
+	}
+
+	/**
+	 * Returns the path with its <code>%XX</code> escapes decoded as UTF-8 and
+	 * runs of slashes collapsed into one, such as <code>/shop/red shoes</code>
+	 * for <code>//shop/red%20shoes</code>. Malformed escapes are kept as they
+	 * are. If there's nothing to decode or collapse, it's the path itself.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getNormalizedPath() {
+		if (normalizedPath == null) {
+			normalizedPath = normalize(path);
+		}
+		return normalizedPath;
+	}
+
+	private static String normalize(String path) {
+
+		if (path.indexOf('%') < 0 && path.indexOf("//") < 0) {
+			return path;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(path.length());
+		for (int i = 0; i < path.length(); i++) {
+
+			char c = path.charAt(i);
+			if (c == '%' && i + 2 < path.length() && hex(path.charAt(i + 1)) >= 0
+					&& hex(path.charAt(i + 2)) >= 0) {
+				bytes.write(hex(path.charAt(i + 1)) << 4 | hex(path.charAt(i + 2)));
+				i += 2;
+			} else if (c == '/' && i > 0 && path.charAt(i - 1) == '/') {
+				continue;
+			} else if (c < 0x80) {
+				bytes.write(c);
+			} else {
+				int length = Character.isHighSurrogate(c) && i + 1 < path.length() ? 2 : 1;
+				byte[] encoded = path.substring(i, i + length).getBytes(StandardCharsets.UTF_8);
+				bytes.write(encoded, 0, encoded.length);
+				i += length - 1;
+			}
+
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+
+	}
+
+	private static int hex(char c) {
+		return Character.digit(c, 16);
+	}
+
+	private int[] segments() {
+
+		if (segments == null) {
+
+			int count = 0;
+			for (int i = 0; i < path.length(); i++) {
+				if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+					count++;
+				}
+			}
+
+			int[] offsets = count > 0 ? new int[count * 2] : NO_SEGMENTS;
+			int segment = 0;
+			for (int i = 0; i < path.length(); i++) {
+				if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+					offsets[segment * 2] = i;
+				}
+				if (path.charAt(i) != '/' && (i == path.length() - 1 || path.charAt(i + 1) == '/')) {
+					offsets[segment * 2 + 1] = i + 1;
+					segment++;
+				}
+			}
+			segments = offsets;
+
+		}
+		return segments;
+
+	}
+
+	/**
+	 * Returns the number of non-empty path segments.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getSegmentCount() {
+		return segments().length / 2;
+	}
+
+	/**
+	 * Returns the offset in {@link #getPath()} where a segment starts.
+	 *
+	 * @param index
+	 *            the segment index, starting at 0.
+	 * @return an <code>int</code>.
+	 * @throws IndexOutOfBoundsException
+	 *             if there's no such segment.
+	 */
+	public int getSegmentStart(int index) {
+		return segments()[index * 2];
+	}
+
+	/**
+	 * Returns the offset in {@link #getPath()} where a segment ends,
+	 * exclusive.
+	 *
+	 * @param index
+	 *            the segment index, starting at 0.
+	 * @return an <code>int</code>.
+	 * @throws IndexOutOfBoundsException
+	 *             if there's no such segment.
+	 */
+	public int getSegmentEnd(int index) {
+		return segments()[index * 2 + 1];
+	}
+
+	/**
+	 * Returns a segment as a new string. Prefer the comparison methods when
+	 * possible, as they don't create one.
+	 *
+	 * @param index
+	 *            the segment index, starting at 0.
+	 * @return a {@link String}.
+	 */
+	public String getSegment(int index) {
+		return path.substring(getSegmentStart(index), getSegmentEnd(index));
+	}
+
+	/**
+	 * Tells whether a segment exists and is equal to a value.
+	 *
+	 * @param index
+	 *            the segment index, starting at 0.
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean segmentEquals(int index, String value) {
+		return segmentMatches(index, value, false);
+	}
+
+	/**
+	 * Tells whether a segment exists and is equal to a value, ignoring case.
+	 *
+	 * @param index
+	 *            the segment index, starting at 0.
+	 * @param value
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean segmentEqualsIgnoreCase(int index, String value) {
+		return segmentMatches(index, value, true);
+	}
+
+	private boolean segmentMatches(int index, String value, boolean ignoreCase) {
+		int[] segments = segments();
+		if (index < 0 || index * 2 >= segments.length) {
+			return false;
+		}
+		int start = segments[index * 2];
+		int length = segments[index * 2 + 1] - start;
+		return length == value.length() && path.regionMatches(ignoreCase, start, value, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RewriteContext[%s%s]", serverName != null ? serverName : "", path);
+	}
+
+}
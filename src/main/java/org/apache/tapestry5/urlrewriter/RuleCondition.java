@@ -0,0 +1,207 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import org.apache.tapestry5.http.services.Request;
+
+/**
+ * Immutable description of the requests a {@link DeclarativeURLRewriterRule}
+ * applies to. A condition matches on at most one of an exact path or a path
+ * prefix, plus optionally a server name and an HTTP method. The server name
+ * may be a wildcard such as <code>*.shop.example.com</code>, which matches
+ * every server name ending with <code>.shop.example.com</code>. Since these are
+ * known before any request arrives, the {@link org.apache.tapestry5.services.URLRewriter}
+ * indexes them at startup and only invokes the rules whose conditions can
+ * possibly match.
+ */
+public final class RuleCondition {
+
+	private static final RuleCondition ANY = new RuleCondition(null, null, null, null);
+
+	final private String path;
+
+	final private String pathPrefix;
+
+	final private String host;
+
+	final private String method;
+
+	private RuleCondition(String path, String pathPrefix, String host, String method) {
+		this.path = path;
+		this.pathPrefix = pathPrefix;
+		this.host = host;
+		this.method = method;
+	}
+
+	/**
+	 * Returns a condition that matches every request.
+	 *
+	 * @return a {@link RuleCondition}.
+	 */
+	public static RuleCondition any() {
+		return ANY;
+	}
+
+	/**
+	 * Returns a condition that matches requests whose path is exactly the given one.
+	 *
+	 * @param path
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RuleCondition}.
+	 */
+	public static RuleCondition path(String path) {
+		assert path != null;
+		return new RuleCondition(path, null, null, null);
+	}
+
+	/**
+	 * Returns a condition that matches requests whose path starts with the
+	 * given prefix.
+	 *
+	 * @param prefix
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RuleCondition}.
+	 */
+	public static RuleCondition pathPrefix(String prefix) {
+		assert prefix != null;
+		return new RuleCondition(null, prefix, null, null);
+	}
+
+	/**
+	 * Returns a copy of this condition that also requires the given server
+	 * name, as returned by {@link Request#getServerName()}, or any server
+	 * name under a domain if it's a wildcard like
+	 * <code>*.shop.example.com</code>.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RuleCondition}.
+	 * @throws IllegalArgumentException
+	 *             if <code>*</code> is used anywhere but as the whole first
+	 *             label.
+	 */
+	public RuleCondition host(String host) {
+		assert host != null;
+		if (host.lastIndexOf('*') > 0 || (host.startsWith("*") && !isWildcard(host))) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid host '%s': only a leading '*.' wildcard is supported", host));
+		}
+		return new RuleCondition(path, pathPrefix, host, method);
+	}
+
+	/**
+	 * Tells whether a host is a wildcard like <code>*.shop.example.com</code>.
+	 *
+	 * @param host
+	 *            a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean isWildcard(String host) {
+		return host.startsWith("*.") && host.length() > 2;
+	}
+
+	/**
+	 * Returns a copy of this condition that also requires the given HTTP
+	 * method. Methods are compared ignoring case.
+	 *
+	 * @param method
+	 *            a {@link String}. It cannot be null.
+	 * @return a {@link RuleCondition}.
+	 */
+	public RuleCondition method(String method) {
+		assert method != null;
+		return new RuleCondition(path, pathPrefix, host, method);
+	}
+
+	/**
+	 * Tells whether the given request satisfies this condition.
+	 *
+	 * @param request
+	 *            a {@link Request}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matches(Request request) {
+
+		if (path != null && !path.equals(request.getPath())) {
+			return false;
+		}
+		if (pathPrefix != null && !request.getPath().startsWith(pathPrefix)) {
+			return false;
+		}
+		if (host != null && !matchesHost(request.getServerName())) {
+			return false;
+		}
+		if (method != null && !method.equalsIgnoreCase(request.getMethod())) {
+			return false;
+		}
+		return true;
+
+	}
+
+	private boolean matchesHost(String serverName) {
+		if (serverName == null) {
+			return false;
+		}
+		if (!isWildcard(host)) {
+			return host.equals(serverName);
+		}
+		// "*.example.com" needs a label before ".example.com".
+		return serverName.length() > host.length() - 1
+				&& serverName.regionMatches(serverName.length() - host.length() + 1, host, 1,
+						host.length() - 1);
+	}
+
+	/**
+	 * Returns the exact path required by this condition.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the path prefix required by this condition.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getPathPrefix() {
+		return pathPrefix;
+	}
+
+	/**
+	 * Returns the server name required by this condition.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns the HTTP method required by this condition.
+	 *
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RuleCondition[path=%s, pathPrefix=%s, host=%s, method=%s]",
+				path, pathPrefix, host, method);
+	}
+
+}
@@ -0,0 +1,123 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation count, match count and latency histogram of a single
+ * {@link URLRewriterRule}. A rule is invoked when the rule indexes select it
+ * for a request, so rules skipped by the indexes don't count, and it matches
+ * when it returns a different request.
+ */
+public final class RuleStatistics {
+
+	final private int position;
+
+	final private String name;
+
+	final private LongAdder invocations;
+
+	final private LongAdder matches;
+
+	final private LatencyHistogram latency;
+
+	/**
+	 * Constructor that receives the position of the rule and its name.
+	 *
+	 * @param position
+	 *            the position of the rule in the ordered configuration.
+	 * @param name
+	 *            a {@link String} describing the rule. It cannot be null.
+	 */
+	public RuleStatistics(int position, String name) {
+		this(position, name, new LongAdder(), new LongAdder(), new LatencyHistogram());
+	}
+
+	private RuleStatistics(int position, String name, LongAdder invocations, LongAdder matches,
+			LatencyHistogram latency) {
+		assert name != null;
+		this.position = position;
+		this.name = name;
+		this.invocations = invocations;
+		this.matches = matches;
+		this.latency = latency;
+	}
+
+	/**
+	 * Returns the statistics of the same rule at another position, sharing
+	 * the counters and the histogram with these ones, for when the rules are
+	 * reordered.
+	 *
+	 * @param position
+	 *            the new position of the rule.
+	 * @return a {@link RuleStatistics}.
+	 */
+	public RuleStatistics moveTo(int position) {
+		return new RuleStatistics(position, name, invocations, matches, latency);
+	}
+
+	/**
+	 * Records an invocation of the rule.
+	 *
+	 * @param nanos
+	 *            how long the rule took, in nanoseconds.
+	 * @param matched
+	 *            whether the rule rewrote the request.
+	 */
+	public void record(long nanos, boolean matched) {
+		invocations.increment();
+		if (matched) {
+			matches.increment();
+		}
+		latency.record(nanos);
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Clears the counters and the histogram.
+	 */
+	public void reset() {
+		invocations.reset();
+		matches.reset();
+		latency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("#%d %s: invocations=%d, matches=%d, mean=%dns, p99=%dns, max=%dns",
+				position, name, getInvocations(), getMatches(), latency.getMean(),
+				latency.getPercentile(99), latency.getMaximum());
+	}
+
+}
@@ -19,6 +19,10 @@ import org.apache.tapestry5.services.DelegatingRequest;
 /**
  * Class that wraps a {@link Request}. It delegates all methods except ones
  * related to URL rewriting.
+ * <p/>
+ * Wrapping another <code>SimpleRequestWrapper</code> doesn't nest them: the
+ * new wrapper delegates directly to the request the other one wraps, so a
+ * chain of rewrites still adds a single level of delegation.
  */
 public class SimpleRequestWrapper extends DelegatingRequest {
 
@@ -38,8 +42,7 @@ public class SimpleRequestWrapper extends DelegatingRequest {
 	 */
 	public SimpleRequestWrapper(Request request, String serverName, String path) {
 
-		super(request);
-		assert request != null;
+		super(unwrap(request));
 		if (serverName == null) {
 			this.serverName = request.getServerName();
 		} else {
@@ -49,6 +52,15 @@ public class SimpleRequestWrapper extends DelegatingRequest {
 
 	}
 
+	private static Request unwrap(Request request) {
+		assert request != null;
+		// subclasses may override other methods, so only plain wrappers are skipped.
+		if (request.getClass() == SimpleRequestWrapper.class) {
+			return ((SimpleRequestWrapper) request).getRequest();
+		}
+		return request;
+	}
+
 	/**
 	 * Constructor that receives a request and a path. The server name used is
 	 * got from the request.
@@ -0,0 +1,58 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.List;
+
+/**
+ * Source of the rules of a single host, for applications serving so many
+ * tenant domains that keeping all their rules in memory would be wasteful.
+ * The {@link org.apache.tapestry5.services.URLRewriter} loads a host's rules
+ * the first time it gets a request for it, keeps them in a cache bounded by
+ * {@link URLRewriterSymbols#TENANT_CACHE_WEIGHT} and applies them before the
+ * contributed rules, which are skipped when a terminal tenant rule rewrites
+ * the request. Implementations must be thread-safe, but the rewriter
+ * never loads the same host from two threads at once.
+ */
+public interface TenantRuleProvider {
+
+	/**
+	 * Provider without any tenant rules, used unless the service is
+	 * overridden.
+	 */
+	TenantRuleProvider NONE = new TenantRuleProvider() {
+
+		public List<URLRewriterRule> getRules(String host) {
+			return null;
+		}
+
+	};
+
+	/**
+	 * Loads the rules of a host.
+	 *
+	 * @param host
+	 *            the server name of the request. It cannot be null.
+	 * @return a <code>List</code> of {@link URLRewriterRule}s, in the order
+	 *         they must be applied, or <code>null</code> if the host has no
+	 *         rules of its own.
+	 * @throws Exception
+	 *             if the rules could not be loaded, in which case the host
+	 *             gets no tenant rules, and this method isn't called for it
+	 *             again, until {@link URLRewriterSymbols#TENANT_RETRY_DELAY}
+	 *             has passed.
+	 */
+	List<URLRewriterRule> getRules(String host) throws Exception;
+
+}
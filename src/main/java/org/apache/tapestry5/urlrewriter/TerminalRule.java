@@ -0,0 +1,33 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * {@link URLRewriterRule} that can end the evaluation of the rules, like the
+ * <code>[L]</code> flag of Apache's <code>mod_rewrite</code>: once a
+ * terminal rule rewrites a request, the later rules of the same set are
+ * skipped and the rewritten request is used right away. Every
+ * {@link DeclarativeURLRewriterRule} is terminal unless it says otherwise.
+ */
+public interface TerminalRule extends URLRewriterRule {
+
+	/**
+	 * Tells whether the later rules are skipped after this one rewrites a
+	 * request.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isTerminal();
+
+}
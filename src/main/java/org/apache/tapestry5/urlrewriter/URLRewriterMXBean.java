@@ -0,0 +1,44 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link org.apache.tapestry5.services.URLRewriterMetrics}
+ * service.
+ */
+public interface URLRewriterMXBean {
+
+	/**
+	 * Returns the current value of every counter and gauge.
+	 *
+	 * @return a {@link Map}.
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * Returns one line per rule with its invocation and match counts and its
+	 * mean, 99th percentile and maximum latencies.
+	 *
+	 * @return a {@link String} array.
+	 */
+	String[] getRuleStatistics();
+
+	/**
+	 * Clears the statistics of every rule.
+	 */
+	void resetRuleStatistics();
+
+}
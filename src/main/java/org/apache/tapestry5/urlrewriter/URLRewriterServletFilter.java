@@ -0,0 +1,185 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.tapestry5.TapestryFilter;
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.internal.services.URLRewriterMetricsImpl;
+import org.apache.tapestry5.internal.urlrewriter.RewrittenServletRequest;
+import org.apache.tapestry5.internal.urlrewriter.ServletRequestAdapter;
+import org.apache.tapestry5.ioc.Registry;
+import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.services.URLRewriterBypass;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet filter that applies the URL rewriter rules before the
+ * {@link TapestryFilter}, so rewritten and redirected requests don't pay for
+ * Tapestry's request pipeline twice and {@link RewriteAction}s are answered
+ * without reaching Tapestry at all. It must be mapped before the Tapestry
+ * filter in <code>web.xml</code>:
+ * 
+ * <pre>
+ * &lt;filter&gt;
+ *     &lt;filter-name&gt;rewriter&lt;/filter-name&gt;
+ *     &lt;filter-class&gt;org.apache.tapestry5.urlrewriter.URLRewriterServletFilter&lt;/filter-class&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *     &lt;filter-name&gt;rewriter&lt;/filter-name&gt;
+ *     &lt;url-pattern&gt;/*&lt;/url-pattern&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ * 
+ * By default it uses the {@link URLRewriter} service of the Tapestry
+ * registry, which is looked up on each request until the Tapestry filter has
+ * started. If the <code>rules-file</code> init parameter is set, it uses the
+ * rules of that mapping file instead (see {@link MappingFileRuleSource}),
+ * checked for changes every <code>rules-file-check-interval</code>
+ * milliseconds, and doesn't need Tapestry at all.
+ * <p/>
+ * Rewritten requests are passed down the chain wrapped in a request with the
+ * new server name and path, and the parameters, headers and method of the
+ * request returned by the rules. When the rules are the ones of the registry,
+ * requests skipped by its
+ * {@link org.apache.tapestry5.services.URLRewriterBypass} are passed on
+ * untouched, and every request processed by this filter is marked with the
+ * {@link #PROCESSED_ATTRIBUTE} attribute, so the
+ * {@link org.apache.tapestry5.internal.services.URLRewriterRequestFilter}
+ * doesn't apply them a second time.
+ */
+public class URLRewriterServletFilter implements Filter {
+
+	/**
+	 * Name of the request attribute set on the requests this filter processed.
+	 */
+	public static final String PROCESSED_ATTRIBUTE = "org.apache.tapestry5.urlrewriter.processed";
+
+	/**
+	 * Name of the init parameter with the path of a mapping file.
+	 */
+	public static final String RULES_FILE_PARAMETER = "rules-file";
+
+	/**
+	 * Name of the init parameter with the interval, in milliseconds, between
+	 * checks of the mapping file. The default is 5000.
+	 */
+	public static final String RULES_FILE_CHECK_INTERVAL_PARAMETER = "rules-file-check-interval";
+
+	private ServletContext servletContext;
+
+	private MappingFileRuleSource ruleSource;
+
+	private volatile URLRewriter urlRewriter;
+
+	private volatile URLRewriterBypass bypass;
+
+	public void init(FilterConfig config) throws ServletException {
+
+		servletContext = config.getServletContext();
+
+		String rulesFile = config.getInitParameter(RULES_FILE_PARAMETER);
+		if (rulesFile == null || rulesFile.trim().length() == 0) {
+			return;
+		}
+
+		String checkInterval = config.getInitParameter(RULES_FILE_CHECK_INTERVAL_PARAMETER);
+		try {
+			ruleSource = new MappingFileRuleSource(new File(rulesFile.trim()),
+					checkInterval != null ? Long.parseLong(checkInterval.trim()) : 5000);
+		} catch (NumberFormatException e) {
+			throw new ServletException(String.format("Invalid %s: %s",
+					RULES_FILE_CHECK_INTERVAL_PARAMETER, checkInterval), e);
+		}
+		urlRewriter = new URLRewriterImpl(Collections.<URLRewriterRule> emptyList(), ruleSource,
+				new URLRewriterMetricsImpl(), 0, false,
+				LoggerFactory.getLogger(URLRewriterServletFilter.class));
+
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		URLRewriter urlRewriter = getURLRewriter();
+		if (urlRewriter == null || !(request instanceof HttpServletRequest)
+				|| request.getAttribute(PROCESSED_ATTRIBUTE) != null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		Request adapter = new ServletRequestAdapter(httpRequest);
+		if (ruleSource == null) {
+			httpRequest.setAttribute(PROCESSED_ATTRIBUTE, Boolean.TRUE);
+			URLRewriterBypass bypass = this.bypass;
+			if (bypass != null && bypass.isBypassed(adapter.getPath())) {
+				chain.doFilter(request, response);
+				return;
+			}
+		}
+		Request result = urlRewriter.processRequest(adapter);
+
+		if (result instanceof ActionRequest) {
+			HttpServletResponse httpResponse = (HttpServletResponse) response;
+			((ActionRequest) result).getAction().write(httpRequest.getContextPath(),
+					httpResponse::setStatus, httpResponse::setHeader,
+					httpResponse::setContentLength);
+			return;
+		}
+
+		if (result != adapter) {
+			request = new RewrittenServletRequest(httpRequest, result);
+		}
+		chain.doFilter(request, response);
+
+	}
+
+	private URLRewriter getURLRewriter() {
+
+		URLRewriter urlRewriter = this.urlRewriter;
+		if (urlRewriter == null) {
+			// the Tapestry filter may not have started yet.
+			Registry registry = (Registry) servletContext
+					.getAttribute(TapestryFilter.REGISTRY_CONTEXT_NAME);
+			if (registry != null) {
+				bypass = registry.getService(URLRewriterBypass.class);
+				urlRewriter = registry.getService(URLRewriter.class);
+				this.urlRewriter = urlRewriter;
+			}
+		}
+		return urlRewriter;
+
+	}
+
+	public void destroy() {
+		if (ruleSource != null) {
+			ruleSource.stop();
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+/**
+ * Names of the configuration symbols used by the URL rewriter. Their defaults
+ * are contributed by {@link org.apache.tapestry5.services.UrlRewriterModule}.
+ */
+public final class URLRewriterSymbols {
+
+	/**
+	 * Maximum number of rewrite results kept in the rewrite cache. The cache
+	 * is only used when every rule is a {@link DeterministicRule}. The default
+	 * is 0, which disables the cache.
+	 */
+	public static final String CACHE_SIZE = "tapestry-url-rewriter.cache-size";
+
+	/**
+	 * Whether invocation counts, match counts and latency histograms are kept
+	 * for each rule (see
+	 * {@link org.apache.tapestry5.services.URLRewriterMetrics#getRuleStatistics()}).
+	 * When disabled, the default, rules are invoked without any timing.
+	 */
+	public static final String RULE_STATISTICS = "tapestry-url-rewriter.rule-statistics";
+
+	/**
+	 * Name under which the {@link URLRewriterMXBean} is registered in the
+	 * platform MBean server. If empty, it isn't registered. The default is
+	 * <code>org.apache.tapestry5.urlrewriter:type=URLRewriter</code>.
+	 */
+	public static final String JMX_OBJECT_NAME = "tapestry-url-rewriter.jmx-object-name";
+
+	/**
+	 * Path of a mapping file read by a {@link MappingFileRuleSource}, whose
+	 * rules are added after the contributed ones and reloaded when it changes.
+	 * The default is empty, meaning no file.
+	 */
+	public static final String RULES_FILE = "tapestry-url-rewriter.rules-file";
+
+	/**
+	 * How often, in milliseconds, the {@link #RULES_FILE} is checked for
+	 * changes. The default is 5000. If not positive, it's only read at startup.
+	 */
+	public static final String RULES_FILE_CHECK_INTERVAL = "tapestry-url-rewriter.rules-file-check-interval";
+
+	/**
+	 * Maximum number of rules loaded from the {@link TenantRuleProvider} kept
+	 * in memory. It's a count of rules, not of bytes: each host weighs its
+	 * number of rules plus one, so hosts without rules count too. The rules of
+	 * the least recently used hosts are discarded first. The default is 0,
+	 * which disables tenant rules.
+	 */
+	public static final String TENANT_CACHE_WEIGHT = "tapestry-url-rewriter.tenant-cache-weight";
+
+	/**
+	 * How long, in milliseconds, a host whose rules the
+	 * {@link TenantRuleProvider} failed to load gets no tenant rules before
+	 * they're loaded again. The default is 30000.
+	 */
+	public static final String TENANT_RETRY_DELAY = "tapestry-url-rewriter.tenant-retry-delay";
+
+	/**
+	 * Whether the links generated by Tapestry are rewritten to the public
+	 * URLs the declarative rules map to them, by inverting
+	 * {@link SimpleURLRewriterRule}s with an exact path and
+	 * {@link PatternRule}s. The default is <code>false</code>.
+	 */
+	public static final String REWRITE_LINKS = "tapestry-url-rewriter.rewrite-links";
+
+	/**
+	 * Maximum number of rewritten links, and links that aren't rewritten,
+	 * remembered when {@link #REWRITE_LINKS} is enabled. The default is 1000.
+	 * If not positive, the rules are inverted again for every link.
+	 */
+	public static final String LINK_CACHE_SIZE = "tapestry-url-rewriter.link-cache-size";
+
+	/**
+	 * Whether Tapestry's asset and JavaScript module requests, under the
+	 * prefixes given by Tapestry's <code>tapestry.asset-path-prefix</code>
+	 * and <code>tapestry.module-path-prefix</code> symbols
+	 * (<code>/assets/</code>, <code>/modules/</code> and
+	 * <code>/modules.gz/</code> by default), are passed on without running the
+	 * rules (see {@link org.apache.tapestry5.services.URLRewriterBypass}).
+	 * The default is <code>true</code>, so rules matching those paths no
+	 * longer apply unless it's set to <code>false</code>.
+	 */
+	public static final String BYPASS_ASSETS = "tapestry-url-rewriter.bypass-assets";
+
+	/**
+	 * Whether the {@link org.apache.tapestry5.services.URLRewriter} is built,
+	 * and its rules loaded and compiled, on a background thread instead of
+	 * while the request pipeline is built, so the application starts serving
+	 * right away. The default is <code>false</code>.
+	 */
+	public static final String DEFERRED_INITIALIZATION = "tapestry-url-rewriter.deferred-initialization";
+
+	/**
+	 * How long, in milliseconds, a request waits for the rules when
+	 * {@link #DEFERRED_INITIALIZATION} is enabled and they aren't ready yet.
+	 * Requests still waiting after that are passed on without rewriting. If
+	 * not positive, they are passed on right away. The default is 5000.
+	 */
+	public static final String INITIALIZATION_WAIT = "tapestry-url-rewriter.initialization-wait";
+
+	/**
+	 * How often, in milliseconds, the adjacent {@link ReorderableRule}s are
+	 * sorted so the ones matching more requests run first. The default is 0,
+	 * which never reorders them.
+	 */
+	public static final String REORDER_INTERVAL = "tapestry-url-rewriter.reorder-interval";
+
+	private URLRewriterSymbols() {
+	}
+
+}
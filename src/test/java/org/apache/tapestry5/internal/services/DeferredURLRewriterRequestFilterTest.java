@@ -0,0 +1,105 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.tapestry5.http.services.RequestFilter;
+import org.apache.tapestry5.http.services.RequestHandler;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.TestRequest;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link DeferredURLRewriterRequestFilter}.
+ */
+public class DeferredURLRewriterRequestFilterTest extends TestBase {
+
+	final private List<String> handled = new ArrayList<String>();
+
+	final private RequestHandler handler = (request, response) -> handled.add(request.getPath());
+
+	final private RequestFilter rewriter = (request, response, handler) -> handler.service(
+			new TestRequest("/rewritten" + request.getPath()), response);
+
+	@Test
+	public void requests_are_passed_on_until_the_rules_are_ready() throws IOException {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		CompletableFuture<RequestFilter> initialization = new CompletableFuture<RequestFilter>();
+		DeferredURLRewriterRequestFilter filter = new DeferredURLRewriterRequestFilter(
+				initialization, 0, metrics, LoggerFactory.getLogger(getClass()));
+
+		filter.service(new TestRequest("/a"), null, handler);
+		assertFalse(filter.isInitialized());
+
+		initialization.complete(rewriter);
+		filter.service(new TestRequest("/b"), null, handler);
+
+		assertEquals(Arrays.asList("/a", "/rewritten/b"), handled);
+		assertEquals(Long.valueOf(1), metrics.getValues().get("init.passed-through"));
+
+	}
+
+	@Test
+	public void requests_wait_for_the_rules() throws IOException {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		DeferredURLRewriterRequestFilter filter = DeferredURLRewriterRequestFilter.start(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return rewriter;
+		}, 10000, metrics, LoggerFactory.getLogger(getClass()));
+
+		filter.service(new TestRequest("/a"), null, handler);
+
+		assertTrue(filter.isInitialized());
+		assertEquals(Arrays.asList("/rewritten/a"), handled);
+		assertEquals(Long.valueOf(0), metrics.getValues().get("init.passed-through"));
+
+	}
+
+	@Test
+	public void requests_are_passed_on_without_rules_or_after_failures() throws IOException {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		DeferredURLRewriterRequestFilter filter = new DeferredURLRewriterRequestFilter(
+				CompletableFuture.<RequestFilter> completedFuture(null), 0, metrics, LoggerFactory
+						.getLogger(getClass()));
+		filter.service(new TestRequest("/a"), null, handler);
+
+		CompletableFuture<RequestFilter> failed = new CompletableFuture<RequestFilter>();
+		failed.completeExceptionally(new IllegalStateException("cycle"));
+		filter = new DeferredURLRewriterRequestFilter(failed, 1000, metrics, LoggerFactory
+				.getLogger(getClass()));
+		filter.service(new TestRequest("/b"), null, handler);
+
+		assertEquals(Arrays.asList("/a", "/b"), handled);
+		assertEquals(Long.valueOf(1), metrics.getValues().get("init.passed-through"));
+
+	}
+
+}
@@ -0,0 +1,62 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link URLRewriterBypassImpl}.
+ */
+public class URLRewriterBypassImplTest extends TestBase {
+
+	@Test
+	public void prefixes_and_suffixes_are_bypassed() {
+
+		URLRewriterMetrics metrics = new URLRewriterMetricsImpl();
+		URLRewriterBypassImpl bypass = new URLRewriterBypassImpl(Arrays.asList("/assets/",
+				"/modules.gz/", "*.css", "*.min.js"), metrics);
+
+		assertTrue(bypass.isBypassed("/assets/meta/core/t5-core.js"));
+		assertTrue(bypass.isBypassed("/modules.gz/t5/core/dom.js"));
+		assertTrue(bypass.isBypassed("/theme/site.css"));
+		assertTrue(bypass.isBypassed("/lib/jquery.min.js"));
+		assertFalse(bypass.isBypassed("/assets"));
+		assertFalse(bypass.isBypassed("/lib/jquery.js"));
+		assertFalse(bypass.isBypassed("/product/css"));
+		assertEquals(Long.valueOf(4), metrics.getValues().get("bypass.hits"));
+
+	}
+
+	@Test
+	public void nothing_is_bypassed_without_patterns() {
+		URLRewriterBypassImpl bypass = new URLRewriterBypassImpl(Collections.<String> emptyList(),
+				new URLRewriterMetricsImpl());
+		assertFalse(bypass.isBypassed("/assets/app.js"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void wildcards_inside_patterns_are_rejected() {
+		new URLRewriterBypassImpl(Arrays.asList("/assets/*.js"), new URLRewriterMetricsImpl());
+	}
+
+}
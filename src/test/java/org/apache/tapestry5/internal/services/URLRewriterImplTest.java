@@ -0,0 +1,665 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.urlrewriter.CompiledRuleSet;
+import org.apache.tapestry5.services.URLRewriterMetrics;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.ActionRequest;
+import org.apache.tapestry5.urlrewriter.LatencyHistogram;
+import org.apache.tapestry5.urlrewriter.LinkTarget;
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.RedirectRule;
+import org.apache.tapestry5.urlrewriter.RegexRule;
+import org.apache.tapestry5.urlrewriter.ReloadableRuleSource;
+import org.apache.tapestry5.urlrewriter.ReorderableRule;
+import org.apache.tapestry5.urlrewriter.RewriteAction;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.RuleStatistics;
+import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
+import org.apache.tapestry5.urlrewriter.TestRequest;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link URLRewriterImpl}.
+ */
+public class URLRewriterImplTest extends TestBase {
+
+	@Test
+	public void declarative_rules_are_chained_in_order() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/struts"), "/jsf").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/jsf"), "/tapestry").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/tapestry"), "/success")));
+
+		assertEquals("/success", rewriter.processRequest(new TestRequest("/struts")).getPath());
+		assertEquals("/success", rewriter.processRequest(new TestRequest("/jsf")).getPath());
+
+	}
+
+	@Test
+	public void terminal_rules_end_the_evaluation() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/struts"), "/jsf"),
+				new PatternRule("/{page}", "/app/{page}"),
+				new RegexRule("^/app/(\\w+)$", "/done/$1").chained(),
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/done/"), "/end")));
+
+		assertEquals("/jsf", rewriter.processRequest(new TestRequest("/struts")).getPath());
+		assertEquals("/app/jsf", rewriter.processRequest(new TestRequest("/jsf")).getPath());
+		assertEquals("/end", rewriter.processRequest(new TestRequest("/app/jsf")).getPath());
+
+	}
+
+	@Test
+	public void rules_before_the_current_position_are_not_applied_again() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/b"), "/c"),
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b")));
+
+		assertEquals("/b", rewriter.processRequest(new TestRequest("/a")).getPath());
+
+	}
+
+	@Test
+	public void opaque_rules_keep_their_position() {
+
+		final List<String> seen = new ArrayList<String>();
+		URLRewriterRule opaque = new URLRewriterRule() {
+
+			public Request process(Request request) {
+				seen.add(request.getPath());
+				if (request.getPath().equals("/b")) {
+					request = new SimpleRequestWrapper(request, "/c");
+				}
+				return request;
+			}
+
+		};
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b").chained(),
+				opaque,
+				new SimpleURLRewriterRule(RuleCondition.path("/c"), "/d")));
+
+		assertEquals("/d", rewriter.processRequest(new TestRequest("/a")).getPath());
+		assertEquals(Arrays.asList("/b"), seen);
+
+	}
+
+	@Test
+	public void prefix_host_and_method_conditions() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/legacy/"), "/modern"),
+				new SimpleURLRewriterRule(RuleCondition.any().host("login.example.com"), "/login"),
+				new SimpleURLRewriterRule(RuleCondition.path("/form").method("post"), "/submit")));
+
+		assertEquals("/modern", rewriter.processRequest(new TestRequest("/legacy/page")).getPath());
+		assertEquals("/legacy", rewriter.processRequest(new TestRequest("/legacy")).getPath());
+		assertEquals("/login",
+				rewriter.processRequest(new TestRequest("login.example.com", "/")).getPath());
+		assertEquals("/form", rewriter.processRequest(new TestRequest("/form")).getPath());
+		assertEquals("/submit",
+				rewriter.processRequest(new TestRequest("/form").method("POST")).getPath());
+
+	}
+
+	@Test
+	public void chains_are_resolved_at_startup() {
+
+		final List<String> seen = new ArrayList<String>();
+		SimpleURLRewriterRule middle = new SimpleURLRewriterRule(RuleCondition.path("/jsf"),
+				"/tapestry") {
+
+			@Override
+			public Request process(Request request) {
+				seen.add(request.getPath());
+				return super.process(request);
+			}
+
+			@Override
+			public boolean isTerminal() {
+				return false;
+			}
+
+		};
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/struts"), "/jsf").chained(), middle,
+				new PatternRule("/{page}", "/app/{page}")));
+		seen.clear();
+
+		assertEquals("/app/tapestry", rewriter.processRequest(new TestRequest("/struts")).getPath());
+		assertEquals(0, seen.size());
+		assertEquals("/app/tapestry", rewriter.processRequest(new TestRequest("/jsf")).getPath());
+		assertEquals(1, seen.size());
+
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void cycles_fail_at_startup() {
+
+		new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/b"), "/c").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/c"), "/a").chained()));
+
+	}
+
+	@Test
+	public void unmatched_request_is_returned_unchanged() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b")));
+		Request request = new TestRequest("/other");
+
+		assertSame(request, rewriter.processRequest(request));
+
+	}
+
+	@Test
+	public void cached_results() {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/struts"), "/jsf").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/jsf"), "login.example.com", "/")),
+				metrics, 10, false, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		for (int i = 0; i < 3; i++) {
+			Request request = rewriter.processRequest(new TestRequest("/struts"));
+			assertEquals("/", request.getPath());
+			assertEquals("login.example.com", request.getServerName());
+			Request unchanged = new TestRequest("/other");
+			assertSame(unchanged, rewriter.processRequest(unchanged));
+		}
+
+		// "/other" can't match any rule, so it never reaches the cache.
+		assertEquals(Long.valueOf(1), metrics.getValues().get("cache.misses"));
+		assertEquals(Long.valueOf(2), metrics.getValues().get("cache.hits"));
+		assertEquals(Long.valueOf(1), metrics.getValues().get("cache.size"));
+
+	}
+
+	@Test
+	public void requests_no_rule_can_match_skip_the_cache() {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/struts"), "/jsf"),
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/legacy/"), "/modern"),
+				new PatternRule("/product/{id}", "/catalog/{id}")),
+				metrics, 10, false, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		for (String path : new String[] { "/", "/assets/app.js", "/index", "/legacy" }) {
+			Request request = new TestRequest(path);
+			assertSame(request, rewriter.processRequest(request));
+		}
+		assertEquals("/modern", rewriter.processRequest(new TestRequest("/legacy/a")).getPath());
+		assertEquals("/catalog/1", rewriter.processRequest(new TestRequest("/product/1")).getPath());
+
+		assertEquals(Long.valueOf(2), metrics.getValues().get("cache.misses"));
+
+	}
+
+	@Test
+	public void cache_disabled_with_opaque_rules() {
+
+		URLRewriterRule opaque = new URLRewriterRule() {
+
+			public Request process(Request request) {
+				return request;
+			}
+
+		};
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.asList(opaque), metrics, 10, false,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		rewriter.processRequest(new TestRequest("/"));
+
+		assertEquals(null, metrics.getValues().get("cache.misses"));
+
+	}
+
+	@Test
+	public void rule_statistics() {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b"),
+				new PatternRule("/b{x}", "/c{x}")), metrics, 0, true,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		rewriter.processRequest(new TestRequest("/a"));
+		rewriter.processRequest(new TestRequest("/bb"));
+		rewriter.processRequest(new TestRequest("/other"));
+
+		List<RuleStatistics> statistics = metrics.getRuleStatistics();
+		assertEquals(2, statistics.size());
+		assertEquals(1, statistics.get(0).getInvocations());
+		assertEquals(1, statistics.get(0).getMatches());
+		assertEquals(1, statistics.get(1).getInvocations());
+		assertEquals(1, statistics.get(1).getLatency().getCount());
+		assertTrue(statistics.get(1).getLatency().getPercentile(99) <= statistics.get(1)
+				.getLatency().getMaximum());
+
+	}
+
+	@Test
+	public void reset_latencies_can_still_be_recorded() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+
+		histogram.record(1000);
+		assertEquals(1, histogram.getCount());
+		assertTrue(histogram.getPercentile(50) >= 1000);
+
+	}
+
+	@Test
+	public void no_rule_statistics_by_default() {
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		new URLRewriterImpl(Arrays.<URLRewriterRule> asList(new SimpleURLRewriterRule(
+				RuleCondition.path("/a"), "/b")), metrics, 0, false,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+		assertTrue(metrics.getRuleStatistics().isEmpty());
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void rule_returning_null() {
+
+		URLRewriterRule rule = new URLRewriterRule() {
+
+			public Request process(Request request) {
+				return null;
+			}
+
+		};
+
+		new URLRewriterImpl(Arrays.asList(rule)).processRequest(new TestRequest("/"));
+
+	}
+
+	@Test
+	public void reloaded_rules_replace_the_snapshot() {
+
+		final List<URLRewriterRule> reloaded = new ArrayList<URLRewriterRule>();
+		final List<Runnable> listeners = new ArrayList<Runnable>();
+		ReloadableRuleSource source = new ReloadableRuleSource() {
+
+			public List<URLRewriterRule> load() {
+				if (reloaded.isEmpty()) {
+					throw new IllegalArgumentException("broken");
+				}
+				return reloaded;
+			}
+
+			public boolean addChangeListener(Runnable listener) {
+				listeners.add(listener);
+				return true;
+			}
+
+		};
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b").chained()), source, metrics, 10,
+				false, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		assertTrue(rewriter.hasRequestRules());
+		assertEquals(1, listeners.size());
+		assertEquals(1, rewriter.getVersion());
+		assertEquals("/b", rewriter.processRequest(new TestRequest("/a")).getPath());
+
+		reloaded.add(new SimpleURLRewriterRule(RuleCondition.path("/b"), "/c").chained());
+		listeners.get(0).run();
+		assertEquals(2, rewriter.getVersion());
+		assertEquals("/c", rewriter.processRequest(new TestRequest("/a")).getPath());
+
+		reloaded.add(new SimpleURLRewriterRule(RuleCondition.path("/c"), "/a"));
+		assertFalse(rewriter.reload());
+		assertEquals(2, rewriter.getVersion());
+		assertEquals("/c", rewriter.processRequest(new TestRequest("/a")).getPath());
+
+		assertEquals(Long.valueOf(1), metrics.getValues().get("rules.reloads"));
+		assertEquals(Long.valueOf(1), metrics.getValues().get("rules.reload-failures"));
+		assertEquals(Long.valueOf(2), metrics.getValues().get("rules.version"));
+
+	}
+
+	@Test
+	public void rules_are_partitioned_by_host() {
+
+		List<URLRewriterRule> rules = new ArrayList<URLRewriterRule>();
+		rules.add(new SimpleURLRewriterRule(RuleCondition.path("/"), "/home").chained());
+		for (int i = 0; i < 1000; i++) {
+			rules.add(new SimpleURLRewriterRule(RuleCondition.path("/home").host(
+					"tenant" + i + ".example.com"), "/tenant/" + i).chained());
+		}
+		rules.add(new PatternRule("/tenant/{id}", "/site/{id}").host("*.example.com").chained());
+		rules.add(new SimpleURLRewriterRule(RuleCondition.any().host("*.shop.example.com"),
+				"/shop"));
+		rules.add(new SimpleURLRewriterRule(RuleCondition.pathPrefix("/site/"), "/sites"));
+		URLRewriterImpl rewriter = new URLRewriterImpl(rules);
+
+		// "/" -> "/home" -> "/tenant/7" -> "/site/7" -> "/sites"
+		assertEquals("/sites", rewriter.processRequest(
+				new TestRequest("tenant7.example.com", "/")).getPath());
+		assertEquals("/home", rewriter.processRequest(new TestRequest("example.com", "/"))
+				.getPath());
+		assertEquals("/home", rewriter.processRequest(new TestRequest("localhost", "/"))
+				.getPath());
+		assertEquals("/shop", rewriter.processRequest(
+				new TestRequest("a.b.shop.example.com", "/site/1")).getPath());
+		assertEquals("/shop", rewriter.processRequest(
+				new TestRequest("a.shop.example.com", "/other")).getPath());
+		Request request = new TestRequest("shop.example.com.evil.org", "/other");
+		assertSame(request, rewriter.processRequest(request));
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void wildcards_only_as_first_label() {
+		RuleCondition.any().host("shop.*.example.com");
+	}
+
+	@Test
+	public void tenant_rules_are_applied_first() {
+
+		TenantRuleProvider provider = new TenantRuleProvider() {
+
+			public List<URLRewriterRule> getRules(String host) {
+				return host.equals("shop.example.com") ? Arrays.<URLRewriterRule> asList(
+						new SimpleURLRewriterRule(RuleCondition.path("/"), "/shop").chained()) : null;
+			}
+
+		};
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/shop"), "/catalog")),
+				ReloadableRuleSource.NONE, provider, new URLRewriterMetricsImpl(), 0, false, 100, false,
+				0, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		assertEquals("/catalog", rewriter.processRequest(new TestRequest("shop.example.com", "/"))
+				.getPath());
+		assertEquals("/", rewriter.processRequest(new TestRequest("example.com", "/")).getPath());
+
+	}
+
+	@Test
+	public void terminal_tenant_rules_skip_the_contributed_rules() {
+
+		TenantRuleProvider provider = new TenantRuleProvider() {
+
+			public List<URLRewriterRule> getRules(String host) {
+				return Arrays.<URLRewriterRule> asList(
+						new SimpleURLRewriterRule(RuleCondition.path("/"), "/shop"),
+						new SimpleURLRewriterRule(RuleCondition.path("/cart"), "/basket").chained(),
+						new SimpleURLRewriterRule(RuleCondition.path("/basket"), "/checkout"));
+			}
+
+		};
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/shop"), "/catalog"),
+				new SimpleURLRewriterRule(RuleCondition.path("/checkout"), "/order")),
+				ReloadableRuleSource.NONE, provider, new URLRewriterMetricsImpl(), 0, false, 100, false,
+				0, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		assertEquals("/shop", rewriter.processRequest(new TestRequest("shop.example.com", "/"))
+				.getPath());
+		assertEquals("/checkout", rewriter.processRequest(
+				new TestRequest("shop.example.com", "/cart")).getPath());
+
+	}
+
+	private static URLRewriterImpl linkRewriter(URLRewriterMetrics metrics, URLRewriterRule... rules) {
+		return new URLRewriterImpl(Arrays.asList(rules), ReloadableRuleSource.NONE,
+				TenantRuleProvider.NONE, metrics, 0, false, 0, true, 10,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+	}
+
+	@Test
+	public void links_are_rewritten_by_inverting_the_rules() {
+
+		URLRewriterMetrics metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = linkRewriter(metrics,
+				new SimpleURLRewriterRule(RuleCondition.path("/about"), "/info/about"),
+				new PatternRule("/product/{id}/{slug}", "/catalog/show/{id}/{slug}"),
+				new PatternRule("/item/{id}/{slug}", "/catalog/item/{id}"),
+				new SimpleURLRewriterRule(RuleCondition.path("/shop").host("shop.example.com"),
+						"/catalog"),
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/old"), "/"));
+
+		assertEquals("/about", rewriter.rewriteLink("example.com", "/info/about").getPath());
+		assertEquals("/product/7/red-shoes", rewriter.rewriteLink("example.com",
+				"/catalog/show/7/red-shoes").getPath());
+		// "{slug}" isn't in the target, so "/item/{id}/{slug}" can't be inverted.
+		assertNull(rewriter.rewriteLink("example.com", "/catalog/item/7"));
+		// prefix rules aren't inverted either.
+		assertNull(rewriter.rewriteLink("example.com", "/"));
+
+		LinkTarget target = rewriter.rewriteLink("example.com", "/catalog");
+		assertEquals("shop.example.com", target.getServerName());
+		assertEquals("/shop", target.getPath());
+		assertNull(rewriter.rewriteLink("shop.example.com", "/catalog").getServerName());
+
+		// memoized, including the links that aren't rewritten.
+		rewriter.rewriteLink("example.com", "/info/about");
+		rewriter.rewriteLink("example.com", "/catalog/item/7");
+		assertEquals(Long.valueOf(2), metrics.getValues().get("links.hits"));
+		assertEquals(Long.valueOf(6), metrics.getValues().get("links.misses"));
+
+	}
+
+	@Test
+	public void link_rewrites_follow_chains_and_are_checked_forward() {
+
+		URLRewriterImpl rewriter = linkRewriter(new URLRewriterMetricsImpl(),
+				new SimpleURLRewriterRule(RuleCondition.path("/"), "/home").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/home"), "/index"),
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/a"), "/elsewhere"),
+				new SimpleURLRewriterRule(RuleCondition.path("/a"), "/b"),
+				new SimpleURLRewriterRule(RuleCondition.path("/c"), "/d"));
+
+		// "/" -> "/home" -> "/index".
+		assertEquals("/", rewriter.rewriteLink(null, "/index").getPath());
+		// requesting "/" wouldn't give "/home".
+		assertNull(rewriter.rewriteLink(null, "/home"));
+		assertEquals("/c", rewriter.rewriteLink(null, "/d").getPath());
+		// "/a" is rewritten to "/elsewhere" by the prefix rule first.
+		assertNull(rewriter.rewriteLink(null, "/b"));
+
+	}
+
+	@Test
+	public void checking_links_leaves_the_statistics_alone() {
+
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/about"), "/info/about")),
+				ReloadableRuleSource.NONE, TenantRuleProvider.NONE, metrics, 0, true, 0, true, 0,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		assertEquals("/about", rewriter.rewriteLink("example.com", "/info/about").getPath());
+		assertEquals(0, metrics.getRuleStatistics().get(0).getInvocations());
+
+		rewriter.processRequest(new TestRequest("/about"));
+		assertEquals(1, metrics.getRuleStatistics().get(0).getInvocations());
+
+	}
+
+	@Test
+	public void redirect_rules_end_the_request() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/legacy"), "/old").chained(),
+				new RedirectRule(RuleCondition.path("/old"), RewriteAction.movedPermanently("/new")),
+				new RedirectRule(RuleCondition.path("/removed"), RewriteAction.gone()),
+				new SimpleURLRewriterRule(RuleCondition.pathPrefix("/"), "/never")),
+				new URLRewriterMetricsImpl(), 10, false, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		for (int i = 0; i < 2; i++) {
+
+			Request request = rewriter.processRequest(new TestRequest("/legacy"));
+			assertTrue(request instanceof ActionRequest);
+			RewriteAction action = ((ActionRequest) request).getAction();
+			assertEquals(301, action.getStatus());
+			assertEquals("/shop/new", action.getLocation("/shop"));
+			assertEquals("/new", action.getLocation(""));
+
+			request = rewriter.processRequest(new TestRequest("/removed"));
+			assertEquals(410, ((ActionRequest) request).getAction().getStatus());
+			assertNull(((ActionRequest) request).getAction().getLocation(""));
+
+		}
+
+		assertEquals("/never", rewriter.processRequest(new TestRequest("/other")).getPath());
+		assertEquals("http://example.com/",
+				RewriteAction.found("http://example.com/").getLocation("/shop"));
+
+	}
+
+	@Test
+	public void parallel_compilation_gives_the_same_results() {
+
+		List<URLRewriterRule> rules = new ArrayList<URLRewriterRule>();
+		for (int i = 0; i < 500; i++) {
+			rules.add(new SimpleURLRewriterRule(RuleCondition.path("/a" + i), "/b" + i).chained());
+			rules.add(new SimpleURLRewriterRule(RuleCondition.path("/b" + i), "/c" + i));
+			rules.add(new SimpleURLRewriterRule(RuleCondition.path("/a" + i).host(
+					"h" + (i % 7) + ".example.com"), "/host" + i));
+			rules.add(new PatternRule("/p" + i + "/{id}", "/product/{id}"));
+			rules.add(new RegexRule("^/r" + i + "/(\\d+)$", "/b" + i));
+			rules.add(new SimpleURLRewriterRule(RuleCondition.pathPrefix("/s" + i + "/"), "/a" + i));
+		}
+
+		CompiledRuleSet sequential = new CompiledRuleSet(rules, false, null);
+		CompiledRuleSet parallel = new CompiledRuleSet(rules, false, ForkJoinPool.commonPool());
+
+		String[] paths = { "/a7", "/b499", "/p3/42", "/r12/7", "/r12/x", "/s4/x", "/a123", "/z" };
+		for (String path : paths) {
+			for (String host : new String[] { "localhost", "h3.example.com" }) {
+				Request request = new TestRequest(host, path);
+				assertEquals(sequential.process(request).getPath(), parallel.process(request)
+						.getPath());
+			}
+		}
+		assertEquals("/c7", parallel.process(new TestRequest("/a7")).getPath());
+		assertEquals("/b12", parallel.process(new TestRequest("/r12/7")).getPath());
+		assertEquals(Arrays.asList("classify", "indexes", "chains"), new ArrayList<String>(
+				parallel.getCompileNanos().keySet()));
+
+	}
+
+	@Test
+	public void reorderable_rules_are_sorted_by_matches() {
+
+		final List<String> invoked = new ArrayList<String>();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new CountedRule("/a", invoked), new CountedRule("/b", invoked),
+				new URLRewriterRule() {
+
+					public Request process(Request request) {
+						invoked.add("fixed");
+						return request;
+					}
+
+				}, new CountedRule("/c", invoked), new CountedRule("/d", invoked)));
+
+		for (String path : new String[] { "/b", "/b", "/a", "/d" }) {
+			assertEquals("/rewritten" + path, rewriter.processRequest(new TestRequest(path))
+					.getPath());
+		}
+		assertTrue(rewriter.reorder());
+
+		invoked.clear();
+		rewriter.processRequest(new TestRequest("/other"));
+		assertEquals(Arrays.asList("/b", "/a", "fixed", "/d", "/c"), invoked);
+		assertEquals("/rewritten/a", rewriter.processRequest(new TestRequest("/a")).getPath());
+
+		// half of the 2 earlier matches of /b still count, so /a only ties.
+		assertFalse(rewriter.reorder());
+
+	}
+
+	@Test
+	public void reordering_keeps_the_rule_statistics() {
+
+		List<String> invoked = new ArrayList<String>();
+		CountedRule a = new CountedRule("/a", invoked);
+		CountedRule b = new CountedRule("/b", invoked);
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(a, b),
+				metrics, 0, true, LoggerFactory.getLogger(URLRewriterImpl.class));
+
+		rewriter.processRequest(new TestRequest("/b"));
+		rewriter.processRequest(new TestRequest("/b"));
+		assertTrue(rewriter.reorder());
+
+		List<RuleStatistics> statistics = metrics.getRuleStatistics();
+		assertEquals(0, statistics.get(0).getPosition());
+		assertEquals(b.toString(), statistics.get(0).getName());
+		assertEquals(2, statistics.get(0).getMatches());
+		assertEquals(2, statistics.get(0).getLatency().getCount());
+		assertEquals(2, statistics.get(1).getInvocations());
+
+		rewriter.processRequest(new TestRequest("/b"));
+		assertEquals(3, statistics.get(0).getMatches());
+
+	}
+
+	final private static class CountedRule implements ReorderableRule {
+
+		final private String path;
+
+		final private List<String> invoked;
+
+		CountedRule(String path, List<String> invoked) {
+			this.path = path;
+			this.invoked = invoked;
+		}
+
+		public Request process(Request request) {
+			invoked.add(path);
+			return request.getPath().equals(path) ? new SimpleRequestWrapper(request,
+					"/rewritten" + path) : request;
+		}
+
+	}
+
+}
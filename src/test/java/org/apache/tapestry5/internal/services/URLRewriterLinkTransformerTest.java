@@ -0,0 +1,97 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import org.apache.tapestry5.http.Link;
+import org.apache.tapestry5.http.LinkSecurity;
+import org.apache.tapestry5.http.services.BaseURLSource;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.ReloadableRuleSource;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
+import org.apache.tapestry5.urlrewriter.TestRequest;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link URLRewriterLinkTransformer}.
+ */
+public class URLRewriterLinkTransformerTest extends TestBase {
+
+	private static Link link(final String basePath, final LinkSecurity security) {
+		return (Link) Proxy.newProxyInstance(Link.class.getClassLoader(),
+				new Class<?>[] { Link.class }, (proxy, method, args) -> {
+					if (method.getName().equals("getBasePath")) {
+						return basePath;
+					}
+					if (method.getName().equals("getSecurity")) {
+						return security;
+					}
+					if (method.getName().equals("copyWithBasePath")) {
+						return link((String) args[0], security);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private static URLRewriterLinkTransformer transformer(BaseURLSource baseURLSource) {
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new SimpleURLRewriterRule(RuleCondition.path("/about"), "/info/about"),
+				new SimpleURLRewriterRule(RuleCondition.path("/shop").host("shop.example.com"),
+						"/catalog")), ReloadableRuleSource.NONE, TenantRuleProvider.NONE,
+				new URLRewriterMetricsImpl(), 0, false, 0, true, 10,
+				LoggerFactory.getLogger(URLRewriterImpl.class));
+		return new URLRewriterLinkTransformer(rewriter, new TestRequest("example.com", "/"),
+				baseURLSource);
+	}
+
+	@Test
+	public void links_to_another_host_are_absolute() {
+
+		URLRewriterLinkTransformer transformer = transformer(secure -> "http://example.com:8080");
+
+		assertEquals("/about", transformer.transformPageRenderLink(
+				link("/info/about", LinkSecurity.INSECURE), null).getBasePath());
+		assertEquals("http://shop.example.com:8080/shop", transformer.transformPageRenderLink(
+				link("/catalog", LinkSecurity.INSECURE), null).getBasePath());
+		assertNull(transformer.transformPageRenderLink(link("/other", LinkSecurity.INSECURE),
+				null));
+
+		transformer = transformer(secure -> "https://[::1]");
+		assertEquals("https://shop.example.com/shop", transformer.transformPageRenderLink(
+				link("/catalog", LinkSecurity.SECURE), null).getBasePath());
+
+	}
+
+	@Test
+	public void absolute_links_stay_on_their_host() {
+
+		URLRewriterLinkTransformer transformer = transformer(secure -> "http://example.com");
+
+		assertNull(transformer.transformPageRenderLink(link("/catalog",
+				LinkSecurity.FORCE_SECURE), null));
+		assertEquals("/about", transformer.transformComponentEventLink(
+				link("/info/about", LinkSecurity.FORCE_INSECURE), null).getBasePath());
+
+	}
+
+}
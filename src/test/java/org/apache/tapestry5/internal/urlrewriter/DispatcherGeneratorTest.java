@@ -0,0 +1,116 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.MappingFileRuleSource;
+import org.apache.tapestry5.urlrewriter.PatternRule;
+import org.apache.tapestry5.urlrewriter.TestRequest;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link DispatcherGenerator} by compiling the generated class and
+ * comparing it with {@link URLRewriterImpl}.
+ */
+public class DispatcherGeneratorTest extends TestBase {
+
+	private static final String RULES = "/struts /jsf [chain]\n" + "/jsf /tapestry [chain]\n"
+			+ "/product/{id} /catalog/{id} [chain]\n" + "/catalog/{id} /shop/{id}.html [chain]\n"
+			+ "/a/{x}-{y}/b /b/{y}/{x} [chain]\n" + "/jsf /ignored [chain]\n"
+			+ "/tapestry /catalog/t\n" + "/caf\u00e9/{x} /coffee/{x} [chain]\n"
+			+ "/\"quoted\"\\ /q [chain]\n" + "/catalog/t /never\n";
+
+	@Test
+	public void generated_rewriter_matches_the_interpreter() throws Exception {
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return;
+		}
+
+		List<URLRewriterRule> rules = MappingFileRuleSource.parse(new StringReader(RULES), "rules");
+		String source = DispatcherGenerator.generate("generated", "Rewriter", rules);
+
+		File directory = File.createTempFile("generated", "");
+		directory.delete();
+		File file = new File(directory, "generated/Rewriter.java");
+		file.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		assertEquals(source, 0, compiler.run(null, null, null, "-classpath",
+				System.getProperty("java.class.path"), file.getPath()));
+
+		URLClassLoader loader = new URLClassLoader(new URL[] { directory.toURI().toURL() },
+				getClass().getClassLoader());
+		URLRewriter generated = (URLRewriter) loader.loadClass("generated.Rewriter").newInstance();
+		Method rewrite = generated.getClass().getMethod("rewrite", String.class);
+		URLRewriter interpreted = new URLRewriterImpl(rules);
+
+		assertTrue(generated.hasRequestRules());
+		for (String path : Arrays.asList("/", "/struts", "/jsf", "/tapestry", "/product/1",
+				"/product/", "/product/1/2", "/catalog/x", "/a/1-2/b", "/a/1-2-3/b", "/a/-2/b",
+				"/a/1-/b", "/caf\u00e9/1", "/\"quoted\"\\", "/other")) {
+			Request request = new TestRequest(path);
+			Request expected = interpreted.processRequest(request);
+			Request actual = generated.processRequest(request);
+			assertEquals(path, expected.getPath(), actual.getPath());
+			assertEquals(path, expected == request, actual == request);
+		}
+		assertEquals("/catalog/t", rewrite.invoke(null, "/struts"));
+		assertEquals("/catalog/t", rewrite.invoke(null, "/tapestry"));
+		assertEquals("/shop/1.html", rewrite.invoke(null, "/product/1"));
+		assertEquals(null, rewrite.invoke(null, "/other"));
+
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void cycles_are_rejected() throws IOException {
+		DispatcherGenerator.generate("", "Rewriter", MappingFileRuleSource.parse(new StringReader(
+				"/a /b [chain]\n/b /a [chain]\n"), "rules"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void unsupported_rules() throws IOException {
+		DispatcherGenerator.generate("", "Rewriter", Arrays.<URLRewriterRule> asList(
+				new PatternRule("/{x}", "/y").host("example.com")));
+	}
+
+}
@@ -0,0 +1,95 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.PathTemplate;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link PathPatternAutomaton}.
+ */
+public class PathPatternAutomatonTest extends TestBase {
+
+	private static final String[] TEMPLATES = { "/product/{id}/{slug}", "/product/{id}",
+			"/{a}-{b}", "/{a}-{b}-{c}", "/{a}b{b}", "/item/{id}.html", "/{a}/{b}", "/x{a}x{b}x",
+			"/static", "/product/{id}-{name}" };
+
+	private static final String[] PATHS = { "/product/7/red-shoes", "/product/7", "/a-b-c",
+			"/abc", "/ab", "/abbbc", "/a-b-c-d", "/item/12.html", "/item/1.2.html", "/x/y", "/xaxbx", "/xxxxxx",
+			"/static", "/product/7-a-b", "/", "/product/", "/nothing/at/all/here" };
+
+	@Test
+	public void offsets_are_those_of_the_backtracking_match() {
+
+		PathPatternAutomaton automaton = new PathPatternAutomaton();
+		PathTemplate[] templates = new PathTemplate[TEMPLATES.length];
+		for (int i = 0; i < templates.length; i++) {
+			templates[i] = PathTemplate.parse(TEMPLATES[i]);
+			automaton.add(templates[i], i);
+		}
+
+		for (String path : PATHS) {
+
+			PathPatternAutomaton.Matches matches = automaton.find(path);
+			int[] expected = null;
+			for (int i = 0; i < templates.length; i++) {
+				int[] offsets = templates[i].match(path);
+				if (offsets != null) {
+					expected = IntArrays.append(expected, i);
+				}
+				if (matches == null) {
+					assertNull(offsets);
+				} else {
+					assertEquals(path + " " + templates[i], offsets != null ? Arrays
+							.toString(offsets) : null, matches.getOffsets(i) != null ? Arrays
+							.toString(matches.getOffsets(i)) : null);
+				}
+			}
+			assertEquals(path, expected != null ? Arrays.toString(expected) : null,
+					matches != null ? Arrays.toString(matches.getPositions()) : null);
+			int[] positions = automaton.match(path);
+			assertEquals(path, expected != null ? Arrays.toString(expected) : null,
+					positions != null ? Arrays.toString(positions) : null);
+
+		}
+
+	}
+
+	@Test
+	public void active_states_grow_past_the_initial_capacity() {
+
+		PathPatternAutomaton automaton = new PathPatternAutomaton();
+		StringBuilder prefix = new StringBuilder("/");
+		for (int i = 0; i < 40; i++) {
+			automaton.add(PathTemplate.parse(prefix + "{a}"), i);
+			prefix.append('a');
+		}
+
+		String path = prefix.append("aaaaa").toString();
+		PathPatternAutomaton.Matches matches = automaton.find(path);
+		assertEquals(40, matches.getPositions().length);
+		for (int i = 0; i < 40; i++) {
+			assertEquals(Arrays.asList(1 + i, path.length()), Arrays.asList(
+					matches.getOffsets(i)[0], matches.getOffsets(i)[1]));
+		}
+
+	}
+
+}
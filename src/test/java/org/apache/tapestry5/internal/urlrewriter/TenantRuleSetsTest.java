@@ -0,0 +1,202 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.internal.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterMetricsImpl;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.apache.tapestry5.urlrewriter.RuleCondition;
+import org.apache.tapestry5.urlrewriter.SimpleURLRewriterRule;
+import org.apache.tapestry5.urlrewriter.TenantRuleProvider;
+import org.apache.tapestry5.urlrewriter.TestRequest;
+import org.apache.tapestry5.urlrewriter.URLRewriterRule;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link TenantRuleSets}.
+ */
+public class TenantRuleSetsTest extends TestBase {
+
+	/**
+	 * Gives each host "tN.example.com" N rules, and fails for "broken".
+	 */
+	private static class Provider implements TenantRuleProvider {
+
+		final AtomicInteger loads = new AtomicInteger();
+
+		public List<URLRewriterRule> getRules(String host) throws Exception {
+			loads.incrementAndGet();
+			if (host.equals("broken")) {
+				throw new Exception("broken");
+			}
+			if (!host.startsWith("t")) {
+				return null;
+			}
+			int count = Integer.parseInt(host.substring(1, host.indexOf('.')));
+			URLRewriterRule[] rules = new URLRewriterRule[count];
+			for (int i = 0; i < count; i++) {
+				rules[i] = new SimpleURLRewriterRule(RuleCondition.path("/" + i), "/" + host + "/"
+						+ i);
+			}
+			return Arrays.asList(rules);
+		}
+
+	}
+
+	private static TenantRuleSets create(TenantRuleProvider provider, long weight,
+			URLRewriterMetricsImpl metrics) {
+		return create(provider, weight, TenantRuleSets.DEFAULT_RETRY_DELAY, metrics);
+	}
+
+	private static TenantRuleSets create(TenantRuleProvider provider, long weight,
+			long retryDelay, URLRewriterMetricsImpl metrics) {
+		return new TenantRuleSets(provider, weight, retryDelay, metrics,
+				LoggerFactory.getLogger(TenantRuleSetsTest.class));
+	}
+
+	@Test
+	public void rules_are_loaded_once_per_host() {
+
+		Provider provider = new Provider();
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		TenantRuleSets tenants = create(provider, 100, metrics);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("/t2.example.com/1",
+					tenants.process(new TestRequest("t2.example.com", "/1")).getPath());
+			Request request = new TestRequest("www.example.com", "/1");
+			assertSame(request, tenants.process(request));
+		}
+
+		assertEquals(2, provider.loads.get());
+		assertEquals(Long.valueOf(4), metrics.getValues().get("tenants.hits"));
+		assertEquals(Long.valueOf(2), metrics.getValues().get("tenants.size"));
+		assertEquals(Long.valueOf(4), metrics.getValues().get("tenants.weight"));
+
+	}
+
+	@Test
+	public void least_recently_used_hosts_are_evicted_by_weight() {
+
+		Provider provider = new Provider();
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		TenantRuleSets tenants = create(provider, 10, metrics);
+
+		tenants.get("t4.example.com");
+		tenants.get("t3.example.com");
+		tenants.get("t4.example.com");
+		tenants.get("t2.example.com");
+
+		assertEquals(Long.valueOf(1), metrics.getValues().get("tenants.evictions"));
+		assertEquals(Long.valueOf(8), metrics.getValues().get("tenants.weight"));
+		tenants.get("t4.example.com");
+		assertEquals(3, provider.loads.get());
+		tenants.get("t3.example.com");
+		assertEquals(4, provider.loads.get());
+
+	}
+
+	@Test
+	public void failed_loads_are_not_retried_before_the_delay() {
+
+		Provider provider = new Provider();
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		TenantRuleSets tenants = create(provider, 100, metrics);
+
+		assertEquals(0, tenants.get("broken").size());
+		assertEquals(0, tenants.get("broken").size());
+
+		assertEquals(1, provider.loads.get());
+		assertEquals(Long.valueOf(1), metrics.getValues().get("tenants.load-failures"));
+		assertEquals(Long.valueOf(0), metrics.getValues().get("tenants.size"));
+
+		tenants.invalidate("broken");
+		tenants.get("broken");
+		assertEquals(2, provider.loads.get());
+
+	}
+
+	@Test
+	public void failed_loads_are_retried_after_the_delay() {
+
+		Provider provider = new Provider();
+		URLRewriterMetricsImpl metrics = new URLRewriterMetricsImpl();
+		TenantRuleSets tenants = create(provider, 100, 0, metrics);
+
+		assertEquals(0, tenants.get("broken").size());
+		assertEquals(0, tenants.get("broken").size());
+
+		assertEquals(2, provider.loads.get());
+		assertEquals(Long.valueOf(2), metrics.getValues().get("tenants.load-failures"));
+
+	}
+
+	@Test
+	public void concurrent_first_requests_share_a_load() throws InterruptedException {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Provider delegate = new Provider();
+		TenantRuleProvider provider = new TenantRuleProvider() {
+
+			public List<URLRewriterRule> getRules(String host) throws Exception {
+				started.countDown();
+				release.await();
+				return delegate.getRules(host);
+			}
+
+		};
+		final TenantRuleSets tenants = create(provider, 100, new URLRewriterMetricsImpl());
+		final CompiledRuleSet[] results = new CompiledRuleSet[4];
+
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					results[index] = tenants.get("t1.example.com");
+				}
+
+			};
+			threads[i].start();
+			if (i == 0) {
+				started.await();
+			}
+		}
+		// give the other threads time to find the load in progress.
+		Thread.sleep(100);
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(1, delegate.loads.get());
+		for (CompiledRuleSet result : results) {
+			assertSame(results[0], result);
+		}
+
+	}
+
+}
@@ -0,0 +1,66 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.tapestry5.commons.Configuration;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link UrlRewriterModule}.
+ */
+public class UrlRewriterModuleTest extends TestBase {
+
+	@SuppressWarnings("unchecked")
+	private static List<String> bypassPrefixes(String applicationFolder, String assetPathPrefix,
+			String modulePathPrefix) {
+
+		final List<String> prefixes = new ArrayList<String>();
+		Configuration<String> configuration = (Configuration<String>) Proxy.newProxyInstance(
+				Configuration.class.getClassLoader(), new Class<?>[] { Configuration.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("add")) {
+						prefixes.add((String) args[0]);
+						return null;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		UrlRewriterModule.contributeURLRewriterBypass(configuration, true, applicationFolder,
+				assetPathPrefix, modulePathPrefix);
+		return prefixes;
+
+	}
+
+	@Test
+	public void bypass_prefixes_follow_the_tapestry_symbols() {
+
+		assertEquals(Arrays.asList("/assets/", "/modules/", "/modules.gz/"), bypassPrefixes("",
+				"assets", "modules"));
+		assertEquals(Arrays.asList("/app/static/", "/app/js/", "/app/js.gz/"), bypassPrefixes(
+				"app", "static", "js"));
+		assertEquals(Arrays.asList("/app/static/", "/app/js/", "/app/js.gz/"), bypassPrefixes(
+				"/app/", "/static/", "/js/"));
+		assertEquals(Arrays.asList("/static/", "/js/", "/js.gz/"), bypassPrefixes("/",
+				"static/", "/js"));
+
+	}
+
+}
@@ -0,0 +1,172 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.services.DelegatingRequest;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link HeaderRule} and {@link HeaderCondition}.
+ */
+public class HeaderRuleTest extends TestBase {
+
+	@Test
+	public void conditions_ignore_case() {
+
+		Request request = new TestRequest("/").header("User-Agent", "Mozilla/5.0 (iPhone) Mobile")
+				.header("Accept-Language", "PT-br,pt;q=0.9");
+
+		assertTrue(HeaderCondition.contains("User-Agent", "mobile").matches(request));
+		assertTrue(HeaderCondition.startsWith("Accept-Language", "pt").matches(request));
+		assertTrue(HeaderCondition.equalTo("Accept-Language", "pt-BR,PT;q=0.9").matches(request));
+		assertFalse(HeaderCondition.equalTo("Accept-Language", "pt").matches(request));
+		assertFalse(HeaderCondition.contains("Referer", "example").matches(request));
+
+	}
+
+	@Test
+	public void rewrite() {
+
+		HeaderRule rule = new HeaderRule(RuleCondition.path("/"), HeaderCondition.contains(
+				"User-Agent", "Mobile"), "m.example.com", "/home");
+		Request request = rule.process(new TestRequest("/").header("User-Agent", "Android Mobile"));
+
+		assertEquals("m.example.com", request.getServerName());
+		assertEquals("/home", request.getPath());
+
+		request = new TestRequest("/other").header("User-Agent", "Android Mobile");
+		assertSame(request, rule.process(request));
+		request = new TestRequest("/").header("User-Agent", "Firefox");
+		assertSame(request, rule.process(request));
+
+	}
+
+	@Test
+	public void headers_are_read_once_and_rules_run_in_order() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new HeaderRule(RuleCondition.path("/"), HeaderCondition.contains("User-Agent",
+						"Mobile"), "/m").chained(),
+				new SimpleURLRewriterRule(RuleCondition.path("/m"), "/mobile/home"),
+				new HeaderRule(RuleCondition.pathPrefix("/"), HeaderCondition.startsWith(
+						"Accept-Language", "pt"), "/pt"),
+				new HeaderRule(RuleCondition.any(), HeaderCondition.equalTo("Accept-Language",
+						"en-US"), "/en"),
+				new HeaderRule(RuleCondition.any().host("shop.example.com"), HeaderCondition
+						.contains("User-Agent", "bot"), "/robots")));
+
+		for (int i = 0; i < 2; i++) {
+
+			CountingRequest request = new CountingRequest("localhost", "/");
+			request.header("User-Agent", "Mozilla/5.0 (iPhone) Mobile").header("Accept-Language",
+					"pt-BR");
+			assertEquals("/mobile/home", rewriter.processRequest(request).getPath());
+			assertEquals(Integer.valueOf(1), request.reads.get("User-Agent"));
+			assertEquals(Integer.valueOf(1), request.reads.get("Accept-Language"));
+
+		}
+
+		assertEquals("/pt", rewriter.processRequest(new TestRequest("/x").header(
+				"User-Agent", "Mozilla/5.0 (iPhone) Mobile").header("Accept-Language", "pt-BR"))
+				.getPath());
+		assertEquals("/en", rewriter.processRequest(new TestRequest("/x").header(
+				"Accept-Language", "EN-us")).getPath());
+		assertEquals("/robots", rewriter.processRequest(new TestRequest("shop.example.com", "/x")
+				.header("User-Agent", "Googlebot/2.1")).getPath());
+		Request request = new TestRequest("example.com", "/x").header("User-Agent", "Googlebot/2.1");
+		assertSame(request, rewriter.processRequest(request));
+		request = new TestRequest("/");
+		assertSame(request, rewriter.processRequest(request));
+
+	}
+
+	@Test
+	public void headers_changed_by_a_rule_are_classified_again() {
+
+		URLRewriterRule mobile = new URLRewriterRule() {
+
+			public Request process(Request request) {
+				return new DelegatingRequest(request) {
+
+					@Override
+					public String getHeader(String name) {
+						return name.equals("User-Agent") ? "Android Mobile" : super
+								.getHeader(name);
+					}
+
+				};
+			}
+
+		};
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(mobile,
+				new HeaderRule(RuleCondition.path("/"), HeaderCondition.contains("User-Agent",
+						"Mobile"), "/m"),
+				new HeaderRule(RuleCondition.path("/"), HeaderCondition.contains("User-Agent",
+						"Firefox"), "/desktop")));
+
+		assertEquals("/m", rewriter.processRequest(new TestRequest("/").header("User-Agent",
+				"Firefox")).getPath());
+
+	}
+
+	@Test
+	public void long_header_values_are_classified_too() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new HeaderRule(RuleCondition.path("/"), HeaderCondition.contains("User-Agent",
+						"Mobile"), "/m")));
+		StringBuilder userAgent = new StringBuilder();
+		while (userAgent.length() < 8192) {
+			userAgent.append("Mozilla/5.0 ");
+		}
+
+		for (int i = 0; i < 2; i++) {
+			assertEquals("/m", rewriter.processRequest(new TestRequest("/").header("User-Agent",
+					userAgent + "Mobile")).getPath());
+			assertEquals("/", rewriter.processRequest(new TestRequest("/").header("User-Agent",
+					userAgent.toString())).getPath());
+		}
+
+	}
+
+	final private static class CountingRequest extends TestRequest {
+
+		final private Map<String, Integer> reads = new HashMap<String, Integer>();
+
+		CountingRequest(String serverName, String path) {
+			super(serverName, path);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			Integer count = reads.get(name);
+			reads.put(name, count != null ? count + 1 : 1);
+			return super.getHeader(name);
+		}
+
+	}
+
+}
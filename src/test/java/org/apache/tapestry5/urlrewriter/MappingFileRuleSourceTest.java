@@ -0,0 +1,118 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link MappingFileRuleSource}.
+ */
+public class MappingFileRuleSourceTest extends TestBase {
+
+	@Test
+	public void parse() throws IOException {
+
+		List<URLRewriterRule> rules = MappingFileRuleSource.parse(new StringReader(
+				"# campaigns\n\n/spring   /campaign/spring\n\t/promo/{code} /campaign/{code}\n"
+						+ "^/p/(\\d{1,5})$ /product/$1\n"), "rules.txt");
+
+		assertEquals(3, rules.size());
+		assertEquals("/campaign/spring", rules.get(0).process(new TestRequest("/spring")).getPath());
+		assertEquals("/campaign/x1", rules.get(1).process(new TestRequest("/promo/x1")).getPath());
+		assertEquals("/product/42", rules.get(2).process(new TestRequest("/p/42")).getPath());
+
+	}
+
+	@Test
+	public void chained_lines() throws IOException {
+
+		List<URLRewriterRule> rules = MappingFileRuleSource.parse(new StringReader(
+				"/old/{page} /{page} [chain]\n/spring /campaign/spring\n"), "rules.txt");
+
+		assertFalse(((TerminalRule) rules.get(0)).isTerminal());
+		assertTrue(((TerminalRule) rules.get(1)).isTerminal());
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void unknown_flag() throws IOException {
+		MappingFileRuleSource.parse(new StringReader("/spring /campaign [last]\n"), "rules.txt");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void malformed_line() throws IOException {
+		MappingFileRuleSource.parse(new StringReader("/spring\n"), "rules.txt");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void malformed_pattern() throws IOException {
+		MappingFileRuleSource.parse(new StringReader("/promo/{code /campaign\n"), "rules.txt");
+	}
+
+	@Test
+	public void listeners_are_notified_of_changes() throws IOException {
+
+		File file = File.createTempFile("rules", ".txt");
+		file.deleteOnExit();
+		write(file, "/a /b\n");
+
+		MappingFileRuleSource source = new MappingFileRuleSource(file, 60000);
+		final AtomicInteger changes = new AtomicInteger();
+		source.addChangeListener(new Runnable() {
+
+			public void run() {
+				changes.incrementAndGet();
+			}
+
+		});
+
+		try {
+			assertEquals(1, source.load().size());
+			source.check();
+			assertEquals(0, changes.get());
+
+			write(file, "/a /b\n/c /d\n");
+			source.check();
+			assertEquals(1, changes.get());
+			assertEquals(2, source.load().size());
+		} finally {
+			source.stop();
+		}
+
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+
+}
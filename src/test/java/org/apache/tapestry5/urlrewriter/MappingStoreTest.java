@@ -0,0 +1,117 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link MappingStore}, {@link MappingStoreBuilder} and
+ * {@link MappingStoreRule}.
+ */
+public class MappingStoreTest extends TestBase {
+
+	private static MappingStore build(MappingStoreBuilder builder) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		builder.write(output);
+		return MappingStore.wrap(ByteBuffer.wrap(output.toByteArray()));
+	}
+
+	@Test
+	public void lookups() throws IOException {
+
+		MappingStoreBuilder builder = new MappingStoreBuilder();
+		for (int i = 0; i < 1000; i++) {
+			builder.add("/old/" + i, "/new/" + i);
+		}
+		builder.add("/caf\u00e9", "/coffee").add("/\u65e5\u672c", "/japan")
+				.add("/\ud83d\ude00", "/smile").add("/z", "/\u00fcber");
+		MappingStore store = build(builder);
+
+		assertEquals(1004, store.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("/new/" + i, store.get("/old/" + i));
+		}
+		assertEquals("/coffee", store.get("/caf\u00e9"));
+		assertEquals("/japan", store.get("/\u65e5\u672c"));
+		assertEquals("/smile", store.get("/\ud83d\ude00"));
+		assertEquals("/\u00fcber", store.get("/z"));
+		assertNull(store.get("/old/1000"));
+		assertNull(store.get("/old/"));
+		assertNull(store.get("/caf"));
+		assertNull(store.get(""));
+
+	}
+
+	@Test
+	public void csv() throws IOException {
+
+		MappingStore store = build(new MappingStoreBuilder().addCsv(new StringReader(
+				"# old,new\n/a.php,/a\n\"/b,c.php\" , \"/b \"\"c\"\"\"\n"), "mappings.csv"));
+
+		assertEquals(2, store.size());
+		assertEquals("/a", store.get("/a.php"));
+		assertEquals("/b \"c\"", store.get("/b,c.php"));
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void malformed_csv() throws IOException {
+		new MappingStoreBuilder().addCsv(new StringReader("/a.php,/a,/b\n"), "mappings.csv");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void duplicated_keys() throws IOException {
+		build(new MappingStoreBuilder().add("/a", "/b").add("/a", "/c"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void not_a_store() {
+		MappingStore.wrap(ByteBuffer.wrap(new byte[16]));
+	}
+
+	@Test
+	public void mapped_rule() throws IOException {
+
+		File file = File.createTempFile("mappings", ".store");
+		file.deleteOnExit();
+		OutputStream output = new FileOutputStream(file);
+		try {
+			new MappingStoreBuilder().add("/index.php", "/").write(output);
+		} finally {
+			output.close();
+		}
+
+		MappingStoreRule rule = new MappingStoreRule(MappingStore.open(file));
+		Request request = new TestRequest("/other.php");
+
+		assertEquals("/", rule.process(new TestRequest("/index.php")).getPath());
+		assertSame(request, rule.process(request));
+
+	}
+
+}
@@ -0,0 +1,76 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link ParameterRequestWrapper} and {@link ParameterChanges}.
+ */
+public class ParameterRequestWrapperTest extends TestBase {
+
+	@Test
+	public void changes_are_an_overlay_over_the_original_parameters() {
+
+		TestRequest original = new TestRequest("/p").parameter("id", "5")
+				.parameter("sort", "name", "date").parameter("debug", "true")
+				.parameter("q", "shoes");
+		ParameterChanges changes = ParameterChanges.none().remove("id").remove("debug")
+				.rename("q", "query").set("page", "2").set("debug", "false");
+		ParameterRequestWrapper request = new ParameterRequestWrapper(original, null, "/p/5",
+				changes);
+
+		assertEquals("/p/5", request.getPath());
+		assertNull(request.getParameter("id"));
+		assertNull(request.getParameters("id"));
+		assertEquals("false", request.getParameter("debug"));
+		assertEquals("shoes", request.getParameter("query"));
+		assertNull(request.getParameter("q"));
+		assertEquals("2", request.getParameter("page"));
+		assertEquals(Arrays.asList("name", "date"), Arrays.asList(request.getParameters("sort")));
+		assertEquals(Arrays.asList("debug", "page", "query", "sort"),
+				request.getParameterNames());
+
+	}
+
+	@Test
+	public void renames_follow_previous_changes() {
+
+		TestRequest original = new TestRequest("/p").parameter("a", "1");
+
+		ParameterRequestWrapper request = new ParameterRequestWrapper(original, ParameterChanges
+				.none().set("a", "2").rename("a", "b").rename("missing", "c"));
+
+		assertEquals("/p", request.getPath());
+		assertNull(request.getParameter("a"));
+		assertEquals("2", request.getParameter("b"));
+		assertNull(request.getParameter("c"));
+		assertEquals(Arrays.asList("b"), request.getParameterNames());
+
+	}
+
+	@Test
+	public void wrappers_without_changes_return_the_original_names() {
+		TestRequest original = new TestRequest("/p").parameter("a", "1");
+		assertEquals(original.getParameterNames(), new ParameterRequestWrapper(original,
+				ParameterChanges.none()).getParameterNames());
+	}
+
+}
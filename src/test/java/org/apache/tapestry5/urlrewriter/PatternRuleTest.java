@@ -0,0 +1,103 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link PatternRule} and {@link PathTemplate}.
+ */
+public class PatternRuleTest extends TestBase {
+
+	@Test
+	public void template_match_offsets() {
+
+		PathTemplate template = PathTemplate.parse("/product/{id}/{slug}.html");
+		String path = "/product/42/blue.shoes.html";
+		int[] offsets = template.match(path);
+
+		assertEquals("42", template.getVariable(path, offsets, "id"));
+		assertEquals("blue.shoes", template.getVariable(path, offsets, "slug"));
+		assertNull(template.match("/product/42"));
+		assertNull(template.match("/product/42/a/b.html"));
+		assertNull(template.match("/product//x.html"));
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void adjacent_variables() {
+		PathTemplate.parse("/{a}{b}");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void undefined_target_variable() {
+		new PatternRule("/product/{id}", "/catalog/{name}");
+	}
+
+	@Test
+	public void rewrite() {
+
+		PatternRule rule = new PatternRule("/product/{id}/{slug}", "/catalog/show/{id}");
+		Request request = new TestRequest("/product/42/blue-shoes");
+
+		assertEquals("/catalog/show/42", rule.process(request).getPath());
+
+		request = new TestRequest("/products");
+		assertSame(request, rule.process(request));
+
+	}
+
+	@Test
+	public void rewrite_server_name() {
+
+		PatternRule rule = new PatternRule("/user/{login}", "{login}.example.com", "/");
+		Request request = rule.process(new TestRequest("/user/thiago"));
+
+		assertEquals("thiago.example.com", request.getServerName());
+		assertEquals("/", request.getPath());
+
+	}
+
+	@Test
+	public void combined_patterns_keep_rule_order() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new PatternRule("/product/{id}/{slug}", "/catalog/show/{id}").chained(),
+				new PatternRule("/product/{id}", "/catalog/show/{id}").chained(),
+				new PatternRule("/catalog/show/{id}", "/show/{id}").host("localhost"),
+				new PatternRule("/p{id}.html", "/product/{id}"),
+				new PatternRule("/product/new/{slug}", "/create/{slug}")));
+
+		assertEquals("/show/42", rewriter.processRequest(new TestRequest("/product/42/blue"))
+				.getPath());
+		assertEquals("/catalog/show/42",
+				rewriter.processRequest(new TestRequest("example.com", "/product/42")).getPath());
+		assertEquals("/product/7", rewriter.processRequest(new TestRequest("/p7.html"))
+				.getPath());
+		assertEquals("/show/new", rewriter.processRequest(new TestRequest("/product/new/shoes"))
+				.getPath());
+		assertEquals("/product", rewriter.processRequest(new TestRequest("/product")).getPath());
+
+	}
+
+}
@@ -0,0 +1,97 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link RegexRule}.
+ */
+public class RegexRuleTest extends TestBase {
+
+	@Test
+	public void rewrite() {
+
+		RegexRule rule = new RegexRule("^/blog/(\\d+)/(\\d+)/([a-z-]+)$", "/article/show/$3/$1\\$");
+		Request request = new TestRequest("/blog/2009/12/new-release");
+
+		assertEquals("/article/show/new-release/2009$", rule.process(request).getPath());
+		assertEquals("/article/show/new-release/2009$", rule.process(request).getPath());
+
+		request = new TestRequest("/blog/2009/new-release");
+		assertSame(request, rule.process(request));
+
+	}
+
+	@Test
+	public void unmatched_groups_are_empty() {
+		RegexRule rule = new RegexRule("^/p/(\\d+)(?:/(\\w+))?$", "/product/$1/$2");
+		assertEquals("/product/7/", rule.process(new TestRequest("/p/7")).getPath());
+		assertEquals("/product/7/x", rule.process(new TestRequest("/p/7/x")).getPath());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void undefined_group() {
+		new RegexRule("^/p/(\\d+)$", "/product/$2");
+	}
+
+	@Test
+	public void required_literals() {
+
+		assertEquals("/blog/", new RegexRule("^/blog/(\\d+)$", "/").getRequiredLiteral());
+		assertEquals("/catalog/", new RegexRule("/a?/catalog/\\d+", "/").getRequiredLiteral());
+		assertEquals(".html", new RegexRule("^/[a-z]+\\.html$", "/").getRequiredLiteral());
+		assertEquals("/product", new RegexRule("^/products?/", "/").getRequiredLiteral());
+		assertEquals("/item", new RegexRule("^/items{1,2}+x", "/").getRequiredLiteral());
+		assertEquals("/a.b", new RegexRule("/a.b", "/", Pattern.LITERAL).getRequiredLiteral());
+		assertNull(new RegexRule("^/blog|^/news", "/").getRequiredLiteral());
+		assertNull(new RegexRule("(?x) /blog", "/").getRequiredLiteral());
+		assertNull(new RegexRule("^\\d+$", "/").getRequiredLiteral());
+
+	}
+
+	@Test
+	public void only_rules_whose_literal_occurs_run_in_order() {
+
+		URLRewriterImpl rewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				new RegexRule("^/blog/(\\d+)$", "/article/$1").chained(),
+				new RegexRule("^/BLOG/(\\w+)$", "/tag/$1", Pattern.CASE_INSENSITIVE),
+				new PatternRule("/article/{id}", "/show/{id}").chained(),
+				new RegexRule("^/show/(\\d+)$", "/page/$1"),
+				new RegexRule("\\.php$", "/legacy"),
+				new RegexRule("^/x(\\d)$", "/y$1").host("example.com")));
+
+		assertEquals("/page/42", rewriter.processRequest(new TestRequest("/blog/42")).getPath());
+		assertEquals("/tag/news", rewriter.processRequest(new TestRequest("/Blog/news"))
+				.getPath());
+		assertEquals("/legacy", rewriter.processRequest(new TestRequest("/index.PHP.php"))
+				.getPath());
+		assertEquals("/y1",
+				rewriter.processRequest(new TestRequest("example.com", "/x1")).getPath());
+		assertEquals("/x1", rewriter.processRequest(new TestRequest("/x1")).getPath());
+		assertEquals("/other", rewriter.processRequest(new TestRequest("/other")).getPath());
+
+	}
+
+}
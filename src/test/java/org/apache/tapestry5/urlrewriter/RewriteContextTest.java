@@ -0,0 +1,102 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link RewriteContext} and {@link ContextURLRewriterRule}.
+ */
+public class RewriteContextTest extends TestBase {
+
+	@Test
+	public void lower_case_and_normalized_paths() {
+
+		RewriteContext context = new RewriteContext(new TestRequest("Shop.Example.com",
+				"//Shop/red%20shoes/caf%C3%A9/%zz"));
+
+		assertEquals("//shop/red%20shoes/caf%c3%a9/%zz", context.getLowerCasePath());
+		assertSame(context.getLowerCasePath(), context.getLowerCasePath());
+		assertEquals("shop.example.com", context.getLowerCaseServerName());
+		assertEquals("/Shop/red shoes/caf\u00e9/%zz", context.getNormalizedPath());
+
+		RewriteContext plain = new RewriteContext(new TestRequest("/shop/shoes"));
+		assertSame(plain.getPath(), plain.getNormalizedPath());
+
+	}
+
+	@Test
+	public void segments_are_offsets_into_the_path() {
+
+		RewriteContext context = new RewriteContext(new TestRequest("//Shop//shoes/42/"));
+
+		assertEquals(3, context.getSegmentCount());
+		assertEquals(2, context.getSegmentStart(0));
+		assertEquals(6, context.getSegmentEnd(0));
+		assertEquals("shoes", context.getSegment(1));
+		assertTrue(context.segmentEquals(2, "42"));
+		assertTrue(context.segmentEqualsIgnoreCase(0, "shop"));
+		assertFalse(context.segmentEquals(0, "shop"));
+		assertFalse(context.segmentEquals(1, "shoe"));
+		assertFalse(context.segmentEquals(3, "42"));
+		assertEquals(0, new RewriteContext(new TestRequest("/")).getSegmentCount());
+
+	}
+
+	@Test
+	public void rules_share_one_context_per_request() {
+
+		final List<RewriteContext> contexts = new ArrayList<RewriteContext>();
+		ContextURLRewriterRule recorder = new ContextURLRewriterRule() {
+
+			public Request process(RewriteContext context) {
+				contexts.add(context);
+				return context.getRequest();
+			}
+
+		};
+		ContextURLRewriterRule rewriter = new ContextURLRewriterRule() {
+
+			public Request process(RewriteContext context) {
+				if (context.segmentEqualsIgnoreCase(0, "old")) {
+					return new SimpleRequestWrapper(context.getRequest(), "/new");
+				}
+				return context.getRequest();
+			}
+
+		};
+
+		URLRewriterImpl urlRewriter = new URLRewriterImpl(Arrays.<URLRewriterRule> asList(
+				recorder, recorder, rewriter, recorder));
+
+		assertEquals("/new", urlRewriter.processRequest(new TestRequest("/OLD")).getPath());
+		assertEquals(3, contexts.size());
+		assertSame(contexts.get(0), contexts.get(1));
+		assertEquals("/new", contexts.get(2).getPath());
+
+	}
+
+}
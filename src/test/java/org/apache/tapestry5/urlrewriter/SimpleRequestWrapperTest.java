@@ -14,6 +14,7 @@
 package org.apache.tapestry5.urlrewriter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -136,6 +137,20 @@ public class SimpleRequestWrapperTest extends TestBase {
 
 	}
 
+	@Test
+	public void chained_wrappers_are_flattened() {
+
+		Request original = new TestRequest("tapestry.apache.org", "/struts");
+		SimpleRequestWrapper first = new SimpleRequestWrapper(original, "/jsf");
+		SimpleRequestWrapper second = new SimpleRequestWrapper(first, "login.apache.org", "/tapestry");
+		SimpleRequestWrapper third = new SimpleRequestWrapper(second, "/success");
+
+		assertSame(original, third.getRequest());
+		assertEquals("login.apache.org", third.getServerName());
+		assertEquals("/success", third.getPath());
+
+	}
+
 	@Test
 	public void constructor_and_nulls() {
 
@@ -0,0 +1,157 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.http.services.Session;
+
+/**
+ * Plain {@link Request} implementation for tests that need many requests or
+ * real values instead of mock expectations.
+ */
+public class TestRequest implements Request {
+
+	final private String serverName;
+
+	final private String path;
+
+	private String method = "GET";
+
+	final private Map<String, String> headers = new LinkedHashMap<String, String>();
+
+	final private Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+	final private Map<String, Object> attributes = new HashMap<String, Object>();
+
+	public TestRequest(String serverName, String path) {
+		this.serverName = serverName;
+		this.path = path;
+	}
+
+	public TestRequest(String path) {
+		this("localhost", path);
+	}
+
+	public TestRequest method(String method) {
+		this.method = method;
+		return this;
+	}
+
+	public TestRequest header(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	public TestRequest parameter(String name, String... values) {
+		parameters.put(name, values);
+		return this;
+	}
+
+	public Session getSession(boolean create) {
+		return null;
+	}
+
+	public String getContextPath() {
+		return "";
+	}
+
+	public List<String> getParameterNames() {
+		return new ArrayList<String>(parameters.keySet());
+	}
+
+	public String getParameter(String name) {
+		String[] values = parameters.get(name);
+		return values != null && values.length > 0 ? values[0] : null;
+	}
+
+	public String[] getParameters(String name) {
+		return parameters.get(name);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+
+	public List<String> getHeaderNames() {
+		return new ArrayList<String>(headers.keySet());
+	}
+
+	public long getDateHeader(String name) {
+		return -1;
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	public boolean isXHR() {
+		return false;
+	}
+
+	public boolean isSecure() {
+		return false;
+	}
+
+	public String getServerName() {
+		return serverName;
+	}
+
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	public void setAttribute(String name, Object value) {
+		attributes.put(name, value);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public int getLocalPort() {
+		return 80;
+	}
+
+	public int getServerPort() {
+		return 80;
+	}
+
+	public String getRemoteHost() {
+		return "127.0.0.1";
+	}
+
+	public List<String> getAttributeNames() {
+		return new ArrayList<String>(attributes.keySet());
+	}
+
+	public boolean isSessionInvalidated() {
+		return false;
+	}
+
+}
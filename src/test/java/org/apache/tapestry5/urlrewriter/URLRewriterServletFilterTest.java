@@ -0,0 +1,332 @@
+// Copyright 2009 The Apache Software Foundation
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.apache.tapestry5.urlrewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.tapestry5.TapestryFilter;
+import org.apache.tapestry5.http.services.Request;
+import org.apache.tapestry5.internal.services.URLRewriterImpl;
+import org.apache.tapestry5.ioc.Registry;
+import org.apache.tapestry5.services.URLRewriter;
+import org.apache.tapestry5.services.URLRewriterBypass;
+import org.apache.tapestry5.test.ioc.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link URLRewriterServletFilter} over simple map-backed servlet
+ * objects.
+ */
+public class URLRewriterServletFilterTest extends TestBase {
+
+	@Test
+	public void rewrite() throws Exception {
+
+		URLRewriterServletFilter filter = registryFilter(new SimpleURLRewriterRule(RuleCondition
+				.path("/struts"), "/jsf"));
+		ServletStub request = new ServletStub("/struts");
+		Chain chain = new Chain();
+
+		filter.doFilter(request.proxy(), response(new HashMap<String, Object>()), chain);
+
+		HttpServletRequest passed = (HttpServletRequest) chain.request;
+		assertEquals("/jsf", passed.getServletPath());
+		assertNull(passed.getPathInfo());
+		assertEquals("/jsf", passed.getRequestURI());
+		assertEquals("http://localhost/jsf", passed.getRequestURL().toString());
+		assertEquals(Boolean.TRUE, request.attributes.get(URLRewriterServletFilter.PROCESSED_ATTRIBUTE));
+
+	}
+
+	@Test
+	public void redirect() throws Exception {
+
+		URLRewriterServletFilter filter = registryFilter(new RedirectRule(RuleCondition
+				.path("/old"), RewriteAction.movedPermanently("/new")));
+		Map<String, Object> written = new HashMap<String, Object>();
+		Chain chain = new Chain();
+
+		filter.doFilter(new ServletStub("/old").proxy(), response(written), chain);
+
+		assertNull(chain.request);
+		assertEquals(301, written.get("status"));
+		assertEquals("/new", written.get("Location"));
+
+	}
+
+	@Test
+	public void processed_requests_are_passed_on() throws Exception {
+
+		URLRewriterServletFilter filter = registryFilter(new SimpleURLRewriterRule(RuleCondition
+				.path("/struts"), "/jsf"));
+		ServletStub stub = new ServletStub("/struts");
+		stub.attributes.put(URLRewriterServletFilter.PROCESSED_ATTRIBUTE, Boolean.TRUE);
+		HttpServletRequest request = stub.proxy();
+		Chain chain = new Chain();
+
+		filter.doFilter(request, response(new HashMap<String, Object>()), chain);
+
+		assertSame(request, chain.request);
+
+	}
+
+	@Test
+	public void bypassed_requests_are_passed_on() throws Exception {
+
+		URLRewriterServletFilter filter = registryFilter(new SimpleURLRewriterRule(RuleCondition
+				.pathPrefix("/"), "/everything"));
+		HttpServletRequest request = new ServletStub("/assets/app.js").proxy();
+		Chain chain = new Chain();
+
+		filter.doFilter(request, response(new HashMap<String, Object>()), chain);
+
+		assertSame(request, chain.request);
+		assertEquals(Boolean.TRUE, request.getAttribute(URLRewriterServletFilter.PROCESSED_ATTRIBUTE));
+
+	}
+
+	@Test
+	public void rules_file() throws Exception {
+
+		File file = File.createTempFile("rules", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("/spring /campaign/spring\n".getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(URLRewriterServletFilter.RULES_FILE_PARAMETER, file.getPath());
+		parameters.put(URLRewriterServletFilter.RULES_FILE_CHECK_INTERVAL_PARAMETER, "0");
+		URLRewriterServletFilter filter = new URLRewriterServletFilter();
+		filter.init(config(parameters, null));
+
+		try {
+			ServletStub request = new ServletStub("/spring");
+			Chain chain = new Chain();
+			filter.doFilter(request.proxy(), response(new HashMap<String, Object>()), chain);
+			assertEquals("/campaign/spring", ((HttpServletRequest) chain.request).getServletPath());
+			// the rules of the registry still have to run.
+			assertNull(request.attributes.get(URLRewriterServletFilter.PROCESSED_ATTRIBUTE));
+		} finally {
+			filter.destroy();
+		}
+
+	}
+
+	@Test
+	public void parameters_headers_and_session_reach_the_chain() throws Exception {
+
+		URLRewriterRule rule = new URLRewriterRule() {
+
+			public Request process(Request request) {
+				request.getSession(true).setAttribute("visited", request.getPath());
+				return new ParameterRequestWrapper(request, null, "/search", ParameterChanges
+						.none().rename("q", "query").set("page", "1"));
+			}
+
+		};
+		URLRewriterServletFilter filter = registryFilter(rule);
+		ServletStub stub = new ServletStub("/find");
+		stub.parameters.put("q", new String[] { "shoes" });
+		stub.headers.put("Accept-Language", "pt-BR");
+		Chain chain = new Chain();
+
+		filter.doFilter(stub.proxy(), response(new HashMap<String, Object>()), chain);
+
+		HttpServletRequest passed = (HttpServletRequest) chain.request;
+		assertEquals("/search", passed.getServletPath());
+		assertEquals("shoes", passed.getParameter("query"));
+		assertNull(passed.getParameter("q"));
+		assertEquals(Arrays.asList("1"), Arrays.asList(passed.getParameterValues("page")));
+		assertEquals(2, passed.getParameterMap().size());
+		assertTrue(Collections.list(passed.getParameterNames()).contains("query"));
+		assertEquals("pt-BR", passed.getHeader("Accept-Language"));
+		assertEquals("GET", passed.getMethod());
+		assertEquals("/find", stub.session.get("visited"));
+
+	}
+
+	private URLRewriterServletFilter registryFilter(URLRewriterRule... rules)
+			throws ServletException {
+
+		final URLRewriter urlRewriter = new URLRewriterImpl(Arrays.asList(rules));
+		final URLRewriterBypass bypass = new URLRewriterBypass() {
+
+			public boolean isBypassed(String path) {
+				return path.startsWith("/assets/");
+			}
+
+		};
+		Registry registry = (Registry) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Registry.class }, (proxy, method, arguments) -> {
+					return arguments[0] == URLRewriter.class ? urlRewriter : bypass;
+				});
+
+		URLRewriterServletFilter filter = new URLRewriterServletFilter();
+		filter.init(config(Collections.<String, String> emptyMap(), registry));
+		return filter;
+
+	}
+
+	private FilterConfig config(final Map<String, String> parameters, final Registry registry) {
+
+		final ServletContext context = proxy(ServletContext.class, (proxy, method, arguments) -> {
+			return method.getName().equals("getAttribute")
+					&& TapestryFilter.REGISTRY_CONTEXT_NAME.equals(arguments[0]) ? registry : null;
+		});
+		return proxy(FilterConfig.class, (proxy, method, arguments) -> {
+			if (method.getName().equals("getServletContext")) {
+				return context;
+			}
+			return method.getName().equals("getInitParameter") ? parameters.get(arguments[0])
+					: null;
+		});
+
+	}
+
+	private HttpServletResponse response(final Map<String, Object> written) {
+		return proxy(HttpServletResponse.class, (proxy, method, arguments) -> {
+			if (method.getName().equals("setStatus")) {
+				written.put("status", arguments[0]);
+			} else if (method.getName().equals("setHeader")) {
+				written.put((String) arguments[0], arguments[1]);
+			}
+			return null;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	final private static class Chain implements FilterChain {
+
+		private ServletRequest request;
+
+		public void doFilter(ServletRequest request, ServletResponse response)
+				throws IOException, ServletException {
+			this.request = request;
+		}
+
+	}
+
+	/**
+	 * An {@link HttpServletRequest} for a GET to http://localhost, with its
+	 * attributes, parameters, headers and session in maps.
+	 */
+	final private static class ServletStub {
+
+		final private String path;
+
+		final private Map<String, Object> attributes = new HashMap<String, Object>();
+
+		final private Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+		final private Map<String, String> headers = new LinkedHashMap<String, String>();
+
+		private Map<String, Object> session;
+
+		ServletStub(String path) {
+			this.path = path;
+		}
+
+		HttpServletRequest proxy() {
+			return URLRewriterServletFilterTest.proxy(HttpServletRequest.class, (proxy, method,
+					arguments) -> {
+
+				String name = method.getName();
+				if (name.equals("getServletPath")) {
+					return path;
+				} else if (name.equals("getContextPath")) {
+					return "";
+				} else if (name.equals("getServerName")) {
+					return "localhost";
+				} else if (name.equals("getScheme")) {
+					return "http";
+				} else if (name.equals("getServerPort")) {
+					return 80;
+				} else if (name.equals("getMethod")) {
+					return "GET";
+				} else if (name.equals("getAttribute")) {
+					return attributes.get(arguments[0]);
+				} else if (name.equals("setAttribute")) {
+					attributes.put((String) arguments[0], arguments[1]);
+				} else if (name.equals("getParameter")) {
+					String[] values = parameters.get(arguments[0]);
+					return values != null ? values[0] : null;
+				} else if (name.equals("getParameterValues")) {
+					return parameters.get(arguments[0]);
+				} else if (name.equals("getParameterNames")) {
+					return Collections.enumeration(parameters.keySet());
+				} else if (name.equals("getHeader")) {
+					return headers.get(arguments[0]);
+				} else if (name.equals("getHeaders")) {
+					return Collections.enumeration(headers.containsKey(arguments[0]) ? Arrays
+							.asList(headers.get(arguments[0])) : Collections.<String> emptyList());
+				} else if (name.equals("getHeaderNames")) {
+					return Collections.enumeration(headers.keySet());
+				} else if (name.equals("getSession")) {
+					return session();
+				}
+				return null;
+
+			});
+		}
+
+		private HttpSession session() {
+			if (session == null) {
+				session = new HashMap<String, Object>();
+			}
+			return URLRewriterServletFilterTest.proxy(HttpSession.class, (proxy, method,
+					arguments) -> {
+				if (method.getName().equals("getAttribute")) {
+					return session.get(arguments[0]);
+				} else if (method.getName().equals("setAttribute")) {
+					session.put((String) arguments[0], arguments[1]);
+				}
+				return null;
+			});
+		}
+
+	}
+
+}
@@ -18,7 +18,9 @@ import org.apache.tapestry5.commons.OrderedConfiguration;
 import org.apache.tapestry5.http.services.Request;
 import org.apache.tapestry5.ioc.annotations.SubModule;
 import org.apache.tapestry5.services.UrlRewriterModule;
+import org.apache.tapestry5.urlrewriter.ContextURLRewriterRule;
 import org.apache.tapestry5.urlrewriter.IntegrationTests;
+import org.apache.tapestry5.urlrewriter.RewriteContext;
 import org.apache.tapestry5.urlrewriter.SimpleRequestWrapper;
 import org.apache.tapestry5.urlrewriter.URLRewriterRule;
 import org.apache.tapestry5.urlrewriter.webapp.pages.URLRewriteSuccess;
@@ -89,14 +91,14 @@ public class AppModule {
 
 		};
 
-		URLRewriterRule rule5 = new URLRewriterRule() {
+		URLRewriterRule rule5 = new ContextURLRewriterRule() {
 
-			public Request process(Request request) {
-				String serverName = request.getServerName();
-				String path = request.getPath();
-				final String pathToRewrite = "/" + SUCCESS_PAGE_NAME + "/login";
-				if (serverName.equals("localhost")
-						&& path.equalsIgnoreCase(pathToRewrite)) {
+			final String pathToRewrite = "/" + SUCCESS_PAGE_NAME + "/login";
+
+			public Request process(RewriteContext context) {
+				Request request = context.getRequest();
+				if ("localhost".equals(context.getServerName())
+						&& context.getLowerCasePath().equals(pathToRewrite)) {
 					request = new SimpleRequestWrapper(request,
 							IntegrationTests.SUBDOMAIN, "/");
 				}
@@ -106,12 +108,12 @@ public class AppModule {
 
 		};
 
-		URLRewriterRule rule6 = new URLRewriterRule() {
+		URLRewriterRule rule6 = new ContextURLRewriterRule() {
 
-			public Request process(Request request) {
-				String serverName = request.getServerName();
-				String path = request.getPath().toLowerCase();
-				if (serverName.equals("localhost") && path.equals("/dummy")) {
+			public Request process(RewriteContext context) {
+				Request request = context.getRequest();
+				if ("localhost".equals(context.getServerName())
+						&& context.getLowerCasePath().equals("/dummy")) {
 					request = new SimpleRequestWrapper(request, "/notdummy");
 				}
 				return request;